@@ -0,0 +1,104 @@
+package com.ondrejkoula.crawler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queueing links into a container which already visited the given number of URLs. New links are queued and
+ * taken from the queue again; already visited links are rejected by the dedupe check.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CrawlerDataContainerBenchmark {
+
+    private static final int SAMPLE = 65_536;
+    private static final int BATCH = 100_000;
+
+    @Param({"10000", "1000000", "10000000"})
+    private int visitedUrls;
+
+    @Param({"EXACT", "BLOOM_FILTER"})
+    private SeenUrlsMode seenUrlsMode;
+
+    private CrawlerDataContainer dataContainer;
+    // spread over all visited URLs, so lookups are not served from a few hot cache lines
+    private CrawlerURL[] visitedSample;
+    private CrawlerURL[] fresh;
+    private long freshBatches;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        CrawlerConfig config = CrawlerConfig.builder()
+                .seenUrlsMode(seenUrlsMode)
+                .bloomFilterExpectedUrls(2L * visitedUrls)
+                .build();
+        dataContainer = new CrawlerDataContainer(new InMemoryCrawlerFrontier(),
+                CrawlerDataContainer.createCrawledUrlsSet(config), null, null,
+                CrawlerDataContainer.UNLIMITED, CrawlerDataContainer.UNLIMITED);
+        Random random = new Random(3);
+        int sampleSize = Math.min(SAMPLE, visitedUrls);
+        int sampleStep = visitedUrls / sampleSize;
+        visitedSample = new CrawlerURL[sampleSize];
+        for (int i = 0; i < visitedUrls; i++) {
+            CrawlerURL url = new CrawlerURL(Links.url(Links.link(random, i)));
+            dataContainer.markAsCrawled(url);
+            if (i % sampleStep == 0 && i / sampleStep < sampleSize) {
+                visitedSample[i / sampleStep] = url;
+            }
+        }
+    }
+
+    // links never seen before, built outside the measurement
+    @Setup(Level.Iteration)
+    public void setUpFreshLinks() {
+        fresh = new CrawlerURL[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            fresh[i] = new CrawlerURL(Links.url("https://www.example.com/fresh/" + freshBatches + "/" + i + ".html"));
+        }
+        freshBatches++;
+        index = 0;
+    }
+
+    /**
+     * Time of one batch of {@value #BATCH} links. The link is failed after it is taken from the queue, which
+     * keeps the queue empty and leaves the visited set at its configured size.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5, batchSize = BATCH)
+    @Measurement(iterations = 10, batchSize = BATCH)
+    public QueuedURL enqueueNew() {
+        if (!dataContainer.addToQueueIfNotProcessed(fresh[index++], 1)) {
+            // a Bloom filter false positive
+            return null;
+        }
+        QueuedURL queuedURL = dataContainer.nextUrl();
+        dataContainer.markAsFailed(queuedURL.getUrl());
+        return queuedURL;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public boolean dedupeVisited() {
+        index = (index + 1) % visitedSample.length;
+        return dataContainer.addToQueueIfNotProcessed(visitedSample[index], 1);
+    }
+}
@@ -0,0 +1,86 @@
+package com.ondrejkoula.crawler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishing page events of one crawler to its subscribers. Subscribers only consume the event, so with
+ * {@link OverflowPolicy#BLOCK} the result includes waiting for the slowest drain loop.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CrawlerEventHandlerBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int subscribers;
+
+    @Param({"BLOCK", "DROP_OLDEST"})
+    private OverflowPolicy overflowPolicy;
+
+    private ExecutorService executorService;
+    private ScheduledExecutorService scheduledExecutorService;
+    private CrawlerEventHandler eventHandler;
+    private PageDataAcquiredCrawlerEvent event;
+    // one slot per subscriber, written only by the drain loop of that subscriber
+    private long[] delivered;
+
+    @Setup
+    public void setUp() {
+        executorService = Executors.newCachedThreadPool();
+        scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+        eventHandler = new CrawlerEventHandler(executorService, scheduledExecutorService);
+        UUID crawlerUuid = UUID.randomUUID();
+        SubscriptionOptions options = SubscriptionOptions.builder().overflowPolicy(overflowPolicy).build();
+        delivered = new long[subscribers];
+        for (int i = 0; i < subscribers; i++) {
+            int subscriber = i;
+            eventHandler.subscribePageDataAcquired(crawlerUuid, e -> delivered[subscriber]++, options);
+        }
+        byte[] body = "<html><head><title>Page</title></head><body></body></html>".getBytes(StandardCharsets.UTF_8);
+        event = new PageDataAcquiredCrawlerEvent(crawlerUuid, Links.url("https://www.example.com/"), "Page",
+                200, Collections.emptyMap(), ByteBuffer.wrap(body), StandardCharsets.UTF_8, null,
+                OutcomeLinks.of(Collections.emptyList(), "www.example.com"), true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdownNow();
+        scheduledExecutorService.shutdownNow();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void notifyOneCrawlerThread() {
+        eventHandler.notify(event);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void notifyFourCrawlerThreads() {
+        eventHandler.notify(event);
+    }
+}
@@ -0,0 +1,83 @@
+package com.ondrejkoula.crawler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URL;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CrawlerURLBenchmark {
+
+    private static final int URLS = 1024;
+
+    private URL[] urls;
+    private CrawlerURL[] crawlerUrls;
+    // equal to crawlerUrls, but distinct instances
+    private CrawlerURL[] equalCrawlerUrls;
+    private Set<CrawlerURL> crawlerUrlSet;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        List<String> links = Links.mixed(URLS, 7);
+        urls = new URL[URLS];
+        crawlerUrls = new CrawlerURL[URLS];
+        equalCrawlerUrls = new CrawlerURL[URLS];
+        crawlerUrlSet = new HashSet<>();
+        for (int i = 0; i < URLS; i++) {
+            urls[i] = Links.url(links.get(i));
+            crawlerUrls[i] = new CrawlerURL(urls[i]);
+            equalCrawlerUrls[i] = new CrawlerURL(Links.url(links.get(i)));
+            crawlerUrlSet.add(crawlerUrls[i]);
+        }
+    }
+
+    private int next() {
+        index = (index + 1) & (URLS - 1);
+        return index;
+    }
+
+    @Benchmark
+    public CrawlerURL create() {
+        return new CrawlerURL(urls[next()]);
+    }
+
+    @Benchmark
+    public int hashCode_() {
+        return crawlerUrls[next()].hashCode();
+    }
+
+    @Benchmark
+    public boolean equalsEqual() {
+        int i = next();
+        return crawlerUrls[i].equals(equalCrawlerUrls[i]);
+    }
+
+    @Benchmark
+    public boolean equalsDistinct() {
+        int i = next();
+        return crawlerUrls[i].equals(equalCrawlerUrls[(i + 1) & (URLS - 1)]);
+    }
+
+    @Benchmark
+    public boolean hashSetContains() {
+        return crawlerUrlSet.contains(equalCrawlerUrls[next()]);
+    }
+}
@@ -0,0 +1,52 @@
+package com.ondrejkoula.crawler;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// link sets shaped like the ones found on content sites, the same seed gives the same links
+final class Links {
+
+    private static final String[] SECTIONS = {"news", "sport", "culture", "tech", "blog", "about", "docs", "shop"};
+    private static final String[] ASSETS = {".jpg", ".png", ".pdf", ".css", ".js", ".zip", ".svg", ".mp4"};
+
+    private Links() {
+    }
+
+    static List<String> mixed(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> links = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            links.add(link(random, i));
+        }
+        return links;
+    }
+
+    static String link(Random random, long id) {
+        String host = random.nextInt(10) < 8 ? "www.example.com" : "cdn" + random.nextInt(4) + ".example.net";
+        String section = SECTIONS[random.nextInt(SECTIONS.length)];
+        StringBuilder link = new StringBuilder("https://").append(host).append('/').append(section)
+                .append("/2021/").append(random.nextInt(12) + 1).append('/').append("article-").append(id);
+        int kind = random.nextInt(10);
+        if (kind < 2) {
+            link.append(ASSETS[random.nextInt(ASSETS.length)]);
+        } else if (kind < 4) {
+            link.append("?utm_source=newsletter&page=").append(random.nextInt(20));
+        } else if (kind < 5) {
+            link.append("/#comments");
+        } else {
+            link.append(".html");
+        }
+        return link.toString();
+    }
+
+    static URL url(String link) {
+        try {
+            return new URL(link);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(link, e);
+        }
+    }
+}
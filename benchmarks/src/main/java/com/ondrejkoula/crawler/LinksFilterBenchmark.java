@@ -0,0 +1,64 @@
+package com.ondrejkoula.crawler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LinksFilterBenchmark {
+
+    // links on one page
+    @Param({"50", "500"})
+    private int links;
+
+    @Param({"false", "true"})
+    private boolean linkRules;
+
+    private List<String> pageLinks;
+    private LinksFilter linksFilter;
+
+    @Setup
+    public void setUp() {
+        pageLinks = Links.mixed(links, 42);
+        Set<SupportedType> excludedTypes = EnumSet.noneOf(SupportedType.class);
+        excludedTypes.addAll(SupportedType.imageTypes());
+        excludedTypes.addAll(SupportedType.videoTypes());
+        excludedTypes.addAll(SupportedType.binaries());
+        excludedTypes.addAll(SupportedType.archives());
+        List<LinkRule> rules = linkRules
+                ? Arrays.asList(
+                LinkRule.excludePathPrefix("/shop"),
+                LinkRule.excludePathPrefix("/about"),
+                LinkRule.excludeRegex("[?&]page=1\\d"),
+                LinkRule.includePathPrefix("/news"),
+                LinkRule.includePathPrefix("/docs"),
+                LinkRule.includeRegex("/20\\d\\d/"))
+                : Collections.emptyList();
+        linksFilter = new LinksFilter(excludedTypes, rules);
+    }
+
+    @Benchmark
+    public Set<String> filterLinks() {
+        return linksFilter.filterLinks(pageLinks);
+    }
+}
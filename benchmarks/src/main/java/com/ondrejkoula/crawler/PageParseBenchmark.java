@@ -0,0 +1,113 @@
+package com.ondrejkoula.crawler;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Link extraction from stored pages as done by the crawler for each fetched page. Uses the pages bundled in
+ * {@code pages/} unless {@code -p pagesDirectory=...} points to a directory of {@code .html} files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PageParseBenchmark {
+
+    private static final String[] BUNDLED_PAGES = {"article.html", "listing.html", "documentation.html"};
+    private static final String BASE_URI = "https://www.example.com/section/page.html";
+
+    @Param("")
+    private String pagesDirectory;
+
+    private List<byte[]> pages;
+    private LinksFilter linksFilter;
+    private int index;
+
+    @Setup
+    public void setUp() throws IOException {
+        pages = pagesDirectory.isEmpty() ? bundledPages() : storedPages(Paths.get(pagesDirectory));
+        if (pages.isEmpty()) {
+            throw new IllegalStateException("No pages to parse.");
+        }
+        linksFilter = new LinksFilter(SupportedType.imageTypes(), null);
+    }
+
+    private byte[] nextPage() {
+        index = (index + 1) % pages.size();
+        return pages.get(index);
+    }
+
+    @Benchmark
+    public Set<String> domParseAndExtract() throws IOException {
+        Document document = Jsoup.parse(new ByteArrayInputStream(nextPage()), UTF_8.name(), BASE_URI);
+        return linksFilter.filterLinks(document.select("a[href]"));
+    }
+
+    @Benchmark
+    public Set<String> streamingExtract() {
+        StreamingLinkExtractor.Result result = StreamingLinkExtractor.extract(nextPage(), UTF_8, BASE_URI);
+        return linksFilter.filterLinks(result.getLinks());
+    }
+
+    @Benchmark
+    public long simHash() {
+        return SimHash.ofHtml(nextPage());
+    }
+
+    private static List<byte[]> bundledPages() throws IOException {
+        List<byte[]> pages = new ArrayList<>();
+        for (String page : BUNDLED_PAGES) {
+            try (InputStream in = PageParseBenchmark.class.getResourceAsStream("/pages/" + page)) {
+                if (in == null) {
+                    throw new IllegalStateException("Missing bundled page " + page);
+                }
+                pages.add(in.readAllBytes());
+            }
+        }
+        return pages;
+    }
+
+    private static List<byte[]> storedPages(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".html"))
+                    .sorted()
+                    .map(file -> {
+                        try {
+                            return Files.readAllBytes(file);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.ondrejkoula.crawler;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Probabilistic set of URL fingerprints with a fixed memory footprint sized from the expected number of URLs
+ * and the accepted false positive rate. A false positive makes the crawler skip a URL it has not visited.
+ */
+final class BloomFilterUrlFingerprintSet implements UrlFingerprintSet {
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+    private long size;
+
+    BloomFilterUrlFingerprintSet(long expectedUrls, double falsePositiveRate) {
+        if (expectedUrls <= 0) {
+            throw new IllegalArgumentException("Expected number of URLs must be positive.");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1.");
+        }
+        long optimalBits = (long) Math.ceil(-expectedUrls * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bits = new long[(int) Math.min(Integer.MAX_VALUE - 8, (optimalBits + 63) / 64)];
+        this.bitCount = (long) bits.length * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedUrls * Math.log(2)));
+    }
+
+    private BloomFilterUrlFingerprintSet(BloomFilterUrlFingerprintSet source) {
+        this.bits = source.bits.clone();
+        this.bitCount = source.bitCount;
+        this.hashCount = source.hashCount;
+        this.size = source.size;
+    }
+
+    @Override
+    public boolean add(long fingerprint) {
+        long hash1 = fingerprint;
+        long hash2 = Fingerprints.mix(fingerprint);
+        boolean added = false;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((bits[word] & mask) == 0) {
+                bits[word] |= mask;
+                added = true;
+            }
+        }
+        if (added) {
+            size++;
+        }
+        return added;
+    }
+
+    @Override
+    public boolean contains(long fingerprint) {
+        long hash1 = fingerprint;
+        long hash2 = Fingerprints.mix(fingerprint);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public long memoryBytes() {
+        return (long) bits.length * Long.BYTES;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(bits, 0);
+        size = 0;
+    }
+
+    @Override
+    public BloomFilterUrlFingerprintSet copy() {
+        return new BloomFilterUrlFingerprintSet(this);
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(bitCount);
+        out.writeInt(hashCount);
+        out.writeLong(size);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    @Override
+    public void readFrom(DataInput in) throws IOException {
+        long storedBitCount = in.readLong();
+        int storedHashCount = in.readInt();
+        if (storedBitCount != bitCount || storedHashCount != hashCount) {
+            throw new IllegalStateException("Stored bloom filter does not match the configured size and false positive rate.");
+        }
+        size = in.readLong();
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] |= in.readLong();
+        }
+    }
+}
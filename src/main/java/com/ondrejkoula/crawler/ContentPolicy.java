@@ -0,0 +1,172 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Decides from the status line and headers of a response whether its body is worth reading. A response is skipped
+ * before any of its body is read when its Content-Type is not markup or is the MIME type of an excluded
+ * {@link SupportedType}, or when its Content-Length is over the cap. A body without a Content-Length is read into
+ * a growing buffer and aborted as soon as it passes the cap.
+ */
+final class ContentPolicy {
+
+    private static final int INITIAL_BUFFER_BYTES = 16 * 1024;
+
+    private final Set<String> excludedMimeTypes;
+    private final int maxBodyBytes;
+    @Getter
+    private final long readTimeoutMillis;
+
+    ContentPolicy(Set<SupportedType> excludedTypes, int maxBodyBytes, long readTimeoutMillis) {
+        if (maxBodyBytes <= 0) {
+            throw new IllegalArgumentException("Max body bytes must be positive.");
+        }
+        this.excludedMimeTypes = new HashSet<>();
+        if (excludedTypes != null) {
+            excludedTypes.forEach(type -> excludedMimeTypes.add(mimeTypeOf(type.getMimeType())));
+        }
+        this.maxBodyBytes = maxBodyBytes;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    static ContentPolicy of(CrawlerConfig config) {
+        return new ContentPolicy(config.getExcludedTypes(), config.getMaxBodyBytes(), config.getReadTimeoutMillis());
+    }
+
+    // null when the body should be read, contentLength is -1 when unknown
+    SkippedResponseException check(URL url, int status, String contentType, long contentLength) {
+        String mimeType = mimeTypeOf(contentType);
+        if (!isMarkup(mimeType) || excludedMimeTypes.contains(mimeType)) {
+            return new SkippedResponseException("Unsupported content type " + contentType + " of " + url,
+                    status, FailureReason.UNSUPPORTED_CONTENT, contentLength, 0);
+        }
+        if (contentLength > maxBodyBytes) {
+            return tooLarge(url, status, contentLength, 0);
+        }
+        return null;
+    }
+
+    SkippedResponseException tooLarge(URL url, int status, long contentLength, long bytesRead) {
+        return new SkippedResponseException("Body of " + url + " is larger than " + maxBodyBytes + " bytes",
+                status, FailureReason.BODY_TOO_LARGE, contentLength, bytesRead);
+    }
+
+    BodyBuffer newBodyBuffer(long contentLength) {
+        return new BodyBuffer(contentLength, maxBodyBytes);
+    }
+
+    // the stream is read to its end or until the body passes the cap, closing it is left to the caller
+    byte[] readBody(InputStream in, URL url, int status, long contentLength) throws IOException {
+        BodyBuffer buffer = newBodyBuffer(contentLength);
+        if (!buffer.readFrom(in)) {
+            throw tooLarge(url, status, contentLength, buffer.size());
+        }
+        return buffer.toByteArray();
+    }
+
+    static long contentLengthOf(String contentLength) {
+        if (contentLength == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // the MIME type without parameters, SupportedType MIME types may be followed by a description
+    static String mimeTypeOf(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        String mimeType = contentType.trim().toLowerCase(Locale.ROOT);
+        for (int i = 0; i < mimeType.length(); i++) {
+            char c = mimeType.charAt(i);
+            if (c == ';' || c == ' ' || c == ',') {
+                return mimeType.substring(0, i);
+            }
+        }
+        return mimeType;
+    }
+
+    // same content types Jsoup accepts by default, a response without Content-Type is given a chance
+    private static boolean isMarkup(String mimeType) {
+        if (mimeType == null) {
+            return true;
+        }
+        return mimeType.startsWith("text/") || mimeType.startsWith("application/xml") || mimeType.contains("+xml");
+    }
+
+    /**
+     * Body bytes read so far. Starts at the Content-Length when it is known and within the cap, otherwise small,
+     * and never grows past the cap.
+     */
+    static final class BodyBuffer {
+        private final int maxBytes;
+        private byte[] bytes;
+        private int size;
+
+        private BodyBuffer(long contentLength, int maxBytes) {
+            this.maxBytes = maxBytes;
+            this.bytes = new byte[contentLength >= 0 && contentLength <= maxBytes
+                    ? (int) contentLength
+                    : Math.min(INITIAL_BUFFER_BYTES, maxBytes)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        // false when the bytes do not fit under the cap
+        boolean append(ByteBuffer buffer) {
+            int length = buffer.remaining();
+            if (length > maxBytes - size) {
+                return false;
+            }
+            ensureCapacity(size + length);
+            buffer.get(bytes, size, length);
+            size += length;
+            return true;
+        }
+
+        // false when the stream holds more than the cap
+        boolean readFrom(InputStream in) throws IOException {
+            while (true) {
+                if (size == bytes.length) {
+                    if (size == maxBytes) {
+                        return in.read() < 0;
+                    }
+                    // a body longer than its Content-Length still has to fit under the cap
+                    ensureCapacity(size + 1);
+                }
+                int read = in.read(bytes, size, bytes.length - size);
+                if (read < 0) {
+                    return true;
+                }
+                size += read;
+            }
+        }
+
+        byte[] toByteArray() {
+            return size == bytes.length ? bytes : Arrays.copyOf(bytes, size);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= bytes.length) {
+                return;
+            }
+            int grown = (int) Math.min(maxBytes, Math.max((long) bytes.length * 2, INITIAL_BUFFER_BYTES));
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, grown));
+        }
+    }
+}
@@ -1,24 +1,49 @@
 package com.ondrejkoula.crawler;
 
 import lombok.Getter;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.UnsupportedMimeTypeException;
 import org.jsoup.nodes.Document;
 import org.jsoup.select.Elements;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Objects;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static com.ondrejkoula.crawler.CrawlerState.*;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.stream.Collectors.toSet;
-import static org.jsoup.Jsoup.connect;
 
 public class Crawler implements Runnable {
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVICE_UNAVAILABLE = 503;
+    private static final Set<Integer> TRANSIENT_STATUS_CODES = Set.of(408, TOO_MANY_REQUESTS, 500, 502, SERVICE_UNAVAILABLE, 504);
+
     @Getter
     private final UUID uuid;
     @Getter
@@ -26,15 +51,49 @@ public class Crawler implements Runnable {
     private final CrawlerDataContainer dataContainer;
     private final LinksFilter linksFilter;
     private final CrawlerEventHandler eventHandler;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final PolitenessScheduler politenessScheduler;
+    private final RobotsTxtCache robotsTxtCache;
+    private final PageFetcher pageFetcher;
+    private final HttpMetadataCaches httpMetadataCaches;
+    // shared with the other crawlers of the host, released once when the crawler ends
+    private final HttpMetadataCache httpMetadataCache;
+    private boolean httpMetadataCacheReleased;
+    private final Consumer<Crawler> endedListener;
+    @Getter
+    private final UrlCanonicalizer urlCanonicalizer;
+    // null when near duplicate detection is off, guarded by lock
+    private final SimHashIndex simHashIndex;
     private final ReentrantLock lock;
+    private final int maxUrlsInProgress;
+    private final CrawlerMetrics metrics;
+    private final FetchGovernor.Tenant fetchSlots;
+    private final HostRateController rateController;
+
+    private final CrawlerCheckpoint checkpoint;
+    private long lastSnapshotMillis;
+    // frozen under the lock, written by the checkpoint thread
+    private CrawlerCheckpoint.Snapshot pendingSnapshot;
+
+    // URLs taken from the queue and not completed yet, guarded by lock
+    private final Set<QueuedURL> urlsInProgress;
+    // URLs in progress waiting out a retry backoff, guarded by lock
+    private int urlsWaitingForRetry;
+    // null unless recrawling continuously, guarded by lock
+    private final RecrawlScheduler recrawlScheduler;
+    private ScheduledFuture<?> recrawlTask;
+    private long recrawlTaskAtMillis;
+    // the crawler does not finish while its sitemaps are read, guarded by lock
+    private boolean ingestingSitemaps;
 
     @Getter
-    private CrawlerState currentState;
+    private volatile CrawlerState currentState;
 
     @Getter
     private final String host;
+    private final URL initialUrl;
 
-    Crawler(UUID uuid, CrawlerConfig crawlerConfig, CrawlerEventHandler eventHandler) {
+    Crawler(UUID uuid, CrawlerConfig crawlerConfig, CrawlerServices services) {
         Set<URL> initialUrls = crawlerConfig.getInitialUrls() == null ? new HashSet<>() : crawlerConfig.getInitialUrls();
         if (initialUrls.isEmpty()) {
             throw new IllegalStateException("No initial URL specified.");
@@ -42,24 +101,71 @@ public class Crawler implements Runnable {
         validateUrlsHosts(initialUrls);
         this.uuid = uuid;
         this.config = crawlerConfig;
-        this.eventHandler = eventHandler;
-        this.host = initialUrls.iterator().next().getHost();
+        this.eventHandler = services.getEventHandler();
+        this.scheduledExecutorService = services.getScheduledExecutorService();
+        this.politenessScheduler = services.getPolitenessScheduler();
+        this.robotsTxtCache = services.getRobotsTxtCache();
+        this.initialUrl = initialUrls.iterator().next();
+        this.host = initialUrl.getHost();
         Set<URL> urlsToSkip = crawlerConfig.getUrlsToSkip() == null ? new HashSet<>() : crawlerConfig.getUrlsToSkip();
+        this.urlCanonicalizer = UrlCanonicalizer.of(crawlerConfig);
 
         this.dataContainer = new CrawlerDataContainer(
+                createFrontier(uuid, crawlerConfig, urlCanonicalizer),
+                CrawlerDataContainer.createCrawledUrlsSet(crawlerConfig),
                 urlsToSkip
                         .stream()
-                        .map(CrawlerURL::new)
+                        .map(url -> new CrawlerURL(url, urlCanonicalizer))
                         .collect(Collectors.toSet()),
                 initialUrls
                         .stream()
-                        .map(CrawlerURL::new)
-                        .collect(toSet()));
-        this.linksFilter = new LinksFilter();
+                        .map(url -> new CrawlerURL(url, urlCanonicalizer))
+                        .collect(toSet()),
+                crawlerConfig.getMaxDepth(),
+                crawlerConfig.getMaxPages());
+        this.linksFilter = new LinksFilter(crawlerConfig.getExcludedTypes(), crawlerConfig.getLinkRules());
         this.lock = new ReentrantLock();
+        this.pageFetcher = createPageFetcher(crawlerConfig, services.getExecutorService());
+        this.httpMetadataCaches = services.getHttpMetadataCaches();
+        this.endedListener = services.getEndedListener();
+        this.httpMetadataCache = crawlerConfig.getHttpCacheDirectory() == null
+                ? null
+                : services.getHttpMetadataCaches().acquire(crawlerConfig.getHttpCacheDirectory().resolve(host + ".cache"));
+        // the HTTP client fetcher does not occupy a thread per request
+        this.maxUrlsInProgress = FetcherType.HTTP_CLIENT.equals(crawlerConfig.getFetcherType())
+                ? Math.max(1, crawlerConfig.getMaxInFlightRequests())
+                : Math.max(1, crawlerConfig.getWorkers());
+        this.urlsInProgress = new HashSet<>();
+        this.metrics = new CrawlerMetrics();
+        this.fetchSlots = services.getFetchGovernor().register(crawlerConfig.getWeight(), metrics.getSlotWaitLatency());
+        this.rateController = new HostRateController(maxUrlsInProgress, crawlerConfig.isAdaptiveRateControl());
+        this.recrawlScheduler = crawlerConfig.isContinuousRecrawl() ? RecrawlScheduler.of(crawlerConfig, urlCanonicalizer) : null;
+        this.simHashIndex = crawlerConfig.isNearDuplicateDetection()
+                ? new SimHashIndex(crawlerConfig.getNearDuplicateMaxDistance())
+                : null;
+        this.checkpoint = crawlerConfig.getCheckpointDirectory() == null
+                ? null
+                : new CrawlerCheckpoint(crawlerConfig.getCheckpointDirectory().resolve(uuid.toString()), urlCanonicalizer);
         changeState(CrawlerState.NEW);
     }
 
+    private static CrawlerFrontier createFrontier(UUID uuid, CrawlerConfig crawlerConfig, UrlCanonicalizer urlCanonicalizer) {
+        if (crawlerConfig.getFrontierDirectory() == null) {
+            return new InMemoryCrawlerFrontier();
+        }
+        return new SpillingCrawlerFrontier(
+                crawlerConfig.getFrontierDirectory().resolve(uuid.toString()),
+                crawlerConfig.getFrontierMemoryCapacity(),
+                urlCanonicalizer);
+    }
+
+    private static PageFetcher createPageFetcher(CrawlerConfig crawlerConfig, ExecutorService executorService) {
+        if (FetcherType.HTTP_CLIENT.equals(crawlerConfig.getFetcherType())) {
+            return new HttpClientPageFetcher(crawlerConfig.getUserAgent(), ContentPolicy.of(crawlerConfig), executorService);
+        }
+        return new JsoupPageFetcher(crawlerConfig.getUserAgent(), ContentPolicy.of(crawlerConfig));
+    }
+
     private void validateUrlsHosts(Set<URL> initialUrls) {
         if (initialUrls.stream().map(URL::getHost).collect(toSet()).size() > 1) {
             throw new IllegalStateException("Distinct hosts in initial URLs.");
@@ -70,132 +176,883 @@ public class Crawler implements Runnable {
 //        if (!NEW.equals(currentState)) {
 //             TODO log - "Crawler already started."
 //        }
-        changeState(RUNNING);
+        robotsTxt();
+        lock.lock();
+        try {
+            changeState(RUNNING);
+            if (checkpoint != null) {
+                freezeSnapshotLocked();
+                dataContainer.setCheckpoint(checkpoint);
+            }
+            QueuedURL initUrl = dataContainer.nextUrl();
+            if (initUrl == null) {
+                changeState(FINISHED);
+                return;
+            }
+            ingestingSitemaps = !config.getSitemapUrls().isEmpty() || config.isDiscoverSitemaps();
+            submitUrlLocked(initUrl, true);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        CrawlerURL initUrl = dataContainer.nextUrl();
-        if (!proceedUrl(initUrl)) {
-            if (!STOPPED.equals(currentState)) {
-                changeState(FAILED);
+    // every download is chained on the gate of the previous one, only one batch of entries is held at a time
+    private void ingestSitemaps() {
+        CompletableFuture<Integer> ingested;
+        try {
+            SitemapIngestion ingestion = new SitemapIngestion(config, new SitemapDownloadGate(), this::queueSitemapEntries);
+            config.getSitemapUrls().forEach(sitemap -> ingestion.addSitemap(sitemap.toString()));
+            if (config.isDiscoverSitemaps()) {
+                robotsTxtCache.get(initialUrl, config.getUserAgent(), config.getRobotsTxtTtlMillis())
+                        .getSitemaps()
+                        .forEach(ingestion::addSitemap);
             }
-            return;
+            ingested = acceptsSitemapUrls() ? ingestion.run() : CompletableFuture.completedFuture(0);
+        } catch (RuntimeException e) {
+            ingested = CompletableFuture.failedFuture(e);
+        }
+        ingested.whenComplete((sitemapsRead, error) -> {
+            if (error != null) {
+                // TODO log "Cannot read sitemaps --"
+            } else {
+                metrics.getSitemapsRead().add(sitemapsRead);
+            }
+            lock.lock();
+            try {
+                ingestingSitemaps = false;
+                dispatchUrlsLocked();
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    // the frontier is FIFO, so the lastmod order holds within a batch; false stops the ingestion
+    private boolean queueSitemapEntries(List<SitemapReader.Entry> entries) {
+        if (!acceptsSitemapUrls()) {
+            return false;
         }
-        CrawlerURL nextUrl;
-        while ((nextUrl = dataContainer.nextUrl()) != null) {
-            if (!STOPPED.equals(currentState)) {
-                proceedUrl(nextUrl);
+        long startNanos = System.nanoTime();
+        entries.sort(Comparator.comparingLong(SitemapReader.Entry::getLastModifiedMillis).reversed());
+        List<CrawlerURL> urls = new ArrayList<>(entries.size());
+        for (SitemapReader.Entry entry : entries) {
+            if (!linksFilter.isAccepted(entry.getLocation())) {
+                continue;
+            }
+            try {
+                URL url = new URL(entry.getLocation());
+                // the sitemaps.org protocol only allows URLs of the sitemap's host
+                if (host.equalsIgnoreCase(url.getHost()) && isAllowedByRobotsTxt(url)) {
+                    urls.add(new CrawlerURL(url, urlCanonicalizer));
+                }
+            } catch (MalformedURLException e) {
+                // TODO log "Invalid sitemap URL --"
             }
         }
-        if (!STOPPED.equals(currentState)) {
-            changeState(FINISHED);
+        metrics.getSitemapUrls().add(addToQueue(urls, 0));
+        metrics.getEnqueueLatency().recordSince(startNanos);
+        lock.lock();
+        try {
+            dispatchUrlsLocked();
+        } finally {
+            lock.unlock();
         }
+        return true;
     }
 
-    void pause() {
-        if (!STOPPED.equals(currentState)) {
+    // sitemap downloads wait for the host and a fetch slot like page fetches
+    private final class SitemapDownloadGate implements SitemapIngestion.DownloadGate {
+
+        @Override
+        public CompletableFuture<Boolean> acquire() {
+            CompletableFuture<Boolean> granted = new CompletableFuture<>();
             lock.lock();
-            changeState(CrawlerState.PAUSED);
+            try {
+                if (!acceptsSitemapUrls()) {
+                    return CompletableFuture.completedFuture(false);
+                }
+                scheduleFetchLocked(0, () -> {
+                    if (acceptsSitemapUrls()) {
+                        granted.complete(true);
+                    } else {
+                        fetchSlots.release(0);
+                        granted.complete(false);
+                    }
+                }, () -> granted.completeExceptionally(new RejectedExecutionException("Fetch governor rejected a sitemap download.")));
+            } finally {
+                lock.unlock();
+            }
+            return granted;
+        }
+
+        @Override
+        public void release(long downloadedBytes) {
+            fetchSlots.release(downloadedBytes);
         }
     }
 
-    void resume() {
-        if (lock.isLocked() && !STOPPED.equals(currentState)) {
-            changeState(RUNNING);
+    private boolean acceptsSitemapUrls() {
+        lock.lock();
+        try {
+            return (RUNNING.equals(currentState) || PAUSED.equals(currentState)) && dataContainer.acceptsUrls();
+        } finally {
             lock.unlock();
         }
     }
 
-    void stop() {
-        if (RUNNING.equals(currentState) || PAUSED.equals(currentState)) {
-            changeState(STOPPED);
+    private void dispatchUrlsLocked() {
+        while (RUNNING.equals(currentState) && urlsInProgress.size() - urlsWaitingForRetry < rateController.getConcurrencyLimit()) {
+            QueuedURL nextUrl = dataContainer.nextUrl();
+            if (nextUrl == null) {
+                break;
+            }
+            submitUrlLocked(nextUrl, false);
+        }
+        // a recrawling crawler stays running while any page waits for its next visit
+        if (RUNNING.equals(currentState) && urlsInProgress.isEmpty() && !dataContainer.hasUrlsToCrawl()
+                && !ingestingSitemaps && (recrawlScheduler == null || recrawlScheduler.isEmpty())) {
+            changeState(FINISHED);
         }
     }
 
-    private boolean proceedUrl(CrawlerURL url) {
-        // 1. critical section - download source
-        Document htmlDocument;
+    // keeps one task on the scheduler for the earliest due recrawl
+    private void scheduleRecrawlLocked() {
+        if (recrawlScheduler == null || !RUNNING.equals(currentState)) {
+            return;
+        }
+        long nowMillis = System.currentTimeMillis();
+        long waitMillis = recrawlScheduler.millisUntilNextDue(nowMillis);
+        if (waitMillis < 0 || (recrawlTask != null && recrawlTaskAtMillis <= nowMillis + waitMillis)) {
+            return;
+        }
+        if (recrawlTask != null) {
+            recrawlTask.cancel(false);
+        }
         try {
+            recrawlTask = scheduledExecutorService.schedule(this::recrawlDueUrls, waitMillis, MILLISECONDS);
+            recrawlTaskAtMillis = nowMillis + waitMillis;
+        } catch (RejectedExecutionException e) {
+            // TODO log "Scheduler rejected the recrawl --"
+            recrawlTask = null;
+        }
+    }
+
+    // due pages go to the frontier like new links
+    private void recrawlDueUrls() {
+        lock.lock();
+        try {
+            recrawlTask = null;
+            if (!RUNNING.equals(currentState)) {
+                return;
+            }
+            long nowMillis = System.currentTimeMillis();
+            QueuedURL dueUrl;
+            while ((dueUrl = recrawlScheduler.pollDue(nowMillis)) != null) {
+                if (dataContainer.requeue(dueUrl)) {
+                    metrics.getRecrawls().increment();
+                }
+            }
+            dispatchUrlsLocked();
+            scheduleRecrawlLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void cancelRecrawlLocked() {
+        if (recrawlTask != null) {
+            recrawlTask.cancel(false);
+            recrawlTask = null;
+        }
+    }
+
+    private void submitUrlLocked(QueuedURL url, boolean initialUrl) {
+        urlsInProgress.add(url);
+        scheduleFetchLocked(url, initialUrl, 0, false);
+    }
+
+    private void scheduleFetchLocked(QueuedURL url, boolean initialUrl, long minWaitMillis, boolean retry) {
+        scheduleFetchLocked(minWaitMillis, () -> {
+            if (retry) {
+                endRetryWait();
+            }
+            crawlUrl(url, initialUrl);
+        }, () -> {
             lock.lock();
+            try {
+                if (retry) {
+                    endRetryWait();
+                }
+                rejectUrlLocked(url, initialUrl);
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    // the host is reserved only once a fetch slot is granted, a host that is not due yet gives the slot back
+    private void scheduleFetchLocked(long minWaitMillis, Runnable fetch, Runnable onRejected) {
+        Runnable fetchTask = () -> fetchSlots.submit(() -> {
+            long politenessWaitMillis = STOPPED.equals(currentState)
+                    ? 0
+                    : politenessScheduler.tryReserve(host, requestDelayMillis());
+            if (politenessWaitMillis > 0) {
+                fetchSlots.release(0);
+                delayFetch(politenessWaitMillis, fetch, onRejected);
+                return;
+            }
+            fetch.run();
+        }, onRejected);
+        long waitMillis = Math.max(
+                Math.max(minWaitMillis, politenessScheduler.millisUntilFree(host)),
+                rateController.pauseRemainingMillis());
+        if (waitMillis <= 0) {
+            fetchTask.run();
+            return;
+        }
+        try {
+            scheduledExecutorService.schedule(fetchTask, waitMillis, MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            onRejected.run();
+        }
+    }
+
+    private void delayFetch(long waitMillis, Runnable fetch, Runnable onRejected) {
+        lock.lock();
+        try {
+            scheduleFetchLocked(waitMillis, fetch, onRejected);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void endRetryWait() {
+        lock.lock();
+        try {
+            urlsWaitingForRetry--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void rejectUrlLocked(QueuedURL url, boolean initialUrl) {
+        // TODO log "Executor rejected --"
+        urlsInProgress.remove(url);
+        dataContainer.markAsFailed(url.getUrl());
+        metrics.recordFailure(FailureReason.REJECTED);
+        if (initialUrl) {
+            changeState(FAILED);
+        } else {
+            dispatchUrlsLocked();
+        }
+    }
+
+    // runs in a fetch slot of the governor, which is released once the download ends
+    private void crawlUrl(QueuedURL url, boolean initialUrl) {
+        // 1. download source, no lock is held during the network I/O
+        CompletableFuture<FetchedPage> download;
+        if (STOPPED.equals(currentState)) {
+            fetchSlots.release(0);
+            completeUrl(url, initialUrl, false);
+            return;
+        }
+        if (!isAllowedByRobotsTxt(url.getUrl().getUrl())) {
+            fetchSlots.release(0);
+            markAsFailed(url.getUrl(), FailureReason.ROBOTS_TXT_DISALLOWED);
+            completeUrl(url, initialUrl, false);
+            return;
+        }
+        HttpMetadataCache.Validators cachedPage = httpMetadataCache == null ? null : httpMetadataCache.validators(url.getUrl());
+        FetchRequest request = FetchRequest.builder()
+                .url(url.getUrl().getUrl())
+                .ifNoneMatch(cachedPage == null ? null : cachedPage.getEtag())
+                .ifModifiedSince(cachedPage == null ? null : cachedPage.getLastModified())
+                .build();
+        long fetchStartNanos = System.nanoTime();
+        try {
+            download = pageFetcher.fetch(request);
+        } catch (RuntimeException e) {
+            download = CompletableFuture.failedFuture(e);
+        }
+        download.whenComplete((page, error) -> {
+            long fetchNanos = System.nanoTime() - fetchStartNanos;
+            metrics.getFetchLatency().record(fetchNanos);
+            fetchSlots.release(page == null || page.getBody() == null ? bytesReadBy(error) : page.getBody().length);
+            if (error != null && causeOf(error) instanceof SkippedResponseException) {
+                SkippedResponseException skipped = (SkippedResponseException) causeOf(error);
+                metrics.getBytesDownloaded().add(skipped.getBytesRead());
+                metrics.getBytesSkipped().add(skipped.bytesSkipped());
+            }
+            if (error != null && retryLater(url, initialUrl, causeOf(error))) {
+                return;
+            }
+            boolean proceeded = false;
+            try {
+                if (error != null) {
+                    markAsFailed(url.getUrl(), failureReasonOf(causeOf(error)));
+                    // TODO log "Cannot get HTML from --"
+                } else {
+                    rateController.onSuccess(fetchNanos);
+                    metrics.getPagesFetched().increment();
+                    if (page.getBody() != null) {
+                        metrics.getBytesDownloaded().add(page.getBody().length);
+                    }
+                    long contentHash = page.isNotModified() || (httpMetadataCache == null && recrawlScheduler == null)
+                            ? 0
+                            : Fingerprints.of(page.getBody());
+                    proceeded = proceedPage(url, page, cachedPage, contentHash);
+                    if (proceeded && recrawlScheduler != null) {
+                        recordVisit(url, page.isNotModified() ? cachedPage.getContentHash() : contentHash);
+                    }
+                }
+            } finally {
+                completeUrl(url, initialUrl, proceeded);
+            }
+        });
+    }
+
+    // false when the URL should be marked as failed
+    private boolean retryLater(QueuedURL url, boolean initialUrl, Throwable cause) {
+        long retryAfterMillis = cause instanceof PageFetchException ? ((PageFetchException) cause).getRetryAfterMillis() : -1;
+        if (isOverload(cause, retryAfterMillis)) {
+            rateController.onOverload(retryAfterMillis);
+        }
+        if (!isTransient(cause) || url.getFailedAttempts() >= config.getMaxRetries()) {
+            return false;
+        }
+        long delayMillis = HostRateController.retryDelayMillis(url.incrementFailedAttempts(),
+                config.getRetryBaseDelayMillis(), config.getMaxRetryDelayMillis(), retryAfterMillis);
+        lock.lock();
+        try {
             if (STOPPED.equals(currentState)) {
                 return false;
             }
+            metrics.getRetries().increment();
+            urlsWaitingForRetry++;
+            scheduleFetchLocked(url, initialUrl, delayMillis, true);
+            dispatchUrlsLocked();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean isOverload(Throwable cause, long retryAfterMillis) {
+        if (cause instanceof PageFetchException) {
+            int status = ((PageFetchException) cause).getStatusCode();
+            return status == TOO_MANY_REQUESTS || status == SERVICE_UNAVAILABLE || retryAfterMillis > 0;
+        }
+        return isTimeout(cause);
+    }
+
+    private static boolean isTransient(Throwable cause) {
+        if (cause instanceof PageFetchException) {
+            return TRANSIENT_STATUS_CODES.contains(((PageFetchException) cause).getStatusCode());
+        }
+        if (cause instanceof HttpStatusException) {
+            return TRANSIENT_STATUS_CODES.contains(((HttpStatusException) cause).getStatusCode());
+        }
+        // SSL failures and malformed responses do not go away by retrying
+        return cause instanceof SocketException || isTimeout(cause);
+    }
+
+    private static boolean isTimeout(Throwable cause) {
+        return cause instanceof SocketTimeoutException || cause instanceof HttpTimeoutException;
+    }
+
+    // an aborted body still took bandwidth
+    private static long bytesReadBy(Throwable error) {
+        Throwable cause = error == null ? null : causeOf(error);
+        return cause instanceof SkippedResponseException ? ((SkippedResponseException) cause).getBytesRead() : 0;
+    }
+
+    private static Throwable causeOf(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static FailureReason failureReasonOf(Throwable cause) {
+        if (cause instanceof PageFetchException) {
+            return ((PageFetchException) cause).getReason();
+        }
+        if (cause instanceof HttpStatusException) {
+            return FailureReason.HTTP_ERROR;
+        }
+        if (cause instanceof UnsupportedMimeTypeException) {
+            return FailureReason.UNSUPPORTED_CONTENT;
+        }
+        return FailureReason.FETCH_ERROR;
+    }
+
+    private void completeUrl(QueuedURL url, boolean initialUrl, boolean proceeded) {
+        lock.lock();
+        try {
+            urlsInProgress.remove(url);
+            if (proceeded || !initialUrl) {
+                dispatchUrlsLocked();
+            } else if (!STOPPED.equals(currentState)) {
+                changeState(FAILED);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long requestDelayMillis() {
+        return Math.max(config.getCrawlDelayMillis(), robotsTxt().getCrawlDelayMillis(config.getUserAgent()))
+                + rateController.getExtraDelayMillis();
+    }
+
+    private RobotsTxt robotsTxt() {
+        if (!config.isRespectRobotsTxt()) {
+            return RobotsTxt.ALLOW_ALL;
+        }
+        return robotsTxtCache.get(initialUrl, config.getUserAgent(), config.getRobotsTxtTtlMillis());
+    }
+
+    private boolean isAllowedByRobotsTxt(URL url) {
+        return robotsTxt().isAllowed(config.getUserAgent(), url.getFile());
+    }
+
+    long getVisitedUrls() {
+        lock.lock();
+        try {
+            return dataContainer.visitedUrls();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getFrontierSize() {
+        lock.lock();
+        try {
+            return dataContainer.queuedUrlsCount();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getRecrawlScheduledUrls() {
+        lock.lock();
+        try {
+            return recrawlScheduler == null ? 0 : recrawlScheduler.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    CrawlerMetrics getMetrics() {
+        return metrics;
+    }
+
+    HostRateController getRateController() {
+        return rateController;
+    }
+
+    long getVisitedUrlsMemoryBytes() {
+        lock.lock();
+        try {
+            return dataContainer.visitedUrlsMemoryBytes();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isCheckpointEnabled() {
+        return checkpoint != null;
+    }
+
+    void restoreFromCheckpoint() {
+        lock.lock();
+        try {
+            if (checkpoint == null || !checkpoint.exists()) {
+                throw new IllegalStateException(String.format("No checkpoint found for crawler %s.", uuid));
+            }
+            checkpoint.restore(dataContainer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Cannot restore crawler %s from checkpoint.", uuid), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // false once the crawler ended and its final snapshot is written
+    boolean checkpoint() {
+        boolean ended;
+        lock.lock();
+        try {
+            if (checkpoint == null) {
+                return false;
+            }
+            if (NEW.equals(currentState)) {
+                return true;
+            }
+            ended = isEnded(currentState);
+            if (ended || System.currentTimeMillis() - lastSnapshotMillis >= config.getCheckpointIntervalMillis()) {
+                freezeSnapshotLocked();
+            } else {
+                checkpoint.flush();
+            }
+            if (ended) {
+                dataContainer.setCheckpoint(null);
+                checkpoint.close();
+            }
+        } catch (IOException e) {
+            // TODO log "Cannot write checkpoint --"
+            return true;
+        } finally {
+            lock.unlock();
+        }
+        writeSnapshot();
+        return !ended;
+    }
 
-            htmlDocument = connect(url.getUrl().toString())
-                    .userAgent(config.getUserAgent())
-                    .get();
+    private void freezeSnapshotLocked() {
+        if (pendingSnapshot != null) {
+            pendingSnapshot.release();
+            pendingSnapshot = null;
+        }
+        try {
+            pendingSnapshot = checkpoint.freeze(dataContainer, urlsInProgress);
+            lastSnapshotMillis = System.currentTimeMillis();
         } catch (IOException e) {
-            dataContainer.markAsFailed(url);
-            // TODO log "Cannot get HTML from --"
-            return false;
+            // TODO log "Cannot write checkpoint snapshot --"
+        }
+    }
+
+    private void writeSnapshot() {
+        CrawlerCheckpoint.Snapshot snapshot;
+        lock.lock();
+        try {
+            snapshot = pendingSnapshot;
+            pendingSnapshot = null;
         } finally {
             lock.unlock();
         }
-        // 2. critical section - process all extracted links
-        Set<String> filteredLinks = processLinks(url, htmlDocument);
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            snapshot.write();
+        } catch (IOException e) {
+            // TODO log "Cannot write checkpoint snapshot --"
+        } finally {
+            lock.lock();
+            try {
+                snapshot.release();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    void pause() {
+        lock.lock();
+        try {
+            if (RUNNING.equals(currentState)) {
+                changeState(CrawlerState.PAUSED);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void resume() {
+        lock.lock();
+        try {
+            if (PAUSED.equals(currentState)) {
+                changeState(RUNNING);
+                dispatchUrlsLocked();
+                scheduleRecrawlLocked();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void stop() {
+        lock.lock();
+        try {
+            if (RUNNING.equals(currentState) || PAUSED.equals(currentState)) {
+                changeState(STOPPED);
+                cancelRecrawlLocked();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recordVisit(QueuedURL url, long contentHash) {
+        lock.lock();
+        try {
+            if (recrawlScheduler.recordVisit(url, contentHash, System.currentTimeMillis())) {
+                metrics.getRecrawlsChanged().increment();
+            }
+            scheduleRecrawlLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // contentHash is 0 when neither the HTTP cache nor recrawling needs it
+    private boolean proceedPage(QueuedURL queuedUrl, FetchedPage page, HttpMetadataCache.Validators cachedPage, long contentHash) {
+        CrawlerURL url = queuedUrl.getUrl();
+        if (cachedPage != null && (page.isNotModified() || contentHash == cachedPage.getContentHash())) {
+            HttpMetadataCache.Entry cachedEntry = httpMetadataCache.get(url);
+            if (cachedEntry != null) {
+                proceedUnchangedPage(queuedUrl, page, cachedEntry);
+                return true;
+            }
+        }
+        if (cachedPage == null && !page.isNotModified() && isUnchangedRecrawl(url, contentHash)) {
+            proceedUnchangedPage(queuedUrl, page, null);
+            return true;
+        }
+        if (page.isNotModified()) {
+            // the server confirmed a copy we no longer have
+            markAsFailed(url, FailureReason.STALE_CACHE);
+            return false;
+        }
+        if (simHashIndex != null && !isRecrawl(url)) {
+            long simHash = SimHash.ofHtml(page.getBody());
+            if (isNearDuplicate(simHash)) {
+                proceedDuplicatePage(url, simHash);
+                return true;
+            }
+        }
+        ExtractedPage extractedPage;
+        try {
+            extractedPage = extractPage(page);
+        } catch (IOException e) {
+            markAsFailed(url, FailureReason.PARSE_ERROR);
+            // TODO log "Cannot parse HTML from --"
+            return false;
+        }
+        // 2. process all extracted links
+        OutcomeLinks outcomeLinks = processLinks(url, page, extractedPage);
+        if (httpMetadataCache != null) {
+            httpMetadataCache.put(url, HttpMetadataCache.Entry.builder()
+                    .etag(page.firstHeader("ETag"))
+                    .lastModified(page.firstHeader("Last-Modified"))
+                    .contentHash(contentHash)
+                    .title(extractedPage.getTitle())
+                    .links(new ArrayList<>(extractedPage.getLinks()))
+                    .build());
+        }
         // 3. critical section - add all links to crawl queue
-        queueLinks(filteredLinks);
+        queueLinks(outcomeLinks.getOnDomain(), queuedUrl.getDepth() + 1);
         return true;
     }
 
-    private Set<String> processLinks(CrawlerURL url, Document htmlDocument) {
+    private boolean isRecrawl(CrawlerURL url) {
+        if (recrawlScheduler == null) {
+            return false;
+        }
+        lock.lock();
+        try {
+            return recrawlScheduler.contains(url);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isUnchangedRecrawl(CrawlerURL url, long contentHash) {
+        if (recrawlScheduler == null) {
+            return false;
+        }
+        lock.lock();
+        try {
+            return recrawlScheduler.isUnchanged(url, contentHash);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // links are taken from the cache instead of parsing the page again
+    private void proceedUnchangedPage(QueuedURL queuedUrl, FetchedPage page, HttpMetadataCache.Entry cachedPage) {
+        CrawlerURL url = queuedUrl.getUrl();
+        metrics.getPagesUnchanged().increment();
+        lock.lock();
         try {
-            lock.lock();
             dataContainer.markAsCrawled(url);
-            Elements outcomeLinks = htmlDocument.select("a[href]");
-            Set<String> filteredLinks = linksFilter.filterLinks(outcomeLinks, config.getExcludedTypes());
-            notifyDataAcquired(htmlDocument, filteredLinks, url);
-            return filteredLinks;
         } finally {
             lock.unlock();
         }
+        if (cachedPage == null) {
+            notifyDataAcquired(url, page, null, null, null, null, OutcomeLinks.of(Collections.emptyList(), host), false);
+            return;
+        }
+        if (!page.isNotModified()) {
+            httpMetadataCache.put(url, cachedPage.toBuilder()
+                    .etag(page.firstHeader("ETag"))
+                    .lastModified(page.firstHeader("Last-Modified"))
+                    .build());
+        }
+        OutcomeLinks outcomeLinks = OutcomeLinks.of(cachedPage.getLinks(), host);
+        notifyDataAcquired(url, page, cachedPage.getTitle(), null, null, null, outcomeLinks, false);
+        queueLinks(outcomeLinks.getOnDomain(), queuedUrl.getDepth() + 1);
     }
 
-    private void queueLinks(Set<String> filteredLinks) {
-        for (String link : filteredLinks) {
-            try {
-                lock.lock();
-                CrawlerURL outcomeLink = new CrawlerURL(new URL(link));
-                if (isOnDomain(outcomeLink)) {
-                    dataContainer.addToQueueIfNotProcessed(outcomeLink);
+    private boolean isNearDuplicate(long simHash) {
+        lock.lock();
+        try {
+            return simHashIndex.addIfNoNearDuplicate(simHash);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void proceedDuplicatePage(CrawlerURL url, long simHash) {
+        metrics.getPagesDuplicate().increment();
+        lock.lock();
+        try {
+            dataContainer.markAsCrawled(url);
+        } finally {
+            lock.unlock();
+        }
+        eventHandler.notify(new DuplicatePageCrawlerEvent(uuid, url.getUrl(), simHash));
+    }
+
+    private void markAsFailed(CrawlerURL url, FailureReason reason) {
+        metrics.recordFailure(reason);
+        lock.lock();
+        try {
+            if (recrawlScheduler != null) {
+                recrawlScheduler.remove(url);
+            }
+            dataContainer.markAsFailed(url);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ExtractedPage extractPage(FetchedPage page) throws IOException {
+        String baseUri = page.getUrl().toString();
+        long parseStartNanos = System.nanoTime();
+        StreamingLinkExtractor.Result result = LinkExtraction.STREAMING.equals(config.getLinkExtraction())
+                ? StreamingLinkExtractor.extract(page.getBody(), charsetOf(page), baseUri)
+                : null;
+        if (result != null) {
+            long filterStartNanos = System.nanoTime();
+            metrics.getParseLatency().record(filterStartNanos - parseStartNanos);
+            Set<String> links = linksFilter.filterLinks(result.getLinks());
+            metrics.getFilterLatency().recordSince(filterStartNanos);
+            return new ExtractedPage(
+                    result.getTitle(),
+                    links,
+                    new LazyValue<>(() -> {
+                        try {
+                            return parseDocument(page);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }));
+        }
+        Document htmlDocument = parseDocument(page);
+        Elements outcomeLinks = htmlDocument.select("a[href]");
+        long filterStartNanos = System.nanoTime();
+        metrics.getParseLatency().record(filterStartNanos - parseStartNanos);
+        Set<String> links = linksFilter.filterLinks(outcomeLinks);
+        metrics.getFilterLatency().recordSince(filterStartNanos);
+        return new ExtractedPage(
+                htmlDocument.title(),
+                links,
+                LazyValue.of(htmlDocument));
+    }
+
+    private static Document parseDocument(FetchedPage page) throws IOException {
+        return Jsoup.parse(new ByteArrayInputStream(page.getBody()), page.getCharset(), page.getUrl().toString());
+    }
+
+    private static Charset charsetOf(FetchedPage page) {
+        if (page.getCharset() == null) {
+            return null;
+        }
+        try {
+            return Charset.forName(page.getCharset());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private OutcomeLinks processLinks(CrawlerURL url, FetchedPage page, ExtractedPage extractedPage) {
+        lock.lock();
+        try {
+            dataContainer.markAsCrawled(url);
+        } finally {
+            lock.unlock();
+        }
+        OutcomeLinks outcomeLinks = OutcomeLinks.of(extractedPage.getLinks(), host);
+        notifyDataAcquired(url, page, extractedPage.getTitle(), ByteBuffer.wrap(page.getBody()), charsetOf(page),
+                extractedPage.getDocument(), outcomeLinks, true);
+        return outcomeLinks;
+    }
+
+    private void queueLinks(Set<URL> linksOnDomain, int depth) {
+        long startNanos = System.nanoTime();
+        List<CrawlerURL> outcomeLinks = new ArrayList<>(linksOnDomain.size());
+        for (URL link : linksOnDomain) {
+            if (isAllowedByRobotsTxt(link)) {
+                outcomeLinks.add(new CrawlerURL(link, urlCanonicalizer));
+            }
+        }
+        addToQueue(outcomeLinks, depth);
+        metrics.getEnqueueLatency().recordSince(startNanos);
+    }
+
+    // the URLs are filtered already, returns the number of them queued
+    private int addToQueue(List<CrawlerURL> urls, int depth) {
+        int queued = 0;
+        lock.lock();
+        try {
+            for (CrawlerURL url : urls) {
+                if (dataContainer.addToQueueIfNotProcessed(url, depth)) {
+                    queued++;
                 }
-            } catch (MalformedURLException e) {
-                // TODO "Invalid link: --. Skipping..."
-            } finally {
-                lock.unlock();
             }
+        } finally {
+            lock.unlock();
         }
+        return queued;
     }
 
-    private void notifyDataAcquired(Document document, Set<String> extractedLinks, CrawlerURL crawlerURL) {
-        Set<URL> urls = extractedLinks.stream()
-                .map(link -> {
-                    try {
-                        return new URL(link);
-                    } catch (MalformedURLException e) {
-                         // TODO "Link process failed. Invalid URL: --"
-                        return null;
-                    }
-                })
-                .filter(Objects::nonNull)
-                .collect(toSet());
-        Set<URL> urlsOutOfDomain = urls.stream().filter(url -> !url.getHost().equals(this.host)).collect(toSet());
-        Set<URL> urlsOnDomain = urls.stream().filter(url -> url.getHost().equals(this.host)).collect(toSet());
-        PageDataAcquiredCrawlerEvent event = new PageDataAcquiredCrawlerEvent(uuid, crawlerURL.getUrl(), document.title(), document.outerHtml(), urlsOutOfDomain, urlsOnDomain);
+    private void notifyDataAcquired(CrawlerURL crawlerURL, FetchedPage page, String title, ByteBuffer body, Charset charset,
+                                    LazyValue<Document> document, OutcomeLinks outcomeLinks, boolean contentChanged) {
+        PageDataAcquiredCrawlerEvent event = new PageDataAcquiredCrawlerEvent(uuid, crawlerURL.getUrl(), title,
+                page.getStatusCode(), page.getHeaders(), body, charset, document, outcomeLinks, contentChanged);
         eventHandler.notify(event);
     }
 
-
     private void changeState(CrawlerState newState) {
         CrawlerState oldState = currentState;
         currentState = newState;
+        if (isEnded(newState) && httpMetadataCache != null && !httpMetadataCacheReleased) {
+            httpMetadataCacheReleased = true;
+            httpMetadataCaches.release(httpMetadataCache);
+        }
+        if (isEnded(newState) && (oldState == null || !isEnded(oldState))) {
+            endedListener.accept(this);
+        }
         eventHandler.notify(new StateChangedCrawlerEvent(uuid, oldState, newState));
     }
 
-    private boolean isOnDomain(CrawlerURL url) {
-        return Objects.equals(url.getUrl().getHost(), this.host);
+    static boolean isEnded(CrawlerState state) {
+        return FINISHED.equals(state) || STOPPED.equals(state) || FAILED.equals(state);
     }
 
     @Override
     public void run() {
         startCrawling();
+        if (isIngestingSitemaps()) {
+            ingestSitemaps();
+        }
+    }
+
+    private boolean isIngestingSitemaps() {
+        lock.lock();
+        try {
+            return ingestingSitemaps;
+        } finally {
+            lock.unlock();
+        }
     }
 }
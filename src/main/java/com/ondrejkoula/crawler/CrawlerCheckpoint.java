@@ -0,0 +1,321 @@
+package com.ondrejkoula.crawler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Persists the crawl state of one crawler as a snapshot plus append-only journals of changes made since the
+ * snapshot. Both are flat streams of primitives: visited URLs are stored as their 64-bit fingerprints, queued URLs
+ * as depth and UTF-8 location.
+ * <p>
+ * Taking a snapshot is split in two. {@link #freeze} copies the state under the crawler lock and starts the next
+ * journal generation, {@link Snapshot#write} serializes and forces the copy without it. A snapshot names the first
+ * journal generation not contained in it, older journals are deleted once it is on disk. Until then a crash leaves
+ * the previous snapshot with every journal after it, and replaying a journal is idempotent anyway.
+ */
+final class CrawlerCheckpoint {
+
+    private static final int MAGIC = 0x43524b50;
+    private static final int VERSION = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String SNAPSHOT_FILE = "snapshot";
+    private static final String SNAPSHOT_TMP_FILE = "snapshot.tmp";
+    private static final String JOURNAL_FILE_PREFIX = "journal.";
+
+    private static final byte URL_QUEUED = 1;
+    private static final byte URL_CRAWLED = 2;
+    private static final byte URL_FAILED = 3;
+
+    private final Path directory;
+    private final UrlCanonicalizer urlCanonicalizer;
+    // serializes writing snapshots, the journal is guarded by the crawler lock
+    private final ReentrantLock snapshotLock;
+    private DataOutputStream journal;
+    private long journalGeneration;
+    private long snapshotGeneration;
+
+    CrawlerCheckpoint(Path directory, UrlCanonicalizer urlCanonicalizer) {
+        this.directory = directory;
+        this.urlCanonicalizer = urlCanonicalizer;
+        this.snapshotLock = new ReentrantLock();
+    }
+
+    boolean exists() {
+        return Files.exists(directory.resolve(SNAPSHOT_FILE));
+    }
+
+    void restore(CrawlerDataContainer dataContainer) throws IOException {
+        dataContainer.clearData();
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        try (DataInputStream snapshot = open(snapshotFile)) {
+            if (snapshot.readInt() != MAGIC || snapshot.readInt() != VERSION) {
+                throw new IllegalStateException("Unsupported checkpoint format: " + snapshotFile);
+            }
+            long firstJournal = snapshot.readLong();
+            dataContainer.restoreAcceptedUrls(snapshot.readInt());
+            dataContainer.crawledUrls().readFrom(snapshot);
+            dataContainer.failedUrls().readFrom(snapshot);
+            // visited URLs from the journals first, so queued URLs crawled after the snapshot are not queued again
+            long lastJournal = replayJournals(firstJournal, dataContainer, false);
+            long queuedUrls = snapshot.readLong();
+            for (long i = 0; i < queuedUrls; i++) {
+                QueuedURL queuedURL = readQueuedUrl(snapshot);
+                if (queuedURL != null) {
+                    dataContainer.restoreQueued(queuedURL, false);
+                }
+            }
+            replayJournals(firstJournal, dataContainer, true);
+            snapshotLock.lock();
+            try {
+                snapshotGeneration = firstJournal;
+            } finally {
+                snapshotLock.unlock();
+            }
+            journalGeneration = Math.max(firstJournal, lastJournal);
+        }
+    }
+
+    /**
+     * Copies the crawl state and journals further changes to a new generation. Called with the crawler lock held,
+     * the returned snapshot is written without it and released under it again.
+     */
+    Snapshot freeze(CrawlerDataContainer dataContainer, Collection<QueuedURL> urlsInProgress) throws IOException {
+        Files.createDirectories(directory);
+        closeJournal();
+        journalGeneration++;
+        journal = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(journalFile(journalGeneration)), BUFFER_SIZE));
+        return new Snapshot(
+                journalGeneration,
+                dataContainer.acceptedUrls(),
+                dataContainer.crawledUrls().copy(),
+                dataContainer.failedUrls().copy(),
+                new ArrayList<>(urlsInProgress),
+                dataContainer.freezeQueued());
+    }
+
+    void flush() throws IOException {
+        if (journal != null) {
+            journal.flush();
+        }
+    }
+
+    void close() throws IOException {
+        closeJournal();
+    }
+
+    void urlQueued(QueuedURL queuedURL) {
+        if (journal != null) {
+            try {
+                journal.writeByte(URL_QUEUED);
+                writeQueuedUrl(journal, queuedURL);
+            } catch (IOException e) {
+                suspendJournal();
+            }
+        }
+    }
+
+    void urlCrawled(long fingerprint) {
+        writeVisited(URL_CRAWLED, fingerprint);
+    }
+
+    void urlFailed(long fingerprint) {
+        writeVisited(URL_FAILED, fingerprint);
+    }
+
+    private void writeVisited(byte type, long fingerprint) {
+        if (journal != null) {
+            try {
+                journal.writeByte(type);
+                journal.writeLong(fingerprint);
+            } catch (IOException e) {
+                suspendJournal();
+            }
+        }
+    }
+
+    // journaling restarts with the next successful snapshot
+    private void suspendJournal() {
+        // TODO log "Cannot write checkpoint journal --"
+        try {
+            closeJournal();
+        } catch (IOException e) {
+            // already failing
+        }
+    }
+
+    private void closeJournal() throws IOException {
+        if (journal != null) {
+            DataOutputStream closed = journal;
+            journal = null;
+            closed.close();
+        }
+    }
+
+    // returns the last generation found
+    private long replayJournals(long firstGeneration, CrawlerDataContainer dataContainer, boolean queuedUrls) throws IOException {
+        long generation = firstGeneration;
+        while (Files.exists(journalFile(generation))) {
+            replayJournal(journalFile(generation), dataContainer, queuedUrls);
+            generation++;
+        }
+        return generation - 1;
+    }
+
+    private void replayJournal(Path journalFile, CrawlerDataContainer dataContainer, boolean queuedUrls) throws IOException {
+        try (DataInputStream in = open(journalFile)) {
+            while (true) {
+                byte type = in.readByte();
+                if (type == URL_QUEUED) {
+                    QueuedURL queuedURL = readQueuedUrl(in);
+                    if (queuedUrls && queuedURL != null) {
+                        dataContainer.restoreQueued(queuedURL, true);
+                    }
+                } else if (type == URL_CRAWLED || type == URL_FAILED) {
+                    long fingerprint = in.readLong();
+                    if (!queuedUrls) {
+                        (type == URL_CRAWLED ? dataContainer.crawledUrls() : dataContainer.failedUrls()).add(fingerprint);
+                    }
+                } else {
+                    throw new IllegalStateException("Corrupted checkpoint journal: " + journalFile);
+                }
+            }
+        } catch (EOFException e) {
+            // end of journal, a record cut off by a crash is ignored
+        }
+    }
+
+    private Path journalFile(long generation) {
+        return directory.resolve(JOURNAL_FILE_PREFIX + generation);
+    }
+
+    private void deleteJournalsBefore(long generation) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(JOURNAL_FILE_PREFIX) && journalGeneration(name) < generation) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private static long journalGeneration(String fileName) {
+        try {
+            return Long.parseLong(fileName.substring(JOURNAL_FILE_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static DataInputStream open(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+    }
+
+    private static void writeQueuedUrl(DataOutputStream out, QueuedURL queuedURL) throws IOException {
+        byte[] location = queuedURL.getUrl().getUrl().toString().getBytes(UTF_8);
+        out.writeInt(queuedURL.getDepth());
+        out.writeInt(location.length);
+        out.write(location);
+    }
+
+    private QueuedURL readQueuedUrl(DataInputStream in) throws IOException {
+        int depth = in.readInt();
+        byte[] location = new byte[in.readInt()];
+        in.readFully(location);
+        try {
+            return new QueuedURL(new CrawlerURL(new URL(new String(location, UTF_8)), urlCanonicalizer), depth);
+        } catch (MalformedURLException e) {
+            // TODO log "Invalid URL in checkpoint --. Skipping..."
+            return null;
+        }
+    }
+
+    final class Snapshot {
+        private final long journalGeneration;
+        private final int acceptedUrls;
+        private final UrlFingerprintSet crawledUrls;
+        private final UrlFingerprintSet failedUrls;
+        private final List<QueuedURL> urlsInProgress;
+        private final CrawlerFrontier.View queuedUrls;
+
+        private Snapshot(long journalGeneration, int acceptedUrls, UrlFingerprintSet crawledUrls, UrlFingerprintSet failedUrls,
+                         List<QueuedURL> urlsInProgress, CrawlerFrontier.View queuedUrls) {
+            this.journalGeneration = journalGeneration;
+            this.acceptedUrls = acceptedUrls;
+            this.crawledUrls = crawledUrls;
+            this.failedUrls = failedUrls;
+            this.urlsInProgress = urlsInProgress;
+            this.queuedUrls = queuedUrls;
+        }
+
+        // a snapshot older than the one on disk is dropped
+        void write() throws IOException {
+            snapshotLock.lock();
+            try {
+                if (journalGeneration <= snapshotGeneration) {
+                    return;
+                }
+                Path snapshotTmpFile = directory.resolve(SNAPSHOT_TMP_FILE);
+                try (FileChannel channel = FileChannel.open(snapshotTmpFile, CREATE, WRITE, TRUNCATE_EXISTING)) {
+                    DataOutputStream snapshot = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+                    snapshot.writeInt(MAGIC);
+                    snapshot.writeInt(VERSION);
+                    snapshot.writeLong(journalGeneration);
+                    snapshot.writeInt(acceptedUrls);
+                    crawledUrls.writeTo(snapshot);
+                    failedUrls.writeTo(snapshot);
+                    snapshot.writeLong(urlsInProgress.size() + queuedUrls.size());
+                    for (QueuedURL queuedURL : urlsInProgress) {
+                        writeQueuedUrl(snapshot, queuedURL);
+                    }
+                    IOException[] writeFailure = new IOException[1];
+                    queuedUrls.forEach(queuedURL -> {
+                        try {
+                            writeQueuedUrl(snapshot, queuedURL);
+                        } catch (IOException e) {
+                            writeFailure[0] = e;
+                        }
+                    });
+                    if (writeFailure[0] != null) {
+                        throw writeFailure[0];
+                    }
+                    snapshot.flush();
+                    channel.force(true);
+                }
+                Files.move(snapshotTmpFile, directory.resolve(SNAPSHOT_FILE), REPLACE_EXISTING, ATOMIC_MOVE);
+                snapshotGeneration = journalGeneration;
+                deleteJournalsBefore(journalGeneration);
+            } finally {
+                snapshotLock.unlock();
+            }
+        }
+
+        // called with the crawler lock held
+        void release() {
+            queuedUrls.release();
+        }
+    }
+}
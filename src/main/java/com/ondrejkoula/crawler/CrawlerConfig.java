@@ -5,16 +5,110 @@ import lombok.Getter;
 import lombok.Singular;
 
 import java.net.URL;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 @Getter
 @Builder
 public class CrawlerConfig {
+    // a trailing * matches any parameter starting with the rest of the name
+    public static final Set<String> TRACKING_QUERY_PARAMETERS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "utm_*", "gclid", "dclid", "fbclid", "msclkid", "yclid", "mc_cid", "mc_eid", "_ga")));
+
     @Singular
     private Set<SupportedType> excludedTypes;
+    @Singular
+    private List<LinkRule> linkRules;
     private Set<URL> urlsToSkip;
     @Singular
     private Set<URL> initialUrls;
     private String userAgent;
     private int crawlDelayMillis;
+    @Builder.Default
+    private int workers = 1;
+    private int maxDepth;
+    private int maxPages;
+    private Path frontierDirectory;
+    @Builder.Default
+    private int frontierMemoryCapacity = 100_000;
+    @Builder.Default
+    private SeenUrlsMode seenUrlsMode = SeenUrlsMode.EXACT;
+    @Builder.Default
+    private long bloomFilterExpectedUrls = 10_000_000;
+    @Builder.Default
+    private double bloomFilterFalsePositiveRate = 0.001;
+    private Path checkpointDirectory;
+    @Builder.Default
+    private long checkpointIntervalMillis = 60_000;
+    @Builder.Default
+    private boolean respectRobotsTxt = true;
+    @Builder.Default
+    private long robotsTxtTtlMillis = 24 * 60 * 60 * 1000;
+    @Builder.Default
+    private FetcherType fetcherType = FetcherType.JSOUP;
+    @Builder.Default
+    private int maxInFlightRequests = 256;
+    private Path httpCacheDirectory;
+    // bodies are read up to this size, larger responses are skipped or aborted
+    @Builder.Default
+    private int maxBodyBytes = 10 * 1024 * 1024;
+    // applies to the response headers and again to the body, Jsoup counts the whole request against it
+    @Builder.Default
+    private long readTimeoutMillis = 30_000;
+    @Builder.Default
+    private LinkExtraction linkExtraction = LinkExtraction.DOM;
+    @Builder.Default
+    private QueryParameterHandling queryParameterHandling = QueryParameterHandling.IGNORE;
+    @Builder.Default
+    private Set<String> strippedQueryParameters = TRACKING_QUERY_PARAMETERS;
+    private boolean nearDuplicateDetection;
+    // SimHash bits in which a page may differ from one already crawled and still count as its duplicate
+    @Builder.Default
+    private int nearDuplicateMaxDistance = 3;
+    // adapts concurrency (up to workers or maxInFlightRequests) and request delay to the responses of the host,
+    // starting from a single request at a time
+    private boolean adaptiveRateControl;
+    // attempts after a transient failure (timeout, connection error, 408, 429, 5xx) before the URL fails
+    @Builder.Default
+    private int maxRetries = 3;
+    @Builder.Default
+    private long retryBaseDelayMillis = 1000;
+    @Builder.Default
+    private long maxRetryDelayMillis = 60_000;
+    // instead of finishing, the crawler keeps revisiting crawled pages as often as their content changes
+    private boolean continuousRecrawl;
+    @Builder.Default
+    private long minRecrawlIntervalMillis = 60 * 60 * 1000;
+    @Builder.Default
+    private long maxRecrawlIntervalMillis = 30L * 24 * 60 * 60 * 1000;
+    // after the first visit, until the page has a change history
+    @Builder.Default
+    private long initialRecrawlIntervalMillis = 24 * 60 * 60 * 1000;
+    // recrawls started per minute at most, newly discovered pages are not limited by it, 0 when unlimited
+    @Builder.Default
+    private int recrawlBudgetPerMinute = 60;
+    // sitemaps whose pages are queued at depth 0 next to the initial URLs, sitemap indexes are followed
+    @Singular
+    private Set<URL> sitemapUrls;
+    // also reads the sitemaps listed in robots.txt, even when its rules are not respected
+    private boolean discoverSitemaps;
+    // sitemap entries queued at once, the newest by lastmod first
+    @Builder.Default
+    private int sitemapBatchSize = 1000;
+    // sitemaps read at most, including those listed by indexes
+    @Builder.Default
+    private int maxSitemaps = 1000;
+    // decompressed, the sitemaps.org protocol allows 50 MB
+    @Builder.Default
+    private long maxSitemapBytes = 50L * 1024 * 1024;
+    // share of the context's fetch slots relative to the other crawlers waiting for one
+    @Builder.Default
+    private int weight = 1;
+    // registers a CrawlerMXBean in the platform MBean server
+    @Builder.Default
+    private boolean jmxEnabled = true;
 }
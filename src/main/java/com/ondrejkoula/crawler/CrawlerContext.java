@@ -1,52 +1,172 @@
 package com.ondrejkoula.crawler;
 
+import lombok.Getter;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.function.Consumer;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
 public class CrawlerContext {
 
+    private static final long CHECKPOINT_JOURNAL_FLUSH_MILLIS = 1000;
+    private static final String MXBEAN_NAME_PREFIX = "com.ondrejkoula.crawler:type=Crawler,uuid=";
+
     private final Map<UUID, Crawler> registeredCrawlers;
+    private final Map<UUID, ScheduledFuture<?>> checkpointTasks;
     private final CrawlerEventHandler eventHandler;
     private final ExecutorService executorService;
+    private final ScheduledExecutorService scheduledExecutorService;
+    // snapshots are serialized and forced here, off the thread running timers of all crawlers
+    private final ScheduledExecutorService checkpointExecutorService;
+    private final CrawlerServices crawlerServices;
+    @Getter
+    private final ExecutionMode executionMode;
 
     private final UuidProvider uuidProvider;
 
     public CrawlerContext(UuidProvider uuidProvider) {
+        this(uuidProvider, CrawlerContextConfig.DEFAULT);
+    }
+
+    /**
+     * With {@link ExecutionMode#VIRTUAL_THREADS} every crawler task and subscriber drain loop runs on its own virtual
+     * thread, so blocking fetches do not hold a platform thread. Use {@link #getExecutionMode()} to see whether
+     * the runtime supports it.
+     */
+    public CrawlerContext(UuidProvider uuidProvider, ExecutionMode executionMode) {
+        this(uuidProvider, CrawlerContextConfig.builder().executionMode(executionMode).build());
+    }
+
+    public CrawlerContext(UuidProvider uuidProvider, CrawlerContextConfig contextConfig) {
         this.uuidProvider = uuidProvider;
         this.registeredCrawlers = new ConcurrentHashMap<>();
-        this.executorService = Executors.newCachedThreadPool();
-        this.eventHandler = new CrawlerEventHandler(executorService);
+        this.checkpointTasks = new ConcurrentHashMap<>();
+        this.executionMode = CrawlerExecutors.effectiveMode(contextConfig.getExecutionMode());
+        this.executorService = CrawlerExecutors.newExecutor(this.executionMode);
+        this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "crawler-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.checkpointExecutorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "crawler-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.eventHandler = new CrawlerEventHandler(executorService, scheduledExecutorService);
+        this.crawlerServices = CrawlerServices.builder()
+                .eventHandler(eventHandler)
+                .executorService(executorService)
+                .scheduledExecutorService(scheduledExecutorService)
+                .politenessScheduler(new PolitenessScheduler())
+                .robotsTxtCache(new RobotsTxtCache(executorService))
+                .fetchGovernor(new FetchGovernor(
+                        contextConfig.getMaxConcurrentFetches(),
+                        contextConfig.getMaxBytesPerSecond(),
+                        executorService,
+                        scheduledExecutorService))
+                .httpMetadataCaches(new HttpMetadataCaches())
+                .endedListener(this::unregisterMXBean)
+                .build();
     }
 
     @SafeVarargs
     public final void subscribePageDataAcquired(UUID crawlerUuid, Consumer<PageDataAcquiredCrawlerEvent>... consumers) {
+        subscribePageDataAcquired(crawlerUuid, SubscriptionOptions.DEFAULT, consumers);
+    }
+
+    @SafeVarargs
+    public final void subscribePageDataAcquired(UUID crawlerUuid, SubscriptionOptions options, Consumer<PageDataAcquiredCrawlerEvent>... consumers) {
         if (registeredCrawlers.get(crawlerUuid) != null) {
             for (Consumer<PageDataAcquiredCrawlerEvent> consumer : consumers)
-                this.eventHandler.subscribePageDataAcquired(crawlerUuid, consumer);
+                this.eventHandler.subscribePageDataAcquired(crawlerUuid, consumer, options);
         }
     }
 
     @SafeVarargs
     public final void subscribeStateChanged(UUID crawlerUuid, Consumer<StateChangedCrawlerEvent>... consumers) {
+        subscribeStateChanged(crawlerUuid, SubscriptionOptions.DEFAULT, consumers);
+    }
+
+    @SafeVarargs
+    public final void subscribeStateChanged(UUID crawlerUuid, SubscriptionOptions options, Consumer<StateChangedCrawlerEvent>... consumers) {
         if (registeredCrawlers.get(crawlerUuid) != null) {
             for (Consumer<StateChangedCrawlerEvent> consumer : consumers)
-                this.eventHandler.subscribeStateChanged(crawlerUuid, consumer);
+                this.eventHandler.subscribeStateChanged(crawlerUuid, consumer, options);
+        }
+    }
+
+    @SafeVarargs
+    public final void subscribeDuplicatePages(UUID crawlerUuid, Consumer<DuplicatePageCrawlerEvent>... consumers) {
+        subscribeDuplicatePages(crawlerUuid, SubscriptionOptions.DEFAULT, consumers);
+    }
+
+    @SafeVarargs
+    public final void subscribeDuplicatePages(UUID crawlerUuid, SubscriptionOptions options, Consumer<DuplicatePageCrawlerEvent>... consumers) {
+        if (registeredCrawlers.get(crawlerUuid) != null) {
+            for (Consumer<DuplicatePageCrawlerEvent> consumer : consumers)
+                this.eventHandler.subscribeDuplicatePages(crawlerUuid, consumer, options);
+        }
+    }
+
+    /**
+     * Delivers page events in batches of at most {@code maxBatchSize}. A batch is delivered once it is full, once
+     * its first event waited {@code maxLatency}, or when the crawler ends.
+     */
+    public void subscribePageDataBatches(UUID crawlerUuid, int maxBatchSize, Duration maxLatency, Consumer<List<PageDataAcquiredCrawlerEvent>> consumer) {
+        if (registeredCrawlers.get(crawlerUuid) != null) {
+            this.eventHandler.subscribePageDataBatches(crawlerUuid, maxBatchSize, maxLatency.toMillis(), consumer);
+        }
+    }
+
+    /**
+     * Persists the pages of the crawler in the store, the pages of one batch are written with a single commit. A
+     * store may be attached to several crawlers, all with the query parameter rules of the store.
+     */
+    public void attachPageStore(UUID crawlerUuid, PageStore pageStore) {
+        Crawler crawler = registeredCrawlers.get(crawlerUuid);
+        if (crawler != null) {
+            if (!crawler.getUrlCanonicalizer().equals(pageStore.getUrlCanonicalizer())) {
+                throw new IllegalArgumentException("Page store and crawler handle query parameters differently.");
+            }
+            this.eventHandler.subscribePageDataBatches(crawlerUuid, pageStore.getConfig().getMaxBatchSize(),
+                    pageStore.getConfig().getMaxBatchLatencyMillis(), pageStore::append);
         }
     }
 
     public CrawlerInfo registerNewCrawler(CrawlerConfig config) {
         UUID uuid = uuidProvider.newUuid();
-        Crawler crawler = new Crawler(uuid, config, eventHandler);
+        Crawler crawler = new Crawler(uuid, config, crawlerServices);
         registeredCrawlers.put(uuid, crawler);
-        return CrawlerInfo.builder()
-                .uuid(crawler.getUuid())
-                .host(crawler.getHost())
-                .state(crawler.getCurrentState())
-                .build();
+        registerMXBean(crawler);
+        return toCrawlerInfo(crawler);
+    }
+
+    public CrawlerInfo resumeFromCheckpoint(UUID crawlerUuid, CrawlerConfig config) {
+        if (config.getCheckpointDirectory() == null) {
+            throw new IllegalArgumentException("No checkpoint directory configured.");
+        }
+        if (registeredCrawlers.containsKey(crawlerUuid)) {
+            throw new IllegalStateException(String.format("Crawler with UUID %s is already registered.", crawlerUuid));
+        }
+        Crawler crawler = new Crawler(crawlerUuid, config, crawlerServices);
+        crawler.restoreFromCheckpoint();
+        registeredCrawlers.put(crawlerUuid, crawler);
+        registerMXBean(crawler);
+        return toCrawlerInfo(crawler);
     }
 
     public CrawlerInfo getCrawlerInfo(UUID uuid) {
@@ -55,11 +175,14 @@ public class CrawlerContext {
             // TODO log "No crawler exists with UUID: "
             return null;
         }
-        return CrawlerInfo.builder().uuid(crawler.getUuid()).host(crawler.getHost()).state(crawler.getCurrentState()).build();
+        return toCrawlerInfo(crawler);
     }
 
     public void startCrawler(UUID crawlerUuid) {
-        doActionWithCrawler(crawlerUuid, executorService::execute);
+        doActionWithCrawler(crawlerUuid, crawler -> {
+            scheduleCheckpoints(crawler);
+            executorService.execute(crawler);
+        });
     }
 
     public void pauseCrawler(UUID crawlerUuid) {
@@ -74,6 +197,104 @@ public class CrawlerContext {
         doActionWithCrawler(crawlerUuid, Crawler::stop);
     }
 
+    /**
+     * Stops all crawlers, unregisters their MXBeans and shuts the threads of the context down once the final
+     * checkpoints are written. The context cannot be used afterwards.
+     */
+    public void shutdown() {
+        registeredCrawlers.values().forEach(crawler -> {
+            crawler.stop();
+            unregisterMXBean(crawler);
+        });
+        checkpointTasks.forEach((uuid, checkpointTask) -> {
+            checkpointTask.cancel(false);
+            checkpointExecutorService.execute(registeredCrawlers.get(uuid)::checkpoint);
+        });
+        checkpointTasks.clear();
+        checkpointExecutorService.shutdown();
+        scheduledExecutorService.shutdown();
+        executorService.shutdown();
+    }
+
+    private void scheduleCheckpoints(Crawler crawler) {
+        if (!crawler.isCheckpointEnabled()) {
+            return;
+        }
+        checkpointTasks.computeIfAbsent(crawler.getUuid(), uuid -> checkpointExecutorService.scheduleWithFixedDelay(
+                () -> {
+                    if (!crawler.checkpoint()) {
+                        ScheduledFuture<?> checkpointTask = checkpointTasks.remove(uuid);
+                        if (checkpointTask != null) {
+                            checkpointTask.cancel(false);
+                        }
+                    }
+                },
+                CHECKPOINT_JOURNAL_FLUSH_MILLIS,
+                CHECKPOINT_JOURNAL_FLUSH_MILLIS,
+                MILLISECONDS));
+    }
+
+    private void registerMXBean(Crawler crawler) {
+        if (!crawler.getConfig().isJmxEnabled()) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName(MXBEAN_NAME_PREFIX + crawler.getUuid());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new CrawlerMXBeanImpl(crawler, eventHandler), name);
+        } catch (JMException e) {
+            // TODO log "Cannot register crawler MXBean --"
+        }
+    }
+
+    private void unregisterMXBean(Crawler crawler) {
+        if (!crawler.getConfig().isJmxEnabled()) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(MXBEAN_NAME_PREFIX + crawler.getUuid()));
+        } catch (InstanceNotFoundException e) {
+            // unregistered when the crawler ended
+        } catch (JMException e) {
+            // TODO log "Cannot unregister crawler MXBean --"
+        }
+    }
+
+    private CrawlerInfo toCrawlerInfo(Crawler crawler) {
+        long visitedUrls = crawler.getVisitedUrls();
+        long visitedUrlsMemoryBytes = crawler.getVisitedUrlsMemoryBytes();
+        CrawlerMetrics metrics = crawler.getMetrics();
+        return CrawlerInfo.builder()
+                .uuid(crawler.getUuid())
+                .host(crawler.getHost())
+                .state(crawler.getCurrentState())
+                .visitedUrls(visitedUrls)
+                .visitedUrlsMemoryBytes(visitedUrlsMemoryBytes)
+                .visitedUrlsBytesPerUrl(visitedUrls == 0 ? 0 : (double) visitedUrlsMemoryBytes / visitedUrls)
+                .pagesFetched(metrics.getPagesFetched().sum())
+                .pagesUnchanged(metrics.getPagesUnchanged().sum())
+                .pagesDuplicate(metrics.getPagesDuplicate().sum())
+                .pagesFailed(metrics.pagesFailed())
+                .pagesFailedByReason(metrics.pagesFailedByReason())
+                .bytesDownloaded(metrics.getBytesDownloaded().sum())
+                .bytesSkipped(metrics.getBytesSkipped().sum())
+                .retries(metrics.getRetries().sum())
+                .recrawls(metrics.getRecrawls().sum())
+                .recrawlsChanged(metrics.getRecrawlsChanged().sum())
+                .recrawlScheduledUrls(crawler.getRecrawlScheduledUrls())
+                .sitemapsRead(metrics.getSitemapsRead().sum())
+                .sitemapUrls(metrics.getSitemapUrls().sum())
+                .concurrencyLimit(crawler.getRateController().getConcurrencyLimit())
+                .adaptiveDelayMillis(crawler.getRateController().getExtraDelayMillis())
+                .frontierSize(crawler.getFrontierSize())
+                .fetchLatency(metrics.getFetchLatency().snapshot())
+                .slotWaitLatency(metrics.getSlotWaitLatency().snapshot())
+                .parseLatency(metrics.getParseLatency().snapshot())
+                .filterLatency(metrics.getFilterLatency().snapshot())
+                .enqueueLatency(metrics.getEnqueueLatency().snapshot())
+                .subscribers(eventHandler.subscriberMetrics(crawler.getUuid()))
+                .build();
+    }
+
     private void doActionWithCrawler(UUID crawlerUuid, Consumer<Crawler> crawlerConsumer) {
         Crawler crawler = registeredCrawlers.get(crawlerUuid);
         if (crawler != null) {
@@ -0,0 +1,26 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Resources shared by all crawlers of a {@link CrawlerContext}. Fetch slots and bandwidth are handed to crawlers
+ * in proportion to {@link CrawlerConfig#getWeight()}.
+ */
+@Getter
+@Builder
+public class CrawlerContextConfig {
+
+    public static final CrawlerContextConfig DEFAULT = CrawlerContextConfig.builder().build();
+
+    static final int UNLIMITED = 0;
+
+    @Builder.Default
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
+    // fetches running at once across all crawlers, each holds one connection while it runs
+    @Builder.Default
+    private int maxConcurrentFetches = UNLIMITED;
+    // downloaded bytes per second across all crawlers
+    @Builder.Default
+    private long maxBytesPerSecond = UNLIMITED;
+}
@@ -1,51 +1,168 @@
 package com.ondrejkoula.crawler;
 
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Queue;
 import java.util.Set;
 
 public class CrawlerDataContainer {
 
-    private Queue<CrawlerURL> urlsToCrawl;
-    private Set<CrawlerURL> crawledUrls;
-    private Set<CrawlerURL> failedUrls;
+    static final int UNLIMITED = 0;
+
+    private final CrawlerFrontier urlsToCrawl;
+    // index of URLs queued or in progress, an entry is removed once the URL is marked as crawled or failed
+    private final OpenAddressingUrlFingerprintSet pendingUrls;
+    private final UrlFingerprintSet crawledUrls;
+    private final OpenAddressingUrlFingerprintSet failedUrls;
+
+    private final int maxDepth;
+    private final int maxPages;
+    private int acceptedUrls;
+    private CrawlerCheckpoint checkpoint;
 
     public CrawlerDataContainer() {
-        this.urlsToCrawl = new LinkedList<>();
-        this.crawledUrls = new HashSet<>();
-        this.failedUrls = new HashSet<>();
+        this(new InMemoryCrawlerFrontier(), new OpenAddressingUrlFingerprintSet(), null, null, UNLIMITED, UNLIMITED);
+    }
+
+    CrawlerDataContainer(CrawlerFrontier frontier,
+                         UrlFingerprintSet crawledUrls,
+                         Set<CrawlerURL> urlsToSkip,
+                         Set<CrawlerURL> urlsToCrawl,
+                         int maxDepth,
+                         int maxPages) {
+        this.urlsToCrawl = frontier;
+        this.pendingUrls = new OpenAddressingUrlFingerprintSet();
+        this.crawledUrls = crawledUrls;
+        this.failedUrls = new OpenAddressingUrlFingerprintSet();
+        this.maxDepth = maxDepth;
+        this.maxPages = maxPages;
+        if (urlsToSkip != null) {
+            urlsToSkip.forEach(url -> crawledUrls.add(url.getFingerprint()));
+        }
+        if (urlsToCrawl != null) {
+            urlsToCrawl.forEach(url -> addToQueueIfNotProcessed(url, 0));
+        }
+    }
+
+    static UrlFingerprintSet createCrawledUrlsSet(CrawlerConfig config) {
+        if (SeenUrlsMode.BLOOM_FILTER.equals(config.getSeenUrlsMode())) {
+            return new BloomFilterUrlFingerprintSet(config.getBloomFilterExpectedUrls(), config.getBloomFilterFalsePositiveRate());
+        }
+        return new OpenAddressingUrlFingerprintSet();
+    }
+
+    boolean addToQueueIfNotProcessed(CrawlerURL url, int depth) {
+        if (maxDepth != UNLIMITED && depth > maxDepth) {
+            return false;
+        }
+        if (maxPages != UNLIMITED && acceptedUrls >= maxPages) {
+            return false;
+        }
+        if (isDone(url) || !pendingUrls.add(url.getFingerprint())) {
+            return false;
+        }
+        QueuedURL queuedURL = new QueuedURL(url, depth);
+        urlsToCrawl.add(queuedURL);
+        acceptedUrls++;
+        if (checkpoint != null) {
+            checkpoint.urlQueued(queuedURL);
+        }
+        return true;
     }
 
-    CrawlerDataContainer(Set<CrawlerURL> urlsToSkip, Set<CrawlerURL> urlsToCrawl) {
-        this.urlsToCrawl = urlsToCrawl == null ? new LinkedList<>() : new LinkedList<>(urlsToCrawl);
-        this.crawledUrls = urlsToSkip == null ? new HashSet<>() : urlsToSkip;
-        this.failedUrls = new HashSet<>();
+    // a crawled URL queued again for a recrawl, it does not count against the page budget
+    boolean requeue(QueuedURL queuedURL) {
+        if (!pendingUrls.add(queuedURL.getUrl().getFingerprint())) {
+            return false;
+        }
+        urlsToCrawl.add(queuedURL);
+        return true;
     }
 
-    boolean addToQueueIfNotProcessed(CrawlerURL url) {
-        return !isDone(url) && !urlsToCrawl.contains(url) && urlsToCrawl.add(url);
+    // false once the page budget is used up
+    boolean acceptsUrls() {
+        return maxPages == UNLIMITED || acceptedUrls < maxPages;
     }
 
-    CrawlerURL nextUrl() {
+    QueuedURL nextUrl() {
         return urlsToCrawl.poll();
     }
 
+    boolean hasUrlsToCrawl() {
+        return !urlsToCrawl.isEmpty();
+    }
+
     boolean markAsCrawled(CrawlerURL url) {
-        return crawledUrls.contains(url) || crawledUrls.add(url);
+        pendingUrls.remove(url.getFingerprint());
+        crawledUrls.add(url.getFingerprint());
+        if (checkpoint != null) {
+            checkpoint.urlCrawled(url.getFingerprint());
+        }
+        return true;
     }
 
     boolean markAsFailed(CrawlerURL url) {
-        return failedUrls.contains(url) || failedUrls.add(url);
+        pendingUrls.remove(url.getFingerprint());
+        failedUrls.add(url.getFingerprint());
+        if (checkpoint != null) {
+            checkpoint.urlFailed(url.getFingerprint());
+        }
+        return true;
     }
 
     boolean isDone(CrawlerURL url) {
-        return crawledUrls.contains(url) || failedUrls.contains(url);
+        return crawledUrls.contains(url.getFingerprint()) || failedUrls.contains(url.getFingerprint());
+    }
+
+    long visitedUrls() {
+        return crawledUrls.size() + failedUrls.size();
+    }
+
+    long visitedUrlsMemoryBytes() {
+        return crawledUrls.memoryBytes() + failedUrls.memoryBytes();
+    }
+
+    void setCheckpoint(CrawlerCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    UrlFingerprintSet crawledUrls() {
+        return crawledUrls;
+    }
+
+    UrlFingerprintSet failedUrls() {
+        return failedUrls;
+    }
+
+    int acceptedUrls() {
+        return acceptedUrls;
+    }
+
+    long queuedUrlsCount() {
+        return urlsToCrawl.size();
+    }
+
+    CrawlerFrontier.View freezeQueued() {
+        return urlsToCrawl.freeze();
+    }
+
+    void restoreAcceptedUrls(int acceptedUrls) {
+        this.acceptedUrls = acceptedUrls;
+    }
+
+    // restored URLs already passed the depth and page budgets when they were queued originally
+    void restoreQueued(QueuedURL queuedURL, boolean countAccepted) {
+        CrawlerURL url = queuedURL.getUrl();
+        if (!isDone(url) && pendingUrls.add(url.getFingerprint())) {
+            urlsToCrawl.add(queuedURL);
+            if (countAccepted) {
+                acceptedUrls++;
+            }
+        }
     }
 
     public void clearData() {
         urlsToCrawl.clear();
+        pendingUrls.clear();
         crawledUrls.clear();
         failedUrls.clear();
+        acceptedUrls = 0;
     }
 }
@@ -1,5 +1,6 @@
 package com.ondrejkoula.crawler;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
@@ -10,4 +11,7 @@ import java.util.UUID;
 abstract class CrawlerEvent {
 
     private final UUID crawlerUuid;
+    // System.nanoTime() at creation, dispatch lag of subscribers is measured from here
+    @Getter(AccessLevel.PACKAGE)
+    private final long createdNanos = System.nanoTime();
 }
@@ -1,58 +1,97 @@
 package com.ondrejkoula.crawler;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Consumer;
 
-import static java.util.Optional.ofNullable;
-
+/**
+ * Routes crawler events to subscribers. Subscriptions are copy-on-write lists, so publishing reads them without
+ * a lock and hands the event to the queue of every subscriber.
+ */
 final class CrawlerEventHandler {
 
-    private final Map<UUID, Set<Consumer<PageDataAcquiredCrawlerEvent>>> dataAcquiredConsumers;
-    private final Map<UUID, Set<Consumer<StateChangedCrawlerEvent>>> stateChangedConsumers;
+    private final Map<UUID, List<EventSubscription<PageDataAcquiredCrawlerEvent>>> dataAcquiredSubscriptions;
+    private final Map<UUID, List<EventSubscription<StateChangedCrawlerEvent>>> stateChangedSubscriptions;
+    private final Map<UUID, List<EventSubscription<DuplicatePageCrawlerEvent>>> duplicatePageSubscriptions;
+    // batched page events, state events are routed there too so batches are flushed when the crawler ends
+    private final Map<UUID, List<EventSubscription<CrawlerEvent>>> batchSubscriptions;
 
-    private final ReentrantLock lock;
     private final ExecutorService executorService;
+    private final ScheduledExecutorService scheduledExecutorService;
 
-    CrawlerEventHandler(ExecutorService executorService) {
+    CrawlerEventHandler(ExecutorService executorService, ScheduledExecutorService scheduledExecutorService) {
         this.executorService = executorService;
-        this.dataAcquiredConsumers = new ConcurrentHashMap<>();
-        this.stateChangedConsumers = new ConcurrentHashMap<>();
-        this.lock = new ReentrantLock();
+        this.scheduledExecutorService = scheduledExecutorService;
+        this.dataAcquiredSubscriptions = new ConcurrentHashMap<>();
+        this.stateChangedSubscriptions = new ConcurrentHashMap<>();
+        this.duplicatePageSubscriptions = new ConcurrentHashMap<>();
+        this.batchSubscriptions = new ConcurrentHashMap<>();
     }
 
     <E extends CrawlerEvent> void notify(E event) {
         UUID crawlerUuid = event.getCrawlerUuid();
-        lock.lock();
-        try {
-            if (event instanceof PageDataAcquiredCrawlerEvent) {
-                ofNullable(dataAcquiredConsumers.get(crawlerUuid))
-                        .ifPresent(consumers -> consumers.forEach(consumer -> {
-                            executorService.execute(() -> consumer.accept((PageDataAcquiredCrawlerEvent) event));
-                        }));
-            } else if (event instanceof StateChangedCrawlerEvent) {
-                ofNullable(stateChangedConsumers.get(crawlerUuid))
-                        .ifPresent(consumers -> consumers.forEach(consumer -> {
-                            executorService.execute(() -> consumer.accept((StateChangedCrawlerEvent) event));
-                        }));
-            } else
-                throw new IllegalArgumentException(String.format("Unsupported event type: %s", event.getClass().getName()));
-        } finally {
-            lock.unlock();
-        }
+        // state changes are published under the crawler lock, waiting for a subscriber there could deadlock
+        boolean mayBlock = !(event instanceof StateChangedCrawlerEvent);
+        if (event instanceof PageDataAcquiredCrawlerEvent) {
+            publish(dataAcquiredSubscriptions.get(crawlerUuid), (PageDataAcquiredCrawlerEvent) event, mayBlock);
+        } else if (event instanceof StateChangedCrawlerEvent) {
+            publish(stateChangedSubscriptions.get(crawlerUuid), (StateChangedCrawlerEvent) event, mayBlock);
+        } else if (event instanceof DuplicatePageCrawlerEvent) {
+            publish(duplicatePageSubscriptions.get(crawlerUuid), (DuplicatePageCrawlerEvent) event, mayBlock);
+        } else
+            throw new IllegalArgumentException(String.format("Unsupported event type: %s", event.getClass().getName()));
+        publish(batchSubscriptions.get(crawlerUuid), event, mayBlock);
+    }
+
+    void subscribePageDataAcquired(UUID crawlerUuid, Consumer<PageDataAcquiredCrawlerEvent> consumer, SubscriptionOptions options) {
+        dataAcquiredSubscriptions.computeIfAbsent(crawlerUuid, o -> new CopyOnWriteArrayList<>())
+                .add(new EventSubscription<>("PageDataAcquired", consumer, options, executorService));
+    }
+
+    void subscribeStateChanged(UUID crawlerUuid, Consumer<StateChangedCrawlerEvent> consumer, SubscriptionOptions options) {
+        stateChangedSubscriptions.computeIfAbsent(crawlerUuid, o -> new CopyOnWriteArrayList<>())
+                .add(new EventSubscription<>("StateChanged", consumer, options, executorService));
+    }
 
+    void subscribeDuplicatePages(UUID crawlerUuid, Consumer<DuplicatePageCrawlerEvent> consumer, SubscriptionOptions options) {
+        duplicatePageSubscriptions.computeIfAbsent(crawlerUuid, o -> new CopyOnWriteArrayList<>())
+                .add(new EventSubscription<>("DuplicatePage", consumer, options, executorService));
     }
 
-    void subscribePageDataAcquired(UUID crawlerUuid, Consumer<PageDataAcquiredCrawlerEvent> consumer) {
-        dataAcquiredConsumers.computeIfAbsent(crawlerUuid, o -> new HashSet<>()).add(consumer);
+    void subscribePageDataBatches(UUID crawlerUuid, int maxBatchSize, long maxLatencyMillis, Consumer<List<PageDataAcquiredCrawlerEvent>> consumer) {
+        PageDataBatcher batcher = new PageDataBatcher(consumer, maxBatchSize, maxLatencyMillis, executorService, scheduledExecutorService);
+        batchSubscriptions.computeIfAbsent(crawlerUuid, o -> new CopyOnWriteArrayList<>())
+                .add(new EventSubscription<>("PageDataBatch", batcher, SubscriptionOptions.DEFAULT, executorService));
     }
 
-    void subscribeStateChanged(UUID crawlerUuid, Consumer<StateChangedCrawlerEvent> consumer) {
-        stateChangedConsumers.computeIfAbsent(crawlerUuid, o -> new HashSet<>()).add(consumer);
+    List<SubscriberMetrics> subscriberMetrics(UUID crawlerUuid) {
+        List<SubscriberMetrics> metrics = new ArrayList<>();
+        addMetrics(metrics, dataAcquiredSubscriptions.get(crawlerUuid));
+        addMetrics(metrics, stateChangedSubscriptions.get(crawlerUuid));
+        addMetrics(metrics, duplicatePageSubscriptions.get(crawlerUuid));
+        addMetrics(metrics, batchSubscriptions.get(crawlerUuid));
+        return metrics;
+    }
+
+    private static <E extends CrawlerEvent> void addMetrics(List<SubscriberMetrics> metrics, List<EventSubscription<E>> subscriptions) {
+        if (subscriptions != null) {
+            for (EventSubscription<E> subscription : subscriptions) {
+                metrics.add(subscription.metrics());
+            }
+        }
+    }
+
+    private static <E extends CrawlerEvent> void publish(List<EventSubscription<E>> subscriptions, E event, boolean mayBlock) {
+        if (subscriptions != null) {
+            for (EventSubscription<E> subscription : subscriptions) {
+                subscription.publish(event, mayBlock);
+            }
+        }
     }
 }
@@ -0,0 +1,56 @@
+package com.ondrejkoula.crawler;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the executor of a context. Virtual threads are looked up reflectively, so the library still runs on
+ * JDKs without them.
+ */
+final class CrawlerExecutors {
+
+    private static final String VIRTUAL_THREAD_NAME_PREFIX = "crawler-virtual-";
+    // null when the runtime has no virtual threads
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = virtualThreadFactory();
+
+    private CrawlerExecutors() {
+    }
+
+    static boolean isVirtualThreadsSupported() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    static ExecutionMode effectiveMode(ExecutionMode requested) {
+        if (ExecutionMode.VIRTUAL_THREADS.equals(requested) && !isVirtualThreadsSupported()) {
+            // TODO log "Virtual threads are not available, falling back to platform threads"
+            return ExecutionMode.PLATFORM_THREADS;
+        }
+        return requested;
+    }
+
+    static ExecutorService newExecutor(ExecutionMode mode) {
+        if (ExecutionMode.VIRTUAL_THREADS.equals(mode) && isVirtualThreadsSupported()) {
+            try {
+                Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+                return (ExecutorService) newThreadPerTaskExecutor.invoke(null, VIRTUAL_THREAD_FACTORY);
+            } catch (ReflectiveOperationException e) {
+                // TODO log "Cannot create virtual thread executor, falling back to platform threads"
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+    // Thread.ofVirtual().name(prefix, 0).factory()
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, VIRTUAL_THREAD_NAME_PREFIX, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | LinkageError | SecurityException e) {
+            return null;
+        }
+    }
+}
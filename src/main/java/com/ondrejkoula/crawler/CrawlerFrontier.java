@@ -0,0 +1,30 @@
+package com.ondrejkoula.crawler;
+
+import java.util.function.Consumer;
+
+interface CrawlerFrontier {
+
+    void add(QueuedURL url);
+
+    QueuedURL poll();
+
+    boolean isEmpty();
+
+    long size();
+
+    void clear();
+
+    void forEach(Consumer<QueuedURL> consumer);
+
+    // the queue as of now, readable without the crawler lock until released under it
+    View freeze();
+
+    interface View {
+
+        long size();
+
+        void forEach(Consumer<QueuedURL> consumer);
+
+        void release();
+    }
+}
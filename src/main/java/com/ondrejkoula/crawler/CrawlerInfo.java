@@ -3,6 +3,8 @@ package com.ondrejkoula.crawler;
 import lombok.Builder;
 import lombok.Getter;
 
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Getter
@@ -11,4 +13,35 @@ public class CrawlerInfo {
     private UUID uuid;
     private String host;
     private CrawlerState state;
+    private long visitedUrls;
+    private long visitedUrlsMemoryBytes;
+    private double visitedUrlsBytesPerUrl;
+    // responses received, including unchanged and duplicate pages
+    private long pagesFetched;
+    private long pagesUnchanged;
+    private long pagesDuplicate;
+    private long pagesFailed;
+    private Map<FailureReason, Long> pagesFailedByReason;
+    private long bytesDownloaded;
+    // Content-Length of responses skipped for their content type or size, minus what was read of them
+    private long bytesSkipped;
+    private long retries;
+    // visits of crawled pages taken from the recrawl schedule, those which found the page changed and the pages
+    // waiting for their next visit
+    private long recrawls;
+    private long recrawlsChanged;
+    private int recrawlScheduledUrls;
+    // sitemaps read and the URLs of their entries queued
+    private long sitemapsRead;
+    private long sitemapUrls;
+    private int concurrencyLimit;
+    // added to the crawl delay while the host pushes back
+    private long adaptiveDelayMillis;
+    private long frontierSize;
+    private LatencySnapshot fetchLatency;
+    private LatencySnapshot slotWaitLatency;
+    private LatencySnapshot parseLatency;
+    private LatencySnapshot filterLatency;
+    private LatencySnapshot enqueueLatency;
+    private List<SubscriberMetrics> subscribers;
 }
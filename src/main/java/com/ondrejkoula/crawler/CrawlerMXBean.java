@@ -0,0 +1,63 @@
+package com.ondrejkoula.crawler;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Metrics of one crawler registered in the platform MBean server as
+ * {@code com.ondrejkoula.crawler:type=Crawler,uuid=<crawler UUID>}.
+ */
+public interface CrawlerMXBean {
+
+    String getUuid();
+
+    String getHost();
+
+    String getState();
+
+    long getVisitedUrls();
+
+    long getPagesFetched();
+
+    long getPagesUnchanged();
+
+    long getPagesDuplicate();
+
+    long getPagesFailed();
+
+    Map<String, Long> getPagesFailedByReason();
+
+    long getBytesDownloaded();
+
+    long getBytesSkipped();
+
+    long getRetries();
+
+    long getRecrawls();
+
+    long getRecrawlsChanged();
+
+    int getRecrawlScheduledUrls();
+
+    long getSitemapsRead();
+
+    long getSitemapUrls();
+
+    int getConcurrencyLimit();
+
+    long getAdaptiveDelayMillis();
+
+    long getFrontierSize();
+
+    LatencySnapshot getFetchLatency();
+
+    LatencySnapshot getSlotWaitLatency();
+
+    LatencySnapshot getParseLatency();
+
+    LatencySnapshot getFilterLatency();
+
+    LatencySnapshot getEnqueueLatency();
+
+    List<SubscriberMetrics> getSubscribers();
+}
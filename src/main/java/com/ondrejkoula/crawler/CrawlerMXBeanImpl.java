@@ -0,0 +1,148 @@
+package com.ondrejkoula.crawler;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+final class CrawlerMXBeanImpl implements CrawlerMXBean {
+
+    private final Crawler crawler;
+    private final CrawlerEventHandler eventHandler;
+
+    CrawlerMXBeanImpl(Crawler crawler, CrawlerEventHandler eventHandler) {
+        this.crawler = crawler;
+        this.eventHandler = eventHandler;
+    }
+
+    @Override
+    public String getUuid() {
+        return crawler.getUuid().toString();
+    }
+
+    @Override
+    public String getHost() {
+        return crawler.getHost();
+    }
+
+    @Override
+    public String getState() {
+        return String.valueOf(crawler.getCurrentState());
+    }
+
+    @Override
+    public long getVisitedUrls() {
+        return crawler.getVisitedUrls();
+    }
+
+    @Override
+    public long getPagesFetched() {
+        return crawler.getMetrics().getPagesFetched().sum();
+    }
+
+    @Override
+    public long getPagesUnchanged() {
+        return crawler.getMetrics().getPagesUnchanged().sum();
+    }
+
+    @Override
+    public long getPagesDuplicate() {
+        return crawler.getMetrics().getPagesDuplicate().sum();
+    }
+
+    @Override
+    public long getPagesFailed() {
+        return crawler.getMetrics().pagesFailed();
+    }
+
+    @Override
+    public Map<String, Long> getPagesFailedByReason() {
+        Map<String, Long> failed = new LinkedHashMap<>();
+        crawler.getMetrics().pagesFailedByReason().forEach((reason, count) -> failed.put(reason.name(), count));
+        return failed;
+    }
+
+    @Override
+    public long getBytesDownloaded() {
+        return crawler.getMetrics().getBytesDownloaded().sum();
+    }
+
+    @Override
+    public long getBytesSkipped() {
+        return crawler.getMetrics().getBytesSkipped().sum();
+    }
+
+    @Override
+    public long getRetries() {
+        return crawler.getMetrics().getRetries().sum();
+    }
+
+    @Override
+    public long getRecrawls() {
+        return crawler.getMetrics().getRecrawls().sum();
+    }
+
+    @Override
+    public long getRecrawlsChanged() {
+        return crawler.getMetrics().getRecrawlsChanged().sum();
+    }
+
+    @Override
+    public int getRecrawlScheduledUrls() {
+        return crawler.getRecrawlScheduledUrls();
+    }
+
+    @Override
+    public long getSitemapsRead() {
+        return crawler.getMetrics().getSitemapsRead().sum();
+    }
+
+    @Override
+    public long getSitemapUrls() {
+        return crawler.getMetrics().getSitemapUrls().sum();
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        return crawler.getRateController().getConcurrencyLimit();
+    }
+
+    @Override
+    public long getAdaptiveDelayMillis() {
+        return crawler.getRateController().getExtraDelayMillis();
+    }
+
+    @Override
+    public long getFrontierSize() {
+        return crawler.getFrontierSize();
+    }
+
+    @Override
+    public LatencySnapshot getFetchLatency() {
+        return crawler.getMetrics().getFetchLatency().snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getSlotWaitLatency() {
+        return crawler.getMetrics().getSlotWaitLatency().snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getParseLatency() {
+        return crawler.getMetrics().getParseLatency().snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getFilterLatency() {
+        return crawler.getMetrics().getFilterLatency().snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getEnqueueLatency() {
+        return crawler.getMetrics().getEnqueueLatency().snapshot();
+    }
+
+    @Override
+    public List<SubscriberMetrics> getSubscribers() {
+        return eventHandler.subscriberMetrics(crawler.getUuid());
+    }
+}
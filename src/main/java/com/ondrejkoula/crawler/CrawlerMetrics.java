@@ -0,0 +1,80 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Getter;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of one crawler. Counters are {@link LongAdder}s, so worker threads recording
+ * at the same time do not contend, and nothing allocates on the recording path.
+ */
+@Getter
+final class CrawlerMetrics {
+
+    private static final FailureReason[] FAILURE_REASONS = FailureReason.values();
+
+    private final LongAdder pagesFetched;
+    private final LongAdder pagesUnchanged;
+    private final LongAdder pagesDuplicate;
+    private final LongAdder bytesDownloaded;
+    // announced by the Content-Length of skipped responses and not downloaded
+    private final LongAdder bytesSkipped;
+    private final LongAdder retries;
+    // pages taken from the recrawl schedule and how many of their visits found the content changed
+    private final LongAdder recrawls;
+    private final LongAdder recrawlsChanged;
+    // sitemaps read and the URLs of their entries queued
+    private final LongAdder sitemapsRead;
+    private final LongAdder sitemapUrls;
+    private final LongAdder[] failures;
+    private final LatencyHistogram fetchLatency;
+    // from a fetch being due to getting a fetch slot of the context
+    private final LatencyHistogram slotWaitLatency;
+    private final LatencyHistogram parseLatency;
+    private final LatencyHistogram filterLatency;
+    private final LatencyHistogram enqueueLatency;
+
+    CrawlerMetrics() {
+        this.pagesFetched = new LongAdder();
+        this.pagesUnchanged = new LongAdder();
+        this.pagesDuplicate = new LongAdder();
+        this.bytesDownloaded = new LongAdder();
+        this.bytesSkipped = new LongAdder();
+        this.retries = new LongAdder();
+        this.recrawls = new LongAdder();
+        this.recrawlsChanged = new LongAdder();
+        this.sitemapsRead = new LongAdder();
+        this.sitemapUrls = new LongAdder();
+        this.failures = new LongAdder[FAILURE_REASONS.length];
+        for (int i = 0; i < failures.length; i++) {
+            failures[i] = new LongAdder();
+        }
+        this.fetchLatency = new LatencyHistogram();
+        this.slotWaitLatency = new LatencyHistogram();
+        this.parseLatency = new LatencyHistogram();
+        this.filterLatency = new LatencyHistogram();
+        this.enqueueLatency = new LatencyHistogram();
+    }
+
+    void recordFailure(FailureReason reason) {
+        failures[reason.ordinal()].increment();
+    }
+
+    long pagesFailed() {
+        long failed = 0;
+        for (LongAdder counter : failures) {
+            failed += counter.sum();
+        }
+        return failed;
+    }
+
+    Map<FailureReason, Long> pagesFailedByReason() {
+        Map<FailureReason, Long> failed = new EnumMap<>(FailureReason.class);
+        for (FailureReason reason : FAILURE_REASONS) {
+            failed.put(reason, failures[reason.ordinal()].sum());
+        }
+        return failed;
+    }
+}
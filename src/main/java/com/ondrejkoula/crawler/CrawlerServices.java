@@ -0,0 +1,22 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+
+@Getter
+@Builder
+final class CrawlerServices {
+    private final CrawlerEventHandler eventHandler;
+    private final ExecutorService executorService;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final PolitenessScheduler politenessScheduler;
+    private final RobotsTxtCache robotsTxtCache;
+    private final FetchGovernor fetchGovernor;
+    private final HttpMetadataCaches httpMetadataCaches;
+    // called once when a crawler reaches a terminal state
+    private final Consumer<Crawler> endedListener;
+}
@@ -1,39 +1,58 @@
 package com.ondrejkoula.crawler;
 
+import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
-import org.apache.commons.lang3.builder.EqualsBuilder;
-import org.apache.commons.lang3.builder.HashCodeBuilder;
 
 import java.net.URL;
 
+/**
+ * URL canonicalized once on construction. Identity is the canonical key, its 64-bit fingerprint is computed
+ * up front, so hashing is free and equality rarely gets past comparing fingerprints.
+ */
 @Getter
-@RequiredArgsConstructor
 public class CrawlerURL {
 
+    // canonical form, used for fetching
     private final URL url;
 
+    private final String key;
+
+    private final long fingerprint;
+
+    @Getter(AccessLevel.NONE)
+    private final int hash;
+
+    public CrawlerURL(URL url) {
+        this(url, UrlCanonicalizer.DEFAULT);
+    }
+
+    CrawlerURL(URL url, UrlCanonicalizer canonicalizer) {
+        if (url == null) {
+            throw new IllegalArgumentException("URL must not be null.");
+        }
+        UrlCanonicalizer.Result canonical = canonicalizer.canonicalize(url);
+        this.url = canonical.getUrl();
+        this.key = canonical.getKey();
+        this.fingerprint = Fingerprints.of(key);
+        this.hash = (int) (fingerprint ^ (fingerprint >>> 32));
+    }
+
     @Override
     public boolean equals(Object obj) {
+        if (this == obj) return true;
         if (!(obj instanceof CrawlerURL)) return false;
         CrawlerURL that = (CrawlerURL) obj;
 
-        return (this.url == null && that.getUrl() == null)
-                || (this.url != null && that.getUrl() != null
-                && new EqualsBuilder()
-                .append(this.url.getProtocol(), that.getUrl().getProtocol())
-                .append(this.url.getHost(), that.getUrl().getHost())
-                .append(this.url.getPath(), that.getUrl().getPath())
-                .isEquals()
-        );
+        return this.fingerprint == that.fingerprint && this.key.equals(that.key);
     }
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder()
-                .append(this.url.getProtocol())
-                .append(this.url.getHost())
-                .append(this.url.getPath())
-                .build();
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return key;
     }
 }
@@ -0,0 +1,24 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Getter;
+
+import java.net.URL;
+import java.util.UUID;
+
+/**
+ * Sent instead of {@link PageDataAcquiredCrawlerEvent} for a page whose text is a near duplicate of a page the
+ * crawler already processed. Links of such page are not followed.
+ */
+@Getter
+public final class DuplicatePageCrawlerEvent extends CrawlerEvent {
+
+    private final URL location;
+
+    private final long simHash;
+
+    DuplicatePageCrawlerEvent(UUID crawlerUuid, URL location, long simHash) {
+        super(crawlerUuid);
+        this.location = location;
+        this.simHash = simHash;
+    }
+}
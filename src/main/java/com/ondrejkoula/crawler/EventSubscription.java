@@ -0,0 +1,150 @@
+package com.ondrejkoula.crawler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * One consumer with its own bounded queue. Publishing never takes a lock; a single drain loop at a time runs on
+ * the executor while the queue has events, so the consumer sees events in the order they were published and
+ * occupies at most one thread.
+ * <p>
+ * Events which must not wait, state changes published under the crawler lock, never block: when the queue of a
+ * blocking subscription is full they wait in an unbounded side queue, and blocking publishers wait until it is
+ * delivered so the order is kept. A subscriber calling back into the crawler could otherwise deadlock with it.
+ */
+final class EventSubscription<E extends CrawlerEvent> {
+
+    private static final long MAX_BLOCK_PARK_NANOS = 1_000_000;
+
+    private final String eventType;
+    private final Consumer<E> consumer;
+    private final SubscriptionOptions options;
+    private final EventRingBuffer<E> queue;
+    // events which could not block and found the queue full, delivered after it
+    private final Queue<E> overflowQueue;
+    private final Executor executor;
+    private final AtomicBoolean draining;
+    private final AtomicLong overflows;
+    private final AtomicLong droppedEvents;
+    private final LatencyHistogram dispatchLag;
+
+    EventSubscription(String eventType, Consumer<E> consumer, SubscriptionOptions options, Executor executor) {
+        if (options.getQueueCapacity() <= 0) {
+            throw new IllegalArgumentException("Subscription queue capacity must be positive.");
+        }
+        this.eventType = eventType;
+        this.consumer = consumer;
+        this.options = options;
+        this.queue = new EventRingBuffer<>(options.getQueueCapacity());
+        this.overflowQueue = new ConcurrentLinkedQueue<>();
+        this.executor = executor;
+        this.draining = new AtomicBoolean();
+        this.overflows = new AtomicLong();
+        this.droppedEvents = new AtomicLong();
+        this.dispatchLag = new LatencyHistogram();
+    }
+
+    void publish(E event, boolean mayBlock) {
+        if (!overflowQueue.isEmpty() || !queue.offer(event)) {
+            overflow(event, mayBlock);
+        }
+        scheduleDrain();
+    }
+
+    long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    SubscriberMetrics metrics() {
+        LatencySnapshot lag = dispatchLag.snapshot();
+        return SubscriberMetrics.builder()
+                .eventType(eventType)
+                .queueCapacity(queue.capacity())
+                .overflowPolicy(options.getOverflowPolicy())
+                .deliveredEvents(lag.getCount())
+                .droppedEvents(droppedEvents.get())
+                .dispatchLag(lag)
+                .build();
+    }
+
+    private void overflow(E event, boolean mayBlock) {
+        switch (options.getOverflowPolicy()) {
+            case BLOCK:
+                if (!mayBlock) {
+                    overflowQueue.add(event);
+                    break;
+                }
+                long parkNanos = 1_000;
+                while (!overflowQueue.isEmpty() || !queue.offer(event)) {
+                    scheduleDrain();
+                    LockSupport.parkNanos(parkNanos);
+                    parkNanos = Math.min(parkNanos * 2, MAX_BLOCK_PARK_NANOS);
+                }
+                break;
+            case SAMPLE:
+                if (overflows.incrementAndGet() % Math.max(1, options.getSampleRate()) != 0) {
+                    droppedEvents.incrementAndGet();
+                    break;
+                }
+                replaceOldest(event);
+                break;
+            case DROP_OLDEST:
+            default:
+                replaceOldest(event);
+        }
+    }
+
+    private void replaceOldest(E event) {
+        while (!queue.offer(event)) {
+            if (queue.poll() != null) {
+                droppedEvents.incrementAndGet();
+            }
+        }
+    }
+
+    private void scheduleDrain() {
+        if (hasEvents() && draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // TODO log "Cannot deliver events, executor rejected the drain loop"
+                draining.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            E event;
+            while ((event = nextEvent()) != null) {
+                dispatchLag.recordSince(event.getCreatedNanos());
+                try {
+                    consumer.accept(event);
+                } catch (RuntimeException e) {
+                    // TODO log "Subscriber failed on event --"
+                }
+            }
+            draining.set(false);
+            // an event published after the last poll either sees the flag cleared or is seen here
+            if (!hasEvents() || !draining.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    // the overflow queue holds events published after everything in the queue
+    private E nextEvent() {
+        E event = queue.poll();
+        return event != null ? event : overflowQueue.poll();
+    }
+
+    private boolean hasEvents() {
+        return !queue.isEmpty() || !overflowQueue.isEmpty();
+    }
+}
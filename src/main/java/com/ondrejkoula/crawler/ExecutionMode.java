@@ -0,0 +1,11 @@
+package com.ondrejkoula.crawler;
+
+/**
+ * Threads running crawler workers and subscriber callbacks of a {@link CrawlerContext}.
+ */
+public enum ExecutionMode {
+    // a cached pool of platform threads
+    PLATFORM_THREADS,
+    // a new virtual thread per task, needs JDK 21 or newer and falls back to PLATFORM_THREADS on older runtimes
+    VIRTUAL_THREADS
+}
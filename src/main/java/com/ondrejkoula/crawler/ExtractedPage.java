@@ -0,0 +1,15 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jsoup.nodes.Document;
+
+import java.util.Set;
+
+@Getter
+@RequiredArgsConstructor
+final class ExtractedPage {
+    private final String title;
+    private final Set<String> links;
+    private final LazyValue<Document> document;
+}
@@ -0,0 +1,19 @@
+package com.ondrejkoula.crawler;
+
+/**
+ * Why a URL was marked as failed.
+ */
+public enum FailureReason {
+    // connection, timeout or an invalid request
+    FETCH_ERROR,
+    HTTP_ERROR,
+    // the Content-Type is not markup or is excluded, the body was not read
+    UNSUPPORTED_CONTENT,
+    // the Content-Length or the body read so far is over the configured cap
+    BODY_TOO_LARGE,
+    ROBOTS_TXT_DISALLOWED,
+    PARSE_ERROR,
+    // the server answered 304 Not Modified to a page missing in the HTTP cache
+    STALE_CACHE,
+    REJECTED
+}
@@ -0,0 +1,206 @@
+package com.ondrejkoula.crawler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Fetch slots and bandwidth shared by all crawlers of a context. Free slots go to the waiting crawler with the
+ * lowest virtual time, so crawlers share slots in proportion to their weights.
+ */
+final class FetchGovernor {
+
+    private static final long VIRTUAL_TIME_UNIT = 1L << 20;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final int maxConcurrentFetches;
+    private final long maxBytesPerSecond;
+    private final Executor executor;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final ReentrantLock lock;
+
+    // guarded by lock
+    private final List<Tenant> waitingTenants;
+    private int runningFetches;
+    private long virtualTime;
+    private double availableBytes;
+    private long refilledAtNanos;
+    private boolean refillScheduled;
+
+    FetchGovernor(int maxConcurrentFetches, long maxBytesPerSecond, Executor executor, ScheduledExecutorService scheduledExecutorService) {
+        this.maxConcurrentFetches = maxConcurrentFetches <= 0 ? Integer.MAX_VALUE : maxConcurrentFetches;
+        this.maxBytesPerSecond = Math.max(0, maxBytesPerSecond);
+        this.executor = executor;
+        this.scheduledExecutorService = scheduledExecutorService;
+        this.lock = new ReentrantLock();
+        this.waitingTenants = new ArrayList<>();
+        this.availableBytes = this.maxBytesPerSecond;
+        this.refilledAtNanos = System.nanoTime();
+    }
+
+    Tenant register(int weight, LatencyHistogram slotWaitLatency) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Crawler weight must be positive.");
+        }
+        return new Tenant(weight, slotWaitLatency);
+    }
+
+    private void grantSlots() {
+        List<QueuedFetch> granted = new ArrayList<>();
+        lock.lock();
+        try {
+            refillBytesLocked();
+            while (runningFetches < maxConcurrentFetches && !waitingTenants.isEmpty() && hasBandwidthLocked()) {
+                Tenant tenant = nextTenantLocked();
+                QueuedFetch fetch = tenant.fetches.poll();
+                if (tenant.fetches.isEmpty()) {
+                    waitingTenants.remove(tenant);
+                }
+                virtualTime = tenant.virtualTime;
+                tenant.virtualTime += VIRTUAL_TIME_UNIT / tenant.weight;
+                runningFetches++;
+                granted.add(fetch);
+            }
+            if (!waitingTenants.isEmpty() && !hasBandwidthLocked()) {
+                scheduleRefillLocked();
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (QueuedFetch fetch : granted) {
+            fetch.tenant.slotWaitLatency.recordSince(fetch.queuedAtNanos);
+            try {
+                executor.execute(fetch.task);
+            } catch (RejectedExecutionException e) {
+                release(0);
+                reject(fetch);
+            }
+        }
+    }
+
+    private Tenant nextTenantLocked() {
+        Tenant next = waitingTenants.get(0);
+        for (int i = 1; i < waitingTenants.size(); i++) {
+            Tenant tenant = waitingTenants.get(i);
+            if (tenant.virtualTime < next.virtualTime) {
+                next = tenant;
+            }
+        }
+        return next;
+    }
+
+    private void release(long bytes) {
+        lock.lock();
+        try {
+            runningFetches--;
+            if (maxBytesPerSecond > 0) {
+                refillBytesLocked();
+                availableBytes -= bytes;
+            }
+        } finally {
+            lock.unlock();
+        }
+        grantSlots();
+    }
+
+    private boolean hasBandwidthLocked() {
+        return maxBytesPerSecond == 0 || availableBytes > 0;
+    }
+
+    // at most one second of unused bandwidth is kept
+    private void refillBytesLocked() {
+        if (maxBytesPerSecond == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        availableBytes = Math.min(maxBytesPerSecond, availableBytes + (double) (now - refilledAtNanos) * maxBytesPerSecond / NANOS_PER_SECOND);
+        refilledAtNanos = now;
+    }
+
+    private void scheduleRefillLocked() {
+        if (refillScheduled) {
+            return;
+        }
+        refillScheduled = true;
+        long waitNanos = (long) Math.ceil((1 - availableBytes) * NANOS_PER_SECOND / maxBytesPerSecond);
+        try {
+            scheduledExecutorService.schedule(() -> {
+                lock.lock();
+                try {
+                    refillScheduled = false;
+                } finally {
+                    lock.unlock();
+                }
+                grantSlots();
+            }, waitNanos, NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // TODO log "Scheduler rejected the bandwidth refill"
+            refillScheduled = false;
+        }
+    }
+
+    // the crawler of the fetch may hold its own lock right now, so it learns about the rejection on the scheduler
+    private void reject(QueuedFetch fetch) {
+        try {
+            scheduledExecutorService.execute(fetch.onRejected);
+        } catch (RejectedExecutionException e) {
+            // TODO log "Cannot report rejected fetch --"
+        }
+    }
+
+    private static final class QueuedFetch {
+        private final Tenant tenant;
+        private final Runnable task;
+        private final Runnable onRejected;
+        private final long queuedAtNanos;
+
+        private QueuedFetch(Tenant tenant, Runnable task, Runnable onRejected) {
+            this.tenant = tenant;
+            this.task = task;
+            this.onRejected = onRejected;
+            this.queuedAtNanos = System.nanoTime();
+        }
+    }
+
+    // every submitted task must call release exactly once when its fetch ends
+    final class Tenant {
+        private final long weight;
+        private final LatencyHistogram slotWaitLatency;
+        // guarded by the governor lock
+        private final Queue<QueuedFetch> fetches;
+        private long virtualTime;
+
+        private Tenant(int weight, LatencyHistogram slotWaitLatency) {
+            this.weight = weight;
+            this.slotWaitLatency = slotWaitLatency;
+            this.fetches = new ArrayDeque<>();
+        }
+
+        // the task and the rejection callback never run on the calling thread
+        void submit(Runnable task, Runnable onRejected) {
+            lock.lock();
+            try {
+                if (fetches.isEmpty()) {
+                    // an idle tenant does not bank slots it did not ask for
+                    virtualTime = Math.max(virtualTime, FetchGovernor.this.virtualTime);
+                    waitingTenants.add(this);
+                }
+                fetches.add(new QueuedFetch(this, task, onRejected));
+            } finally {
+                lock.unlock();
+            }
+            grantSlots();
+        }
+
+        void release(long downloadedBytes) {
+            FetchGovernor.this.release(downloadedBytes);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.net.URL;
+
+@Getter
+@Builder
+final class FetchRequest {
+    private final URL url;
+    // validators of a cached copy, the server answers 304 Not Modified when the page did not change
+    private final String ifNoneMatch;
+    private final String ifModifiedSince;
+}
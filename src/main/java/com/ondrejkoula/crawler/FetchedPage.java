@@ -0,0 +1,74 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.net.URL;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+@Getter
+@Builder
+final class FetchedPage {
+    static final int NOT_MODIFIED = 304;
+
+    private final URL url;
+    private final int statusCode;
+    private final String contentType;
+    private final String charset;
+    private final Map<String, List<String>> headers;
+    private final byte[] body;
+
+    boolean isNotModified() {
+        return statusCode == NOT_MODIFIED;
+    }
+
+    String firstHeader(String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    // Retry-After is either delay seconds or an HTTP date, -1 when missing or invalid
+    static long retryAfterMillis(String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return -1;
+        }
+        String value = retryAfter.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            // an HTTP date
+        }
+        try {
+            long at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Math.max(0, at - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    static String charsetOf(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int index = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+        if (index < 0) {
+            return null;
+        }
+        String charset = contentType.substring(index + "charset=".length());
+        int end = charset.indexOf(';');
+        charset = (end < 0 ? charset : charset.substring(0, end)).trim();
+        return charset.replace("\"", "").replace("'", "");
+    }
+}
@@ -0,0 +1,6 @@
+package com.ondrejkoula.crawler;
+
+public enum FetcherType {
+    JSOUP,
+    HTTP_CLIENT
+}
@@ -0,0 +1,38 @@
+package com.ondrejkoula.crawler;
+
+final class Fingerprints {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Fingerprints() {
+    }
+
+    static long of(CharSequence canonicalUrl) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < canonicalUrl.length(); i++) {
+            char c = canonicalUrl.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    static long of(byte[] content) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : content) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    // finalization step of MurmurHash3, spreads FNV output over all 64 bits
+    static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
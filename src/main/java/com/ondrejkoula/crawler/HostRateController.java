@@ -0,0 +1,128 @@
+package com.ondrejkoula.crawler;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adapts the concurrency of a crawler to its host. The limit grows while the p95 latency stays near the best seen
+ * and is cut on overload or a latency rise, below one request at a time overload adds a delay between requests.
+ */
+final class HostRateController {
+
+    private static final int WINDOW = 20;
+    private static final int P95_INDEX = WINDOW * 95 / 100 - 1;
+    private static final double LATENCY_RISE_FACTOR = 2.0;
+    private static final long LATENCY_RISE_MIN_NANOS = 20_000_000;
+    private static final double BASELINE_DRIFT = 1.1;
+    private static final long COOLDOWN_NANOS = 1_000_000_000;
+    private static final long MIN_EXTRA_DELAY_MILLIS = 250;
+    private static final long MAX_EXTRA_DELAY_MILLIS = 30_000;
+
+    private final boolean adaptive;
+    private final int maxConcurrency;
+    private final ReentrantLock lock;
+    // guarded by lock
+    private final long[] latencies;
+    private final long[] sortedLatencies;
+    private int samples;
+    private long baselineP95Nanos;
+    private boolean slowStart;
+    private long lastCutNanos;
+    private volatile int concurrencyLimit;
+    private volatile long extraDelayMillis;
+    private volatile long pausedUntilMillis;
+
+    HostRateController(int maxConcurrency, boolean adaptive) {
+        this.adaptive = adaptive;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.lock = new ReentrantLock();
+        this.latencies = new long[WINDOW];
+        this.sortedLatencies = new long[WINDOW];
+        this.slowStart = true;
+        this.lastCutNanos = System.nanoTime() - COOLDOWN_NANOS;
+        this.concurrencyLimit = adaptive ? 1 : this.maxConcurrency;
+    }
+
+    int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    long getExtraDelayMillis() {
+        return extraDelayMillis;
+    }
+
+    long pauseRemainingMillis() {
+        return Math.max(0, pausedUntilMillis - System.currentTimeMillis());
+    }
+
+    void onSuccess(long latencyNanos) {
+        if (!adaptive) {
+            return;
+        }
+        lock.lock();
+        try {
+            latencies[samples++] = latencyNanos;
+            if (samples < WINDOW) {
+                return;
+            }
+            samples = 0;
+            System.arraycopy(latencies, 0, sortedLatencies, 0, WINDOW);
+            Arrays.sort(sortedLatencies);
+            long p95 = sortedLatencies[P95_INDEX];
+            boolean latencyRose = baselineP95Nanos > 0
+                    && p95 > baselineP95Nanos * LATENCY_RISE_FACTOR
+                    && p95 - baselineP95Nanos > LATENCY_RISE_MIN_NANOS;
+            baselineP95Nanos = baselineP95Nanos == 0 ? p95 : Math.min(p95, (long) (baselineP95Nanos * BASELINE_DRIFT));
+            if (latencyRose) {
+                cutLocked(0.75, false);
+            } else if (extraDelayMillis > 0) {
+                long delay = extraDelayMillis / 2;
+                extraDelayMillis = delay < MIN_EXTRA_DELAY_MILLIS / 2 ? 0 : delay;
+            } else {
+                int limit = concurrencyLimit;
+                concurrencyLimit = Math.min(maxConcurrency, slowStart ? limit * 2 : limit + 1);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 429, 503 or a timeout, retryAfterMillis is negative when the response did not ask for a pause
+    void onOverload(long retryAfterMillis) {
+        lock.lock();
+        try {
+            if (retryAfterMillis > 0) {
+                pausedUntilMillis = Math.max(pausedUntilMillis, System.currentTimeMillis() + retryAfterMillis);
+            }
+            if (adaptive) {
+                cutLocked(0.5, true);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // cuts within one cooldown are counted once
+    private void cutLocked(double factor, boolean slowDown) {
+        long now = System.nanoTime();
+        if (now - lastCutNanos < COOLDOWN_NANOS) {
+            return;
+        }
+        lastCutNanos = now;
+        slowStart = false;
+        samples = 0;
+        if (concurrencyLimit > 1) {
+            concurrencyLimit = Math.max(1, (int) (concurrencyLimit * factor));
+        } else if (slowDown) {
+            extraDelayMillis = Math.min(MAX_EXTRA_DELAY_MILLIS, Math.max(MIN_EXTRA_DELAY_MILLIS, extraDelayMillis * 2));
+        }
+    }
+
+    // attempt is 1-based, the jitter spreads out retries of requests which failed together
+    static long retryDelayMillis(int attempt, long baseDelayMillis, long maxDelayMillis, long retryAfterMillis) {
+        long backoff = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 30));
+        long jittered = ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+        return Math.max(jittered, retryAfterMillis);
+    }
+}
@@ -0,0 +1,195 @@
+package com.ondrejkoula.crawler;
+
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Non-blocking fetcher on {@link HttpClient}. Connections are pooled and kept alive by the client, HTTP/2 is
+ * negotiated when the server supports it, so many requests share a few connections and no thread waits for a
+ * response. Completions run on the given executor.
+ * <p>
+ * The {@link ContentPolicy} is applied once the headers arrive, a skipped response is cancelled before its body is
+ * read. Bodies of error responses are discarded.
+ */
+final class HttpClientPageFetcher implements PageFetcher {
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient httpClient;
+    private final String userAgent;
+    private final ContentPolicy contentPolicy;
+
+    HttpClientPageFetcher(String userAgent, ContentPolicy contentPolicy, Executor executor) {
+        this.userAgent = userAgent;
+        this.contentPolicy = contentPolicy;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .executor(executor)
+                .build();
+    }
+
+    @Override
+    public CompletableFuture<FetchedPage> fetch(FetchRequest fetchRequest) {
+        URL url = fetchRequest.getUrl();
+        HttpRequest.Builder request;
+        try {
+            request = HttpRequest.newBuilder(url.toURI())
+                    .GET();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(new PageFetchException("Invalid URL: " + url, 0, FailureReason.FETCH_ERROR));
+        }
+        if (contentPolicy.getReadTimeoutMillis() > 0) {
+            request.timeout(Duration.ofMillis(contentPolicy.getReadTimeoutMillis()));
+        }
+        if (userAgent != null) {
+            request.header("User-Agent", userAgent);
+        }
+        if (fetchRequest.getIfNoneMatch() != null) {
+            request.header("If-None-Match", fetchRequest.getIfNoneMatch());
+        }
+        if (fetchRequest.getIfModifiedSince() != null) {
+            request.header("If-Modified-Since", fetchRequest.getIfModifiedSince());
+        }
+        return httpClient.sendAsync(request.build(), responseInfo -> bodySubscriber(url, responseInfo))
+                .thenCompose(response -> {
+                    int status = response.statusCode();
+                    if (isError(status)) {
+                        long retryAfterMillis = FetchedPage.retryAfterMillis(response.headers().firstValue("Retry-After").orElse(null));
+                        return CompletableFuture.failedFuture(new PageFetchException("HTTP error fetching URL " + url, status, FailureReason.HTTP_ERROR, retryAfterMillis));
+                    }
+                    String contentType = response.headers().firstValue("Content-Type").orElse(null);
+                    try {
+                        return CompletableFuture.completedFuture(FetchedPage.builder()
+                                .url(response.uri().toURL())
+                                .statusCode(status)
+                                .contentType(contentType)
+                                .charset(FetchedPage.charsetOf(contentType))
+                                .headers(response.headers().map())
+                                .body(response.body())
+                                .build());
+                    } catch (MalformedURLException e) {
+                        return CompletableFuture.failedFuture(e);
+                    }
+                });
+    }
+
+    private HttpResponse.BodySubscriber<byte[]> bodySubscriber(URL url, HttpResponse.ResponseInfo responseInfo) {
+        int status = responseInfo.statusCode();
+        if (isError(status)) {
+            return HttpResponse.BodySubscribers.replacing(null);
+        }
+        long contentLength = responseInfo.headers().firstValueAsLong("Content-Length").orElse(-1);
+        CappedBodySubscriber subscriber = new CappedBodySubscriber(url, status, contentLength);
+        if (status != FetchedPage.NOT_MODIFIED) {
+            String contentType = responseInfo.headers().firstValue("Content-Type").orElse(null);
+            SkippedResponseException skipped = contentPolicy.check(url, status, contentType, contentLength);
+            if (skipped != null) {
+                subscriber.abort(skipped);
+            }
+        }
+        return subscriber;
+    }
+
+    private static boolean isError(int status) {
+        return status != FetchedPage.NOT_MODIFIED && (status < 200 || status >= 300);
+    }
+
+    /**
+     * Collects the body up to the cap of the content policy, one chunk requested at a time. Passing the cap or the
+     * read timeout cancels the subscription, which closes the stream or the connection.
+     */
+    private final class CappedBodySubscriber implements HttpResponse.BodySubscriber<byte[]> {
+        private final URL url;
+        private final int status;
+        private final long contentLength;
+        private final ContentPolicy.BodyBuffer buffer;
+        private final CompletableFuture<byte[]> body;
+        // completed with the body, which cancels the timeout
+        private final CompletableFuture<Void> deadline;
+        private volatile Flow.Subscription subscription;
+
+        private CappedBodySubscriber(URL url, int status, long contentLength) {
+            this.url = url;
+            this.status = status;
+            this.contentLength = contentLength;
+            this.buffer = contentPolicy.newBodyBuffer(contentLength);
+            this.body = new CompletableFuture<>();
+            this.deadline = new CompletableFuture<>();
+            if (contentPolicy.getReadTimeoutMillis() > 0) {
+                deadline.orTimeout(contentPolicy.getReadTimeoutMillis(), MILLISECONDS).whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        abort(new HttpTimeoutException("Reading body of " + url + " timed out"));
+                    }
+                });
+            }
+        }
+
+        @Override
+        public CompletionStage<byte[]> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (body.isDone()) {
+                subscription.cancel();
+            } else {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (body.isDone()) {
+                return;
+            }
+            for (ByteBuffer item : items) {
+                if (!buffer.append(item)) {
+                    abort(contentPolicy.tooLarge(url, status, contentLength, buffer.size()));
+                    return;
+                }
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            body.completeExceptionally(throwable);
+            deadline.complete(null);
+        }
+
+        @Override
+        public void onComplete() {
+            body.complete(buffer.toByteArray());
+            deadline.complete(null);
+        }
+
+        private void abort(Throwable error) {
+            if (!body.completeExceptionally(error)) {
+                return;
+            }
+            deadline.complete(null);
+            Flow.Subscription subscription = this.subscription;
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.ondrejkoula.crawler;
+
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Response metadata of crawled pages keyed by URL fingerprint, used for conditional requests on recrawls. The
+ * cache is an append-only log on disk, only the offset of the last record of each URL is kept in memory. Validators
+ * are read for every request, title and links only for a page that did not change. A record cut off by a crash is
+ * truncated on open and the log is compacted once it holds more than twice as many records as URLs.
+ */
+final class HttpMetadataCache {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int READ_BUFFER_SIZE = 4 * 1024;
+
+    private final Path file;
+    private final ReentrantLock lock;
+    private OffsetTable offsets;
+    private FileChannel reader;
+    private DataOutputStream log;
+    private CountingOutputStream logBytes;
+    // log size on open, and the part of the log that reached the file
+    private long logStart;
+    private long flushedSize;
+
+    HttpMetadataCache(Path file) {
+        this.file = file;
+        this.lock = new ReentrantLock();
+        this.offsets = new OffsetTable();
+        try {
+            Files.createDirectories(file.getParent());
+            long records = load();
+            if (records > 2L * offsets.size()) {
+                compact();
+            }
+            this.logBytes = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(file, CREATE, APPEND), BUFFER_SIZE));
+            this.log = new DataOutputStream(logBytes);
+            this.reader = FileChannel.open(file, READ);
+            this.flushedSize = logStart;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open HTTP metadata cache " + file, e);
+        }
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    Validators validators(CrawlerURL url) {
+        lock.lock();
+        try {
+            DataInputStream in = recordOf(url);
+            if (in == null) {
+                return null;
+            }
+            return new Validators(readString(in), readString(in), in.readLong());
+        } catch (IOException e) {
+            // TODO log "Cannot read HTTP metadata cache --"
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Entry get(CrawlerURL url) {
+        lock.lock();
+        try {
+            DataInputStream in = recordOf(url);
+            return in == null ? null : read(in);
+        } catch (IOException e) {
+            // TODO log "Cannot read HTTP metadata cache --"
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void put(CrawlerURL url, Entry entry) {
+        lock.lock();
+        try {
+            if (log == null) {
+                return;
+            }
+            long offset = logStart + logBytes.getCount();
+            write(log, url.getFingerprint(), entry);
+            offsets.put(url.getFingerprint(), offset);
+        } catch (IOException e) {
+            // TODO log "Cannot write HTTP metadata cache --"
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void close() {
+        lock.lock();
+        try {
+            if (log != null) {
+                log.close();
+                reader.close();
+                log = null;
+            }
+        } catch (IOException e) {
+            // TODO log "Cannot close HTTP metadata cache --"
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // positioned after the fingerprint of the last record of the URL, null when there is none
+    private DataInputStream recordOf(CrawlerURL url) throws IOException {
+        long offset = offsets.get(url.getFingerprint());
+        if (offset < 0 || log == null) {
+            return null;
+        }
+        if (offset >= flushedSize) {
+            log.flush();
+            flushedSize = logStart + logBytes.getCount();
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(reader.position(offset)), READ_BUFFER_SIZE));
+        if (in.readLong() != url.getFingerprint()) {
+            throw new IllegalStateException("HTTP metadata cache " + file + " has no record at offset " + offset);
+        }
+        return in;
+    }
+
+    private long load() throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        long records = 0;
+        long end = 0;
+        try (CountingInputStream counting = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+             DataInputStream in = new DataInputStream(counting)) {
+            while (true) {
+                long fingerprint = in.readLong();
+                read(in);
+                offsets.put(fingerprint, end);
+                end = counting.getCount();
+                records++;
+            }
+        } catch (EOFException e) {
+            // end of log
+        }
+        if (Files.size(file) > end) {
+            // a record cut off by a crash, appending after it would corrupt the log
+            try (FileChannel channel = FileChannel.open(file, WRITE)) {
+                channel.truncate(end);
+            }
+        }
+        logStart = end;
+        return records;
+    }
+
+    // copies the last record of every URL in log order
+    private void compact() throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        OffsetTable compactedOffsets = new OffsetTable();
+        long position = 0;
+        try (CountingInputStream counting = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+             DataInputStream in = new DataInputStream(counting);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(compacted), BUFFER_SIZE))) {
+            while (counting.getCount() < logStart) {
+                long offset = counting.getCount();
+                long fingerprint = in.readLong();
+                Entry entry = read(in);
+                if (offsets.get(fingerprint) == offset) {
+                    write(out, fingerprint, entry);
+                    compactedOffsets.put(fingerprint, position);
+                    position += counting.getCount() - offset;
+                }
+            }
+        }
+        Files.move(compacted, file, REPLACE_EXISTING, ATOMIC_MOVE);
+        offsets = compactedOffsets;
+        logStart = position;
+    }
+
+    private static void write(DataOutputStream out, long fingerprint, Entry entry) throws IOException {
+        out.writeLong(fingerprint);
+        writeString(out, entry.getEtag());
+        writeString(out, entry.getLastModified());
+        out.writeLong(entry.getContentHash());
+        writeString(out, entry.getTitle());
+        out.writeInt(entry.getLinks().size());
+        for (String link : entry.getLinks()) {
+            writeString(out, link);
+        }
+    }
+
+    private static Entry read(DataInputStream in) throws IOException {
+        String etag = readString(in);
+        String lastModified = readString(in);
+        long contentHash = in.readLong();
+        String title = readString(in);
+        int linksCount = in.readInt();
+        List<String> links = new ArrayList<>(linksCount);
+        for (int i = 0; i < linksCount; i++) {
+            links.add(readString(in));
+        }
+        return Entry.builder()
+                .etag(etag)
+                .lastModified(lastModified)
+                .contentHash(contentHash)
+                .title(title)
+                .links(links)
+                .build();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    static final class Validators {
+        private final String etag;
+        private final String lastModified;
+        private final long contentHash;
+    }
+
+    @Getter
+    @Builder(toBuilder = true)
+    static final class Entry {
+        private final String etag;
+        private final String lastModified;
+        private final long contentHash;
+        private final String title;
+        private final List<String> links;
+    }
+
+    // fingerprint to log offset in linear probing tables, an offset is stored plus one so zero marks an empty slot
+    private static final class OffsetTable {
+        private long[] fingerprints = new long[16];
+        private long[] positions = new long[16];
+        private int size;
+
+        private long get(long fingerprint) {
+            int mask = fingerprints.length - 1;
+            for (int index = slot(fingerprint, mask); positions[index] != 0; index = (index + 1) & mask) {
+                if (fingerprints[index] == fingerprint) {
+                    return positions[index] - 1;
+                }
+            }
+            return -1;
+        }
+
+        private void put(long fingerprint, long offset) {
+            int mask = fingerprints.length - 1;
+            int index = slot(fingerprint, mask);
+            while (positions[index] != 0 && fingerprints[index] != fingerprint) {
+                index = (index + 1) & mask;
+            }
+            if (positions[index] == 0) {
+                fingerprints[index] = fingerprint;
+                size++;
+            }
+            positions[index] = offset + 1;
+            if (size * 2 > fingerprints.length) {
+                grow();
+            }
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private void grow() {
+            long[] oldFingerprints = fingerprints;
+            long[] oldPositions = positions;
+            fingerprints = new long[oldFingerprints.length << 1];
+            positions = new long[oldPositions.length << 1];
+            int mask = fingerprints.length - 1;
+            for (int i = 0; i < oldFingerprints.length; i++) {
+                if (oldPositions[i] != 0) {
+                    int index = slot(oldFingerprints[i], mask);
+                    while (positions[index] != 0) {
+                        index = (index + 1) & mask;
+                    }
+                    fingerprints[index] = oldFingerprints[i];
+                    positions[index] = oldPositions[i];
+                }
+            }
+        }
+
+        private static int slot(long fingerprint, int mask) {
+            return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.ondrejkoula.crawler;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * HTTP metadata caches of a context, one per cache file. Crawlers of the same host and cache directory share one
+ * instance; a second one would interleave its buffered records with the first or compact the log from under it.
+ * The file is closed when the last crawler using it releases it.
+ */
+final class HttpMetadataCaches {
+
+    private final Map<Path, SharedCache> caches;
+    private final ReentrantLock lock;
+
+    HttpMetadataCaches() {
+        this.caches = new HashMap<>();
+        this.lock = new ReentrantLock();
+    }
+
+    HttpMetadataCache acquire(Path file) {
+        Path key = file.toAbsolutePath().normalize();
+        lock.lock();
+        try {
+            SharedCache shared = caches.get(key);
+            if (shared == null) {
+                shared = new SharedCache(new HttpMetadataCache(key));
+                caches.put(key, shared);
+            }
+            shared.references++;
+            return shared.cache;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release(HttpMetadataCache cache) {
+        lock.lock();
+        try {
+            SharedCache shared = caches.get(cache.getFile());
+            if (shared == null || shared.cache != cache) {
+                return;
+            }
+            if (--shared.references == 0) {
+                caches.remove(cache.getFile());
+                cache.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class SharedCache {
+        private final HttpMetadataCache cache;
+        private int references;
+
+        private SharedCache(HttpMetadataCache cache) {
+            this.cache = cache;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.ondrejkoula.crawler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.function.Consumer;
+
+final class InMemoryCrawlerFrontier implements CrawlerFrontier {
+
+    private final Queue<QueuedURL> urlsToCrawl = new ArrayDeque<>();
+
+    @Override
+    public void add(QueuedURL url) {
+        urlsToCrawl.add(url);
+    }
+
+    @Override
+    public QueuedURL poll() {
+        return urlsToCrawl.poll();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return urlsToCrawl.isEmpty();
+    }
+
+    @Override
+    public long size() {
+        return urlsToCrawl.size();
+    }
+
+    @Override
+    public void clear() {
+        urlsToCrawl.clear();
+    }
+
+    @Override
+    public void forEach(Consumer<QueuedURL> consumer) {
+        urlsToCrawl.forEach(consumer);
+    }
+
+    @Override
+    public View freeze() {
+        List<QueuedURL> frozen = new ArrayList<>(urlsToCrawl);
+        return new View() {
+            @Override
+            public long size() {
+                return frozen.size();
+            }
+
+            @Override
+            public void forEach(Consumer<QueuedURL> consumer) {
+                frozen.forEach(consumer);
+            }
+
+            @Override
+            public void release() {
+            }
+        };
+    }
+}
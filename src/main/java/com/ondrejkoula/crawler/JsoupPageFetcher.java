@@ -0,0 +1,72 @@
+package com.ondrejkoula.crawler;
+
+import org.jsoup.Connection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+import static org.jsoup.Jsoup.connect;
+
+/**
+ * Blocking fetcher, the download runs on the calling thread and the returned future is already completed. The
+ * {@link ContentPolicy} is applied to the headers before the body stream is opened, a skipped response is closed
+ * unread.
+ */
+final class JsoupPageFetcher implements PageFetcher {
+
+    private final String userAgent;
+    private final ContentPolicy contentPolicy;
+
+    JsoupPageFetcher(String userAgent, ContentPolicy contentPolicy) {
+        this.userAgent = userAgent;
+        this.contentPolicy = contentPolicy;
+    }
+
+    @Override
+    public CompletableFuture<FetchedPage> fetch(FetchRequest request) {
+        try {
+            // error statuses are turned into a PageFetchException below, which keeps the Retry-After header, content
+            // type and size are checked by the content policy, the body stream enforces the cap itself
+            Connection connection = connect(request.getUrl().toString())
+                    .userAgent(userAgent)
+                    .ignoreHttpErrors(true)
+                    .ignoreContentType(true)
+                    .maxBodySize(0)
+                    .timeout((int) Math.min(Integer.MAX_VALUE, Math.max(0, contentPolicy.getReadTimeoutMillis())));
+            if (request.getIfNoneMatch() != null) {
+                connection.header("If-None-Match", request.getIfNoneMatch());
+            }
+            if (request.getIfModifiedSince() != null) {
+                connection.header("If-Modified-Since", request.getIfModifiedSince());
+            }
+            Connection.Response response = connection.execute();
+            int status = response.statusCode();
+            if (status != FetchedPage.NOT_MODIFIED && (status < 200 || status >= 300)) {
+                return CompletableFuture.failedFuture(new PageFetchException("HTTP error fetching URL " + request.getUrl(),
+                        status, FailureReason.HTTP_ERROR, FetchedPage.retryAfterMillis(response.header("Retry-After"))));
+            }
+            long contentLength = ContentPolicy.contentLengthOf(response.header("Content-Length"));
+            SkippedResponseException skipped = status == FetchedPage.NOT_MODIFIED
+                    ? null
+                    : contentPolicy.check(response.url(), status, response.contentType(), contentLength);
+            byte[] body;
+            try (InputStream in = response.bodyStream()) {
+                if (skipped != null) {
+                    return CompletableFuture.failedFuture(skipped);
+                }
+                body = contentPolicy.readBody(in, response.url(), status, contentLength);
+            }
+            return CompletableFuture.completedFuture(FetchedPage.builder()
+                    .url(response.url())
+                    .statusCode(status)
+                    .contentType(response.contentType())
+                    .charset(response.charset())
+                    .headers(response.multiHeaders())
+                    .body(body)
+                    .build());
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
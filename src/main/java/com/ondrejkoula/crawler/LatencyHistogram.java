@@ -0,0 +1,131 @@
+package com.ondrejkoula.crawler;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of nanosecond latencies in the manner of HdrHistogram: every power of two is split into
+ * 32 equal buckets, so a recorded value is reported within about 3 %. Counts are striped by thread to keep
+ * recording threads off each other's cache lines, and recording never locks. A stripe takes about 10 KB and is
+ * allocated on the first value recorded to it, at most four of them, so the histograms of hundreds of crawlers and
+ * their subscriptions stay small; recording allocates only then.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // about 36 minutes, longer values are counted in the last bucket
+    private static final int MAX_EXPONENT = 41;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    private static final int STRIPES = stripes();
+
+    private final AtomicReferenceArray<AtomicLongArray> counts;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final AtomicLong max;
+
+    LatencyHistogram() {
+        this.counts = new AtomicReferenceArray<>(STRIPES);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        stripe((int) Thread.currentThread().getId() & (STRIPES - 1)).incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    private AtomicLongArray stripe(int index) {
+        AtomicLongArray stripe = counts.get(index);
+        if (stripe == null) {
+            counts.compareAndSet(index, null, new AtomicLongArray(BUCKETS));
+            stripe = counts.get(index);
+        }
+        return stripe;
+    }
+
+    // nanoseconds since startNanos taken from System.nanoTime()
+    void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    LatencySnapshot snapshot() {
+        long[] buckets = new long[BUCKETS];
+        long total = 0;
+        for (int stripe = 0; stripe < counts.length(); stripe++) {
+            AtomicLongArray stripeCounts = counts.get(stripe);
+            if (stripeCounts == null) {
+                continue;
+            }
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                long bucketCount = stripeCounts.get(bucket);
+                buckets[bucket] += bucketCount;
+                total += bucketCount;
+            }
+        }
+        return LatencySnapshot.builder()
+                .count(total)
+                .meanMillis(total == 0 ? 0 : toMillis(sum.sum()) / count.sum())
+                .p50Millis(toMillis(percentile(buckets, total, 50)))
+                .p90Millis(toMillis(percentile(buckets, total, 90)))
+                .p99Millis(toMillis(percentile(buckets, total, 99)))
+                .p999Millis(toMillis(percentile(buckets, total, 99.9)))
+                .maxMillis(toMillis(max.get()))
+                .build();
+    }
+
+    private long percentile(long[] buckets, long total, double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long lowest = (long) (SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static int stripes() {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() && stripes < 4) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
@@ -0,0 +1,22 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Latency distribution at the time it was taken. Percentiles are within about 3 % of the recorded values.
+ */
+@Getter
+@Builder
+public class LatencySnapshot {
+
+    static final LatencySnapshot EMPTY = LatencySnapshot.builder().build();
+
+    private long count;
+    private double meanMillis;
+    private double p50Millis;
+    private double p90Millis;
+    private double p99Millis;
+    private double p999Millis;
+    private double maxMillis;
+}
@@ -0,0 +1,43 @@
+package com.ondrejkoula.crawler;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Computes the value on first access, at most once even when several subscribers ask at the same time.
+ */
+final class LazyValue<T> implements Supplier<T> {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private Supplier<T> supplier;
+    private volatile T value;
+
+    LazyValue(Supplier<T> supplier) {
+        this.supplier = supplier;
+    }
+
+    static <T> LazyValue<T> of(T value) {
+        LazyValue<T> lazyValue = new LazyValue<>(null);
+        lazyValue.value = value;
+        return lazyValue;
+    }
+
+    @Override
+    public T get() {
+        T result = value;
+        if (result == null && supplier != null) {
+            lock.lock();
+            try {
+                result = value;
+                if (result == null && supplier != null) {
+                    result = supplier.get();
+                    value = result;
+                    supplier = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return result;
+    }
+}
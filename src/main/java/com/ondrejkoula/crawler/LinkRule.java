@@ -0,0 +1,40 @@
+package com.ondrejkoula.crawler;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Include or exclude rule for extracted links. Path prefixes are matched against the path of the link, regular
+ * expressions are searched for in the whole absolute link. A link is followed when it matches no exclude rule
+ * and, if there are any include rules, at least one include rule.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class LinkRule {
+
+    public enum Kind {
+        PATH_PREFIX,
+        REGEX
+    }
+
+    private final Kind kind;
+    private final String value;
+    private final boolean include;
+
+    public static LinkRule includePathPrefix(String pathPrefix) {
+        return new LinkRule(Kind.PATH_PREFIX, pathPrefix, true);
+    }
+
+    public static LinkRule excludePathPrefix(String pathPrefix) {
+        return new LinkRule(Kind.PATH_PREFIX, pathPrefix, false);
+    }
+
+    public static LinkRule includeRegex(String regex) {
+        return new LinkRule(Kind.REGEX, regex, true);
+    }
+
+    public static LinkRule excludeRegex(String regex) {
+        return new LinkRule(Kind.REGEX, regex, false);
+    }
+}
@@ -1,30 +1,199 @@
 package com.ondrejkoula.crawler;
 
-import org.apache.commons.lang3.StringUtils;
+import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.StringJoiner;
+import java.util.regex.Pattern;
 
-import static com.google.common.collect.Sets.newHashSet;
-import static java.util.stream.Collectors.toSet;
-
+/**
+ * Link rules of one crawler compiled once. Excluded extensions form a trie of reversed suffixes walked from the
+ * end of the path, path prefix rules a trie walked from its start, and all regular expressions of one kind are
+ * joined into a single alternation. Checking a link is one pass over its path plus at most two regex searches.
+ */
 class LinksFilter {
 
-    Set<String> filterLinks(Elements elements, Set<SupportedType> excludedTypes) {
-        Set<String> excludedTypesFlatten = excludedTypes.stream()
-                .flatMap(supportedType -> newHashSet(supportedType.getExtensions()).stream())
-                .collect(toSet());
-
-        return elements.stream()
-                .map(link -> link.attr("abs:href"))
-                .filter(link -> {
-                    for (String excludedType : excludedTypesFlatten) {
-                        if (StringUtils.endsWith(link, excludedType)) {
-                            return false;
-                        }
-                    }
+    private static final byte EXCLUDE = 1;
+    private static final byte INCLUDE = 2;
+
+    private final Trie excludedSuffixes;
+    private final Trie pathPrefixes;
+    private final boolean hasIncludeRules;
+    // null when there are no rules of the kind
+    private final Pattern includePattern;
+    private final Pattern excludePattern;
+
+    LinksFilter(Set<SupportedType> excludedTypes, List<LinkRule> linkRules) {
+        this.excludedSuffixes = new Trie();
+        this.pathPrefixes = new Trie();
+        if (excludedTypes != null) {
+            excludedTypes.stream()
+                    .flatMap(type -> Arrays.stream(type.getExtensions()))
+                    .forEach(extension -> excludedSuffixes.addReversed(extension, EXCLUDE));
+        }
+        StringJoiner includeRegex = new StringJoiner("|");
+        StringJoiner excludeRegex = new StringJoiner("|");
+        boolean includes = false;
+        for (LinkRule rule : linkRules == null ? Collections.<LinkRule>emptyList() : linkRules) {
+            includes |= rule.isInclude();
+            if (LinkRule.Kind.PATH_PREFIX.equals(rule.getKind())) {
+                pathPrefixes.add(rule.getValue(), rule.isInclude() ? INCLUDE : EXCLUDE);
+            } else {
+                (rule.isInclude() ? includeRegex : excludeRegex).add("(?:" + rule.getValue() + ")");
+            }
+        }
+        this.hasIncludeRules = includes;
+        this.includePattern = includeRegex.length() == 0 ? null : Pattern.compile(includeRegex.toString());
+        this.excludePattern = excludeRegex.length() == 0 ? null : Pattern.compile(excludeRegex.toString());
+    }
+
+    Set<String> filterLinks(Elements elements) {
+        Set<String> links = new LinkedHashSet<>(elements.size());
+        for (Element element : elements) {
+            String link = element.attr("abs:href");
+            if (isAccepted(link)) {
+                links.add(link);
+            }
+        }
+        return links;
+    }
+
+    Set<String> filterLinks(Collection<String> links) {
+        Set<String> filtered = new LinkedHashSet<>(links.size());
+        for (String link : links) {
+            if (isAccepted(link)) {
+                filtered.add(link);
+            }
+        }
+        return filtered;
+    }
+
+    boolean isAccepted(String link) {
+        if (link == null || link.isEmpty()) {
+            return false;
+        }
+        int pathStart = pathStart(link);
+        int pathEnd = pathEnd(link, pathStart);
+        if (excludedSuffixes.matchesReversed(link, pathStart, pathEnd)) {
+            return false;
+        }
+        byte prefixFlags = pathPrefixes.matchFlags(link, pathStart, pathEnd);
+        if ((prefixFlags & EXCLUDE) != 0) {
+            return false;
+        }
+        if (excludePattern != null && excludePattern.matcher(link).find()) {
+            return false;
+        }
+        if (!hasIncludeRules || (prefixFlags & INCLUDE) != 0) {
+            return true;
+        }
+        return includePattern != null && includePattern.matcher(link).find();
+    }
+
+    private static int pathStart(String link) {
+        int scheme = link.indexOf("://");
+        if (scheme < 0) {
+            return 0;
+        }
+        int authorityStart = scheme + 3;
+        for (int i = authorityStart; i < link.length(); i++) {
+            char c = link.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                return i;
+            }
+        }
+        return link.length();
+    }
+
+    private static int pathEnd(String link, int pathStart) {
+        for (int i = pathStart; i < link.length(); i++) {
+            char c = link.charAt(i);
+            if (c == '?' || c == '#' || c == ';') {
+                return i;
+            }
+        }
+        return link.length();
+    }
+
+    private static final class Trie {
+        private final Node root = new Node();
+
+        private void add(String value, byte flag) {
+            Node node = root;
+            for (int i = 0; i < value.length(); i++) {
+                node = node.childOrCreate(value.charAt(i));
+            }
+            node.flags |= flag;
+        }
+
+        // extensions match case-insensitively
+        private void addReversed(String value, byte flag) {
+            Node node = root;
+            for (int i = value.length() - 1; i >= 0; i--) {
+                node = node.childOrCreate(Character.toLowerCase(value.charAt(i)));
+            }
+            node.flags |= flag;
+        }
+
+        private boolean matchesReversed(String link, int start, int end) {
+            Node node = root;
+            for (int i = end - 1; i >= start && node.keys.length > 0; i--) {
+                node = node.child(Character.toLowerCase(link.charAt(i)));
+                if (node == null) {
+                    return false;
+                }
+                if (node.flags != 0) {
                     return true;
-                })
-                .collect(toSet());
+                }
+            }
+            return false;
+        }
+
+        // flags of every prefix of the path
+        private byte matchFlags(String link, int start, int end) {
+            Node node = root;
+            byte flags = node.flags;
+            for (int i = start; i < end && node.keys.length > 0; i++) {
+                node = node.child(link.charAt(i));
+                if (node == null) {
+                    break;
+                }
+                flags |= node.flags;
+            }
+            return flags;
+        }
+    }
+
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private byte flags;
+
+        private Node child(char key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node childOrCreate(char key) {
+            Node child = child(key);
+            if (child == null) {
+                child = new Node();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                keys[keys.length - 1] = key;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
     }
 }
@@ -0,0 +1,176 @@
+package com.ondrejkoula.crawler;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Exact set of 64-bit URL fingerprints stored in a linear probing {@code long[]} table. Zero marks an empty
+ * slot, the zero fingerprint itself is tracked by a flag. The table doubles when it is half full.
+ */
+final class OpenAddressingUrlFingerprintSet implements UrlFingerprintSet {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] table;
+    private int mask;
+    private int size;
+    private boolean containsZero;
+
+    OpenAddressingUrlFingerprintSet() {
+        this(MIN_CAPACITY);
+    }
+
+    OpenAddressingUrlFingerprintSet(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2L && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        this.table = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    @Override
+    public boolean add(long fingerprint) {
+        if (fingerprint == 0) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            return true;
+        }
+        int index = slot(fingerprint);
+        while (table[index] != 0) {
+            if (table[index] == fingerprint) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        table[index] = fingerprint;
+        if (++size * 2 > table.length) {
+            rehash(table.length << 1);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(long fingerprint) {
+        if (fingerprint == 0) {
+            return containsZero;
+        }
+        int index = slot(fingerprint);
+        long current;
+        while ((current = table[index]) != 0) {
+            if (current == fingerprint) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    boolean remove(long fingerprint) {
+        if (fingerprint == 0) {
+            boolean removed = containsZero;
+            containsZero = false;
+            return removed;
+        }
+        int index = slot(fingerprint);
+        while (table[index] != fingerprint) {
+            if (table[index] == 0) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        // backward shift deletion keeps probe sequences intact without tombstones
+        int gap = index;
+        int next = (gap + 1) & mask;
+        long current;
+        while ((current = table[next]) != 0) {
+            int home = slot(current);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                table[gap] = current;
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[gap] = 0;
+        size--;
+        return true;
+    }
+
+    @Override
+    public long size() {
+        return containsZero ? size + 1 : size;
+    }
+
+    @Override
+    public long memoryBytes() {
+        return (long) table.length * Long.BYTES;
+    }
+
+    @Override
+    public void clear() {
+        table = new long[MIN_CAPACITY];
+        mask = MIN_CAPACITY - 1;
+        size = 0;
+        containsZero = false;
+    }
+
+    @Override
+    public OpenAddressingUrlFingerprintSet copy() {
+        OpenAddressingUrlFingerprintSet copy = new OpenAddressingUrlFingerprintSet(0);
+        copy.table = table.clone();
+        copy.mask = mask;
+        copy.size = size;
+        copy.containsZero = containsZero;
+        return copy;
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(size());
+        if (containsZero) {
+            out.writeLong(0);
+        }
+        for (long fingerprint : table) {
+            if (fingerprint != 0) {
+                out.writeLong(fingerprint);
+            }
+        }
+    }
+
+    @Override
+    public void readFrom(DataInput in) throws IOException {
+        long count = in.readLong();
+        int capacity = table.length;
+        while (capacity < (size + count) * 2 && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        if (capacity > table.length) {
+            rehash(capacity);
+        }
+        for (long i = 0; i < count; i++) {
+            add(in.readLong());
+        }
+    }
+
+    private int slot(long fingerprint) {
+        return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldTable = table;
+        table = new long[capacity];
+        mask = table.length - 1;
+        for (long fingerprint : oldTable) {
+            if (fingerprint != 0) {
+                int index = slot(fingerprint);
+                while (table[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                table[index] = fingerprint;
+            }
+        }
+    }
+}
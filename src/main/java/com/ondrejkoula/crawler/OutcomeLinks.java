@@ -0,0 +1,68 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Getter;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Links of a page parsed into URLs once and split by the crawled host. The same sets are published in the
+ * {@link PageDataAcquiredCrawlerEvent} and used to fill the frontier. Links are deduplicated by their string form,
+ * {@link URL#hashCode()} and {@link URL#equals(Object)} resolve the host.
+ */
+@Getter
+final class OutcomeLinks {
+
+    private final Set<URL> onDomain;
+    private final Set<URL> outOfDomain;
+
+    private OutcomeLinks(Map<String, URL> onDomain, Map<String, URL> outOfDomain) {
+        this.onDomain = new UrlSet(onDomain);
+        this.outOfDomain = new UrlSet(outOfDomain);
+    }
+
+    static OutcomeLinks of(Collection<String> links, String host) {
+        Map<String, URL> onDomain = new LinkedHashMap<>();
+        Map<String, URL> outOfDomain = new LinkedHashMap<>();
+        for (String link : links) {
+            try {
+                URL url = new URL(link);
+                (url.getHost().equalsIgnoreCase(host) ? onDomain : outOfDomain).putIfAbsent(url.toExternalForm(), url);
+            } catch (MalformedURLException e) {
+                // TODO "Link process failed. Invalid URL: --"
+            }
+        }
+        return new OutcomeLinks(onDomain, outOfDomain);
+    }
+
+    // unmodifiable, looks URLs up by their string form
+    private static final class UrlSet extends AbstractSet<URL> {
+        private final Map<String, URL> urls;
+
+        private UrlSet(Map<String, URL> urls) {
+            this.urls = urls;
+        }
+
+        @Override
+        public Iterator<URL> iterator() {
+            return Collections.unmodifiableCollection(urls.values()).iterator();
+        }
+
+        @Override
+        public int size() {
+            return urls.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof URL && urls.containsKey(((URL) o).toExternalForm());
+        }
+    }
+}
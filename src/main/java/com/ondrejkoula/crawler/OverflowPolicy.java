@@ -0,0 +1,13 @@
+package com.ondrejkoula.crawler;
+
+/**
+ * What a crawler does with an event when the queue of a subscriber is full.
+ */
+public enum OverflowPolicy {
+    // the crawler thread waits until the subscriber catches up, state changes are queued beyond the capacity instead
+    BLOCK,
+    // the oldest queued event is dropped to make room
+    DROP_OLDEST,
+    // every n-th overflowing event replaces the oldest queued one, the others are dropped
+    SAMPLE
+}
@@ -1,8 +1,15 @@
 package com.ondrejkoula.crawler;
 
+import lombok.AccessLevel;
 import lombok.Getter;
+import org.jsoup.nodes.Document;
 
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -11,21 +18,63 @@ public final class PageDataAcquiredCrawlerEvent extends CrawlerEvent {
 
     private final URL location;
     private final String documentTitle;
-    private final String documentHtml;
+    private final int statusCode;
+    // response headers as received, the body is already decoded from any Content-Encoding
+    private final Map<String, List<String>> headers;
+    @Getter(AccessLevel.NONE)
+    private final ByteBuffer body;
+    // null when the response did not declare it
+    private final Charset charset;
+    @Getter(AccessLevel.NONE)
+    private final LazyValue<Document> document;
+    @Getter(AccessLevel.NONE)
+    private final LazyValue<String> documentHtml;
     private final Set<URL> outcomeUrlsOutOfDomain;
     private final Set<URL> outcomeUrlsOnDomain;
+    // false when the page did not change since the last crawl, it is not parsed again and carries no HTML
+    private final boolean contentChanged;
 
     PageDataAcquiredCrawlerEvent(UUID crawlerUuid,
                                  URL location,
                                  String documentTitle,
-                                 String documentHtml,
-                                 Set<URL> outcomeUrlsOutOfDomain,
-                                 Set<URL> outcomeUrlsOnDomain) {
+                                 int statusCode,
+                                 Map<String, List<String>> headers,
+                                 ByteBuffer body,
+                                 Charset charset,
+                                 LazyValue<Document> document,
+                                 OutcomeLinks outcomeLinks,
+                                 boolean contentChanged) {
         super(crawlerUuid);
         this.location = location;
         this.documentTitle = documentTitle;
-        this.documentHtml = documentHtml;
-        this.outcomeUrlsOutOfDomain = outcomeUrlsOutOfDomain;
-        this.outcomeUrlsOnDomain = outcomeUrlsOnDomain;
+        this.statusCode = statusCode;
+        this.headers = headers == null ? Collections.emptyMap() : Collections.unmodifiableMap(headers);
+        this.body = body == null ? null : body.asReadOnlyBuffer();
+        this.charset = charset;
+        this.document = document;
+        this.documentHtml = new LazyValue<>(() -> {
+            Document parsed = document == null ? null : document.get();
+            return parsed == null ? null : parsed.outerHtml();
+        });
+        this.outcomeUrlsOutOfDomain = outcomeLinks.getOutOfDomain();
+        this.outcomeUrlsOnDomain = outcomeLinks.getOnDomain();
+        this.contentChanged = contentChanged;
+    }
+
+    /**
+     * Raw response body as received, without decoding or copying. Every call returns an independent read-only
+     * view, so subscribers do not move each other's position.
+     */
+    public ByteBuffer getBody() {
+        return body == null ? null : body.duplicate();
+    }
+
+    // parsed on first call when the crawler extracted links without building the DOM
+    public Document getDocument() {
+        return document == null ? null : document.get();
+    }
+
+    public String getDocumentHtml() {
+        return documentHtml.get();
     }
 }
@@ -0,0 +1,112 @@
+package com.ondrejkoula.crawler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Collects page events of one subscriber into batches. A batch is delivered when it is full, when its oldest
+ * event waited for the maximum latency, or when the crawler ends. Page and state events arrive through the same
+ * subscription queue, so the final flush follows every page event published before the crawler ended.
+ */
+final class PageDataBatcher implements Consumer<CrawlerEvent> {
+
+    private final Consumer<List<PageDataAcquiredCrawlerEvent>> consumer;
+    private final int maxBatchSize;
+    private final long maxLatencyMillis;
+    private final Executor executor;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final ReentrantLock lock;
+
+    private List<PageDataAcquiredCrawlerEvent> batch;
+    // incremented on every flush, a latency flush scheduled for an already delivered batch does nothing
+    private long batchNumber;
+
+    PageDataBatcher(Consumer<List<PageDataAcquiredCrawlerEvent>> consumer,
+                    int maxBatchSize,
+                    long maxLatencyMillis,
+                    Executor executor,
+                    ScheduledExecutorService scheduledExecutorService) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Maximum batch size must be positive.");
+        }
+        if (maxLatencyMillis <= 0) {
+            throw new IllegalArgumentException("Maximum batch latency must be positive.");
+        }
+        this.consumer = consumer;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLatencyMillis = maxLatencyMillis;
+        this.executor = executor;
+        this.scheduledExecutorService = scheduledExecutorService;
+        this.lock = new ReentrantLock();
+        this.batch = new ArrayList<>(maxBatchSize);
+    }
+
+    @Override
+    public void accept(CrawlerEvent event) {
+        lock.lock();
+        try {
+            if (event instanceof PageDataAcquiredCrawlerEvent) {
+                batch.add((PageDataAcquiredCrawlerEvent) event);
+                if (batch.size() >= maxBatchSize) {
+                    flushLocked();
+                } else if (batch.size() == 1) {
+                    scheduleLatencyFlushLocked(batchNumber);
+                }
+            } else if (event instanceof StateChangedCrawlerEvent
+                    && Crawler.isEnded(((StateChangedCrawlerEvent) event).getNewState())) {
+                flushLocked();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the consumer is called under the lock to keep batches in order
+    private void flushLocked() {
+        batchNumber++;
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<PageDataAcquiredCrawlerEvent> flushed = batch;
+        batch = new ArrayList<>(maxBatchSize);
+        try {
+            consumer.accept(flushed);
+        } catch (RuntimeException e) {
+            // TODO log "Batch subscriber failed on -- events"
+        }
+    }
+
+    private void scheduleLatencyFlushLocked(long expectedBatchNumber) {
+        try {
+            // the scheduler thread is shared, the consumer runs on the executor instead
+            scheduledExecutorService.schedule(() -> {
+                try {
+                    executor.execute(() -> flushIfPending(expectedBatchNumber));
+                } catch (RejectedExecutionException e) {
+                    flushIfPending(expectedBatchNumber);
+                }
+            }, maxLatencyMillis, MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the context is shut down, nothing would deliver the batch later
+            flushLocked();
+        }
+    }
+
+    private void flushIfPending(long expectedBatchNumber) {
+        lock.lock();
+        try {
+            if (batchNumber == expectedBatchNumber) {
+                flushLocked();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Getter;
+
+import java.io.IOException;
+
+@Getter
+class PageFetchException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+    private final FailureReason reason;
+    // -1 when the response did not carry a Retry-After header
+    private final long retryAfterMillis;
+
+    PageFetchException(String message, int statusCode, FailureReason reason) {
+        this(message, statusCode, reason, -1);
+    }
+
+    PageFetchException(String message, int statusCode, FailureReason reason, long retryAfterMillis) {
+        super(message);
+        this.statusCode = statusCode;
+        this.reason = reason;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+}
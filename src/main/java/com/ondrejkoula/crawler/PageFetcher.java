@@ -0,0 +1,8 @@
+package com.ondrejkoula.crawler;
+
+import java.util.concurrent.CompletableFuture;
+
+interface PageFetcher {
+
+    CompletableFuture<FetchedPage> fetch(FetchRequest request);
+}
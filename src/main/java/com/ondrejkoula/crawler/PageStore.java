@@ -0,0 +1,605 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Getter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Crawled pages persisted in rolling segment files in the WARC layout. A page is a response record with the HTTP
+ * headers and body followed by a metadata record with its title and outgoing links, both compressed together as
+ * one gzip member, so every segment is a valid .warc.gz file and a page is decompressed on its own.
+ * <p>
+ * Pages are written in batches. A batch is forced to disk once, then listed in the journal of its segment and only
+ * then visible to reads. A sealed segment gets a sorted index of URL fingerprint, offset and length, which is
+ * memory-mapped and binary searched. Segments left without an index by a crash are sealed from their journal on
+ * open, a partly written record is cut off.
+ * <p>
+ * Attach the store to crawlers with {@link CrawlerContext#attachPageStore}, closing it is up to the caller.
+ */
+public final class PageStore implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".warc.gz";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String JOURNAL_SUFFIX = ".jnl";
+    // fingerprint, offset, length
+    private static final int INDEX_ENTRY_BYTES = 20;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String CRLF = "\r\n";
+
+    @Getter
+    private final PageStoreConfig config;
+    private final Path directory;
+    private final UrlCanonicalizer urlCanonicalizer;
+    private final ReentrantLock lock;
+    // oldest first, replaced as a whole under the lock so reads do not need it
+    private volatile List<SealedSegment> sealedSegments;
+
+    // guarded by lock
+    private ActiveSegment activeSegment;
+    private long nextSegmentId;
+    private boolean closed;
+
+    public PageStore(PageStoreConfig config) {
+        if (config.getDirectory() == null) {
+            throw new IllegalArgumentException("Page store directory must be set.");
+        }
+        if (config.getMaxSegmentBytes() <= 0) {
+            throw new IllegalArgumentException("Maximum segment size must be positive.");
+        }
+        this.config = config;
+        this.directory = config.getDirectory();
+        this.urlCanonicalizer = UrlCanonicalizer.of(config);
+        this.lock = new ReentrantLock();
+        try {
+            Files.createDirectories(directory);
+            this.sealedSegments = openSegments();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open page store " + directory, e);
+        }
+    }
+
+    /**
+     * The last stored version of the page, null when the page is not stored. The URL is canonicalized by the query
+     * parameter rules of the store configuration.
+     */
+    public StoredPage get(URL url) {
+        CrawlerURL crawlerURL = new CrawlerURL(url, urlCanonicalizer);
+        FileChannel channel = null;
+        IndexEntry entry = null;
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Page store is closed.");
+            }
+            if (activeSegment != null) {
+                entry = activeSegment.index.get(crawlerURL.getFingerprint());
+                channel = activeSegment.channel;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (entry == null) {
+            List<SealedSegment> segments = sealedSegments;
+            for (int i = segments.size() - 1; i >= 0 && entry == null; i--) {
+                entry = segments.get(i).find(crawlerURL.getFingerprint());
+                channel = segments.get(i).channel;
+            }
+        }
+        if (entry == null) {
+            return null;
+        }
+        try {
+            StoredPage page = readPage(readFully(channel, entry.offset, entry.length));
+            // a different URL with the same fingerprint
+            return page != null && new CrawlerURL(page.getUrl(), urlCanonicalizer).equals(crawlerURL) ? page : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read page " + url + " from page store " + directory, e);
+        }
+    }
+
+    UrlCanonicalizer getUrlCanonicalizer() {
+        return urlCanonicalizer;
+    }
+
+    /**
+     * Group commit of the pages of one batch. Unchanged pages carry no body and are skipped, the version stored by
+     * an earlier crawl stays current.
+     */
+    void append(List<PageDataAcquiredCrawlerEvent> events) {
+        List<Record> records = new ArrayList<>(events.size());
+        Instant fetchedAt = Instant.now();
+        // compression runs on the calling thread, outside the lock
+        for (PageDataAcquiredCrawlerEvent event : events) {
+            if (event.isContentChanged() && event.getBody() != null) {
+                records.add(new Record(new CrawlerURL(event.getLocation(), urlCanonicalizer).getFingerprint(), compress(event, fetchedAt)));
+            }
+        }
+        if (records.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Page store is closed.");
+            }
+            for (Record record : records) {
+                if (activeSegment != null && activeSegment.size > 0
+                        && activeSegment.size + record.bytes.length > config.getMaxSegmentBytes()) {
+                    commitLocked();
+                    sealLocked();
+                }
+                if (activeSegment == null) {
+                    activeSegment = new ActiveSegment(nextSegmentId++);
+                }
+                activeSegment.write(record);
+            }
+            commitLocked();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write to page store " + directory, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (activeSegment != null) {
+                sealLocked();
+            }
+            for (SealedSegment segment : sealedSegments) {
+                segment.channel.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close page store " + directory, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void commitLocked() throws IOException {
+        ActiveSegment segment = activeSegment;
+        if (segment == null || segment.pending.isEmpty()) {
+            return;
+        }
+        if (config.isSyncOnCommit()) {
+            segment.channel.force(false);
+        }
+        ByteBuffer journalEntries = ByteBuffer.allocate(segment.pending.size() * INDEX_ENTRY_BYTES);
+        for (IndexEntry entry : segment.pending) {
+            entry.writeTo(journalEntries);
+        }
+        journalEntries.flip();
+        while (journalEntries.hasRemaining()) {
+            segment.journal.write(journalEntries);
+        }
+        if (config.isSyncOnCommit()) {
+            segment.journal.force(false);
+        }
+        for (IndexEntry entry : segment.pending) {
+            segment.index.put(entry.fingerprint, entry);
+        }
+        segment.pending.clear();
+    }
+
+    // the segment channel stays open for reads
+    private void sealLocked() throws IOException {
+        ActiveSegment segment = activeSegment;
+        activeSegment = null;
+        segment.journal.close();
+        if (segment.index.isEmpty()) {
+            segment.channel.close();
+            Files.deleteIfExists(segmentPath(segment.id));
+            Files.deleteIfExists(journalPath(segment.id));
+            return;
+        }
+        writeIndex(segment.id, segment.index.values());
+        Files.deleteIfExists(journalPath(segment.id));
+        List<SealedSegment> segments = new ArrayList<>(sealedSegments);
+        segments.add(new SealedSegment(segment.channel, mapIndex(segment.id)));
+        sealedSegments = Collections.unmodifiableList(segments);
+    }
+
+    private List<SealedSegment> openSegments() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> ids.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))));
+        }
+        Collections.sort(ids);
+        List<SealedSegment> segments = new ArrayList<>();
+        for (long id : ids) {
+            if (!Files.exists(indexPath(id)) && !recover(id)) {
+                continue;
+            }
+            segments.add(new SealedSegment(FileChannel.open(segmentPath(id), READ), mapIndex(id)));
+        }
+        nextSegmentId = ids.isEmpty() ? 1 : ids.get(ids.size() - 1) + 1;
+        return Collections.unmodifiableList(segments);
+    }
+
+    // seals a segment that was being written when the process ended, false when nothing of it was committed
+    private boolean recover(long id) throws IOException {
+        Path segment = segmentPath(id);
+        Path journal = journalPath(id);
+        List<IndexEntry> entries = new ArrayList<>();
+        long committedSize = 0;
+        if (Files.exists(journal)) {
+            long segmentSize = Files.size(segment);
+            ByteBuffer journalEntries = ByteBuffer.wrap(Files.readAllBytes(journal));
+            // a journal entry cut off by a crash is ignored
+            while (journalEntries.remaining() >= INDEX_ENTRY_BYTES) {
+                IndexEntry entry = IndexEntry.readFrom(journalEntries);
+                if (entry.offset + entry.length > segmentSize) {
+                    break;
+                }
+                entries.add(entry);
+                committedSize = entry.offset + entry.length;
+            }
+        }
+        if (entries.isEmpty()) {
+            Files.deleteIfExists(segment);
+            Files.deleteIfExists(journal);
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(segment, WRITE)) {
+            channel.truncate(committedSize);
+        }
+        // the last record of a URL wins
+        Map<Long, IndexEntry> latest = new LinkedHashMap<>();
+        entries.forEach(entry -> latest.put(entry.fingerprint, entry));
+        writeIndex(id, latest.values());
+        Files.deleteIfExists(journal);
+        return true;
+    }
+
+    private void writeIndex(long id, Collection<IndexEntry> entries) throws IOException {
+        List<IndexEntry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparingLong(entry -> entry.fingerprint));
+        ByteBuffer index = ByteBuffer.allocate(sorted.size() * INDEX_ENTRY_BYTES);
+        sorted.forEach(entry -> entry.writeTo(index));
+        index.flip();
+        Path written = indexPath(id).resolveSibling(indexPath(id).getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(written, WRITE, CREATE_NEW)) {
+            while (index.hasRemaining()) {
+                channel.write(index);
+            }
+            channel.force(false);
+        }
+        Files.move(written, indexPath(id), REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    private MappedByteBuffer mapIndex(long id) throws IOException {
+        // the mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(indexPath(id), READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private Path indexPath(long id) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, id, INDEX_SUFFIX));
+    }
+
+    private Path journalPath(long id) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, id, JOURNAL_SUFFIX));
+    }
+
+    private static byte[] readFully(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Page store record is cut off.");
+            }
+        }
+        return buffer.array();
+    }
+
+    private byte[] compress(PageDataAcquiredCrawlerEvent event, Instant fetchedAt) {
+        ByteBuffer body = event.getBody();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.remaining() / 4 + 1024);
+        try (GZIPOutputStream out = new LeveledGZIPOutputStream(compressed, config.getCompressionLevel())) {
+            String date = fetchedAt.toString();
+            String uri = event.getLocation().toString();
+            String responseId = newRecordId();
+            byte[] httpHeaders = httpHeaders(event, body.remaining());
+            out.write(warcHeaders("response", responseId, null, date, uri, "application/http; msgtype=response",
+                    httpHeaders.length + body.remaining()));
+            out.write(httpHeaders);
+            Channels.newChannel(out).write(body);
+            out.write((CRLF + CRLF).getBytes(UTF_8));
+            byte[] fields = metadataFields(event);
+            out.write(warcHeaders("metadata", newRecordId(), responseId, date, uri, "application/warc-fields", fields.length));
+            out.write(fields);
+            out.write((CRLF + CRLF).getBytes(UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static String newRecordId() {
+        return "<urn:uuid:" + UUID.randomUUID() + ">";
+    }
+
+    private static byte[] warcHeaders(String type, String recordId, String concurrentTo, String date, String uri,
+                                      String contentType, long contentLength) {
+        StringBuilder headers = new StringBuilder(256)
+                .append("WARC/1.0").append(CRLF)
+                .append("WARC-Type: ").append(type).append(CRLF)
+                .append("WARC-Record-ID: ").append(recordId).append(CRLF);
+        if (concurrentTo != null) {
+            headers.append("WARC-Concurrent-To: ").append(concurrentTo).append(CRLF);
+        }
+        return headers.append("WARC-Date: ").append(date).append(CRLF)
+                .append("WARC-Target-URI: ").append(uri).append(CRLF)
+                .append("Content-Type: ").append(contentType).append(CRLF)
+                .append("Content-Length: ").append(contentLength).append(CRLF)
+                .append(CRLF)
+                .toString()
+                .getBytes(UTF_8);
+    }
+
+    // the body is stored decoded, so headers describing the transfer are replaced by its actual length
+    private static byte[] httpHeaders(PageDataAcquiredCrawlerEvent event, int bodyLength) {
+        // the reason phrase is not known, an empty one is valid
+        StringBuilder headers = new StringBuilder(512).append("HTTP/1.1 ").append(event.getStatusCode()).append(' ').append(CRLF);
+        event.getHeaders().forEach((name, values) -> {
+            if (name == null || name.startsWith(":") || isTransferHeader(name)) {
+                return;
+            }
+            for (String value : values) {
+                headers.append(name).append(": ").append(singleLine(value)).append(CRLF);
+            }
+        });
+        return headers.append("Content-Length: ").append(bodyLength).append(CRLF)
+                .append(CRLF)
+                .toString()
+                .getBytes(UTF_8);
+    }
+
+    private static boolean isTransferHeader(String name) {
+        return name.equalsIgnoreCase("Content-Length")
+                || name.equalsIgnoreCase("Content-Encoding")
+                || name.equalsIgnoreCase("Transfer-Encoding");
+    }
+
+    private static byte[] metadataFields(PageDataAcquiredCrawlerEvent event) {
+        StringBuilder fields = new StringBuilder(1024);
+        if (event.getDocumentTitle() != null) {
+            fields.append("title: ").append(singleLine(event.getDocumentTitle())).append(CRLF);
+        }
+        for (URL url : event.getOutcomeUrlsOnDomain()) {
+            fields.append("outlink: ").append(url).append(CRLF);
+        }
+        for (URL url : event.getOutcomeUrlsOutOfDomain()) {
+            fields.append("outlink: ").append(url).append(CRLF);
+        }
+        return fields.toString().getBytes(UTF_8);
+    }
+
+    private static String singleLine(String value) {
+        return value.replace('\r', ' ').replace('\n', ' ');
+    }
+
+    private static StoredPage readPage(byte[] compressed) throws IOException {
+        byte[] data;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed), BUFFER_SIZE)) {
+            data = in.readAllBytes();
+        }
+        RecordReader reader = new RecordReader(data);
+        Map<String, String> response = reader.readWarcHeaders();
+        int responseEnd = reader.position + Integer.parseInt(response.get("content-length"));
+        String[] statusLine = reader.readLine().split(" ");
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        for (String line = reader.readLine(); !line.isEmpty(); line = reader.readLine()) {
+            int colon = line.indexOf(':');
+            headers.computeIfAbsent(line.substring(0, colon), name -> new ArrayList<>(1)).add(line.substring(colon + 1).trim());
+        }
+        byte[] body = Arrays.copyOfRange(data, reader.position, responseEnd);
+        reader.position = responseEnd + 2 * CRLF.length();
+        Map<String, String> metadata = reader.readWarcHeaders();
+        int metadataEnd = reader.position + Integer.parseInt(metadata.get("content-length"));
+        String title = null;
+        List<URL> outcomeUrls = new ArrayList<>();
+        while (reader.position < metadataEnd) {
+            String line = reader.readLine();
+            if (line.startsWith("title: ")) {
+                title = line.substring("title: ".length());
+            } else if (line.startsWith("outlink: ")) {
+                outcomeUrls.add(new URL(line.substring("outlink: ".length())));
+            }
+        }
+        try {
+            return StoredPage.builder()
+                    .url(new URL(response.get("warc-target-uri")))
+                    .fetchedAt(Instant.parse(response.get("warc-date")))
+                    .statusCode(Integer.parseInt(statusLine[1]))
+                    .headers(headers)
+                    .body(body)
+                    .title(title)
+                    .outcomeUrls(outcomeUrls)
+                    .build();
+        } catch (MalformedURLException | DateTimeParseException | NumberFormatException e) {
+            throw new IOException("Invalid page store record.", e);
+        }
+    }
+
+    private static final class RecordReader {
+        private final byte[] data;
+        private int position;
+
+        private RecordReader(byte[] data) {
+            this.data = data;
+        }
+
+        private String readLine() throws IOException {
+            for (int i = position; i + 1 < data.length; i++) {
+                if (data[i] == '\r' && data[i + 1] == '\n') {
+                    String line = new String(data, position, i - position, UTF_8);
+                    position = i + 2;
+                    return line;
+                }
+            }
+            throw new IOException("Invalid page store record.");
+        }
+
+        // header names are lower-cased
+        private Map<String, String> readWarcHeaders() throws IOException {
+            if (!readLine().startsWith("WARC/")) {
+                throw new IOException("Invalid page store record.");
+            }
+            Map<String, String> headers = new HashMap<>();
+            for (String line = readLine(); !line.isEmpty(); line = readLine()) {
+                int colon = line.indexOf(':');
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+            return headers;
+        }
+    }
+
+    private static final class LeveledGZIPOutputStream extends GZIPOutputStream {
+        private LeveledGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(level);
+        }
+    }
+
+    private static final class Record {
+        private final long fingerprint;
+        private final byte[] bytes;
+
+        private Record(long fingerprint, byte[] bytes) {
+            this.fingerprint = fingerprint;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class IndexEntry {
+        private final long fingerprint;
+        private final long offset;
+        private final int length;
+
+        private IndexEntry(long fingerprint, long offset, int length) {
+            this.fingerprint = fingerprint;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        private void writeTo(ByteBuffer buffer) {
+            buffer.putLong(fingerprint).putLong(offset).putInt(length);
+        }
+
+        private static IndexEntry readFrom(ByteBuffer buffer) {
+            return new IndexEntry(buffer.getLong(), buffer.getLong(), buffer.getInt());
+        }
+    }
+
+    // guarded by the store lock
+    private final class ActiveSegment {
+        private final long id;
+        private final FileChannel channel;
+        private final FileChannel journal;
+        // committed records, visible to reads
+        private final Map<Long, IndexEntry> index;
+        // written since the last commit
+        private final List<IndexEntry> pending;
+        private long size;
+
+        private ActiveSegment(long id) throws IOException {
+            this.id = id;
+            this.channel = FileChannel.open(segmentPath(id), READ, WRITE, CREATE_NEW);
+            this.journal = FileChannel.open(journalPath(id), WRITE, CREATE_NEW);
+            this.index = new HashMap<>();
+            this.pending = new ArrayList<>();
+        }
+
+        // positional, a write that failed halfway is overwritten by the next one
+        private void write(Record record) throws IOException {
+            ByteBuffer bytes = ByteBuffer.wrap(record.bytes);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes, size + bytes.position());
+            }
+            pending.add(new IndexEntry(record.fingerprint, size, record.bytes.length));
+            size += record.bytes.length;
+        }
+    }
+
+    private static final class SealedSegment {
+        private final FileChannel channel;
+        private final MappedByteBuffer index;
+        private final int entries;
+
+        private SealedSegment(FileChannel channel, MappedByteBuffer index) {
+            this.channel = channel;
+            this.index = index;
+            this.entries = index.capacity() / INDEX_ENTRY_BYTES;
+        }
+
+        // absolute reads only, so concurrent lookups share the mapping
+        private IndexEntry find(long fingerprint) {
+            int low = 0;
+            int high = entries - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int position = middle * INDEX_ENTRY_BYTES;
+                long middleFingerprint = index.getLong(position);
+                if (middleFingerprint < fingerprint) {
+                    low = middle + 1;
+                } else if (middleFingerprint > fingerprint) {
+                    high = middle - 1;
+                } else {
+                    return new IndexEntry(fingerprint, index.getLong(position + 8), index.getInt(position + 16));
+                }
+            }
+            return null;
+        }
+    }
+}
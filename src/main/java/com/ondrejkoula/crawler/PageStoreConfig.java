@@ -0,0 +1,33 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+@Getter
+@Builder
+public class PageStoreConfig {
+
+    private Path directory;
+    // a segment is sealed and a new one started once the next record would not fit
+    @Builder.Default
+    private long maxSegmentBytes = 1L << 30;
+    // pages written together share one forced write of the segment and of its journal
+    @Builder.Default
+    private int maxBatchSize = 256;
+    @Builder.Default
+    private long maxBatchLatencyMillis = 1000;
+    // without it a committed batch may be lost on a crash of the machine, not of the process
+    @Builder.Default
+    private boolean syncOnCommit = true;
+    @Builder.Default
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    // pages are keyed by URL identity, so these must match the configuration of the crawlers the store is attached to
+    @Builder.Default
+    private QueryParameterHandling queryParameterHandling = QueryParameterHandling.IGNORE;
+    @Builder.Default
+    private Set<String> strippedQueryParameters = CrawlerConfig.TRACKING_QUERY_PARAMETERS;
+}
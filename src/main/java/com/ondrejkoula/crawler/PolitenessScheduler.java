@@ -0,0 +1,51 @@
+package com.ondrejkoula.crawler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out request start times per host so that two requests to one host are at least the crawl delay apart,
+ * across all crawlers of a context.
+ */
+final class PolitenessScheduler {
+
+    private final Map<String, Long> nextRequestMillis = new ConcurrentHashMap<>();
+
+    /**
+     * Reserves the next free request slot of the host and returns how many milliseconds the caller has to wait
+     * before the request may start.
+     */
+    long reserve(String host, long delayMillis) {
+        if (delayMillis <= 0) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        long slot = nextRequestMillis.compute(host, (key, next) -> Math.max(now, next == null ? now : next) + delayMillis) - delayMillis;
+        return slot - now;
+    }
+
+    /**
+     * Reserves the request slot of the host when it is free now and returns 0, otherwise returns how many
+     * milliseconds remain until it is free, without reserving it.
+     */
+    long tryReserve(String host, long delayMillis) {
+        if (delayMillis <= 0) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        long[] waitMillis = new long[1];
+        nextRequestMillis.compute(host, (key, next) -> {
+            if (next != null && next > now) {
+                waitMillis[0] = next - now;
+                return next;
+            }
+            return now + delayMillis;
+        });
+        return waitMillis[0];
+    }
+
+    long millisUntilFree(String host) {
+        Long next = nextRequestMillis.get(host);
+        return next == null ? 0 : Math.max(0, next - System.currentTimeMillis());
+    }
+}
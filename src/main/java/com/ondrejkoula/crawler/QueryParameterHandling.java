@@ -0,0 +1,13 @@
+package com.ondrejkoula.crawler;
+
+/**
+ * How the query of a URL takes part in its identity. Stripped parameters are removed in every mode.
+ */
+public enum QueryParameterHandling {
+    // URLs differing only in the query are the same page, the query is still sent when the page is fetched
+    IGNORE,
+    // parameters in their original order
+    KEEP,
+    // parameters sorted, so their order does not matter
+    SORT
+}
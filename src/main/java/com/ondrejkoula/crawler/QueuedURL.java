@@ -0,0 +1,20 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+final class QueuedURL {
+
+    private final CrawlerURL url;
+
+    private final int depth;
+
+    // transient fetch failures so far, only touched by the thread currently processing the URL
+    private int failedAttempts;
+
+    int incrementFailedAttempts() {
+        return ++failedAttempts;
+    }
+}
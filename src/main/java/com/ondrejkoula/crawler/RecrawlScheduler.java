@@ -0,0 +1,239 @@
+package com.ondrejkoula.crawler;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Next visits of the crawled pages of a continuously recrawling crawler. Every page keeps how many of its visits
+ * found the content hash changed and how much time its visits covered, both decaying with every visit so the
+ * estimate follows a page whose behavior shifts. The change rate is estimated from them as proposed by Cho and
+ * Garcia-Molina for pages visited at regular intervals, and the page is next visited after the expected time
+ * between two changes. A page found unchanged at most doubles its interval, so a single lucky visit does not push
+ * a page to the maximum interval.
+ * <p>
+ * Due pages are taken from a heap ordered by visit time, no faster than the budget allows; pages due beyond the
+ * budget wait in visit order. A page visited again or removed leaves its visit in the heap, the visit is skipped
+ * once its page has a newer generation. Pages keep their URL as bytes and become a {@link CrawlerURL} only when due.
+ * Not thread-safe, guarded by the crawler lock.
+ */
+final class RecrawlScheduler {
+
+    private static final double HISTORY_DECAY = 0.9;
+    private static final double MAX_GROWTH = 2.0;
+    private static final double MILLIS_PER_MINUTE = 60_000;
+
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final long initialIntervalMillis;
+    // 0 when unlimited
+    private final double permitsPerMillis;
+    private final UrlCanonicalizer urlCanonicalizer;
+    private final Map<Long, Page> pages;
+    private final PriorityQueue<Visit> visits;
+    // visits in the heap whose page was visited again or removed
+    private int staleVisits;
+    private double permits;
+    private long refilledAtMillis;
+
+    RecrawlScheduler(long minIntervalMillis, long maxIntervalMillis, long initialIntervalMillis, int budgetPerMinute,
+                     UrlCanonicalizer urlCanonicalizer) {
+        if (minIntervalMillis <= 0 || maxIntervalMillis < minIntervalMillis) {
+            throw new IllegalArgumentException("Recrawl intervals must be positive and the minimum must not exceed the maximum.");
+        }
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.initialIntervalMillis = clamp(initialIntervalMillis);
+        this.permitsPerMillis = Math.max(0, budgetPerMinute) / MILLIS_PER_MINUTE;
+        this.urlCanonicalizer = urlCanonicalizer;
+        this.pages = new HashMap<>();
+        this.visits = new PriorityQueue<>(Comparator.comparingLong(visit -> visit.dueMillis));
+        this.permits = 1;
+        this.refilledAtMillis = System.currentTimeMillis();
+    }
+
+    static RecrawlScheduler of(CrawlerConfig config, UrlCanonicalizer urlCanonicalizer) {
+        return new RecrawlScheduler(
+                config.getMinRecrawlIntervalMillis(),
+                config.getMaxRecrawlIntervalMillis(),
+                config.getInitialRecrawlIntervalMillis(),
+                config.getRecrawlBudgetPerMinute(),
+                urlCanonicalizer);
+    }
+
+    boolean isEmpty() {
+        return pages.isEmpty();
+    }
+
+    int size() {
+        return pages.size();
+    }
+
+    boolean contains(CrawlerURL url) {
+        return pages.containsKey(url.getFingerprint());
+    }
+
+    // true when the page was visited before and had the same content then
+    boolean isUnchanged(CrawlerURL url, long contentHash) {
+        Page page = pages.get(url.getFingerprint());
+        return page != null && page.contentHash == contentHash;
+    }
+
+    /**
+     * Schedules the next visit of a page just crawled and returns whether its content changed since the previous
+     * visit, false on the first one.
+     */
+    boolean recordVisit(QueuedURL url, long contentHash, long nowMillis) {
+        Page page = pages.get(url.getUrl().getFingerprint());
+        boolean changed = false;
+        if (page == null) {
+            page = new Page(url.getUrl().getUrl().toString().getBytes(UTF_8), url.getDepth(), contentHash);
+            page.intervalMillis = initialIntervalMillis;
+            pages.put(url.getUrl().getFingerprint(), page);
+        } else {
+            // visited again before it was due, for example when it was linked again after a failed recrawl
+            unschedule(page);
+            changed = contentHash != page.contentHash;
+            page.visits = page.visits * HISTORY_DECAY + 1;
+            page.changes = page.changes * HISTORY_DECAY + (changed ? 1 : 0);
+            page.observedMillis = page.observedMillis * HISTORY_DECAY + Math.max(1, nowMillis - page.lastVisitMillis);
+            page.contentHash = contentHash;
+            page.intervalMillis = nextInterval(page);
+        }
+        page.lastVisitMillis = nowMillis;
+        page.scheduled = true;
+        visits.add(new Visit(page, nowMillis + page.intervalMillis));
+        return changed;
+    }
+
+    // a page that failed is not recrawled until it is crawled successfully again
+    void remove(CrawlerURL url) {
+        Page page = pages.remove(url.getFingerprint());
+        if (page != null) {
+            unschedule(page);
+        }
+    }
+
+    // the next due page within the budget, null when none is due or the budget is spent
+    QueuedURL pollDue(long nowMillis) {
+        Visit visit;
+        while ((visit = nextVisit()) != null && visit.dueMillis <= nowMillis && tryAcquirePermit(nowMillis)) {
+            visits.poll();
+            visit.page.scheduled = false;
+            try {
+                return new QueuedURL(new CrawlerURL(new URL(new String(visit.page.url, UTF_8)), urlCanonicalizer), visit.page.depth);
+            } catch (MalformedURLException e) {
+                // TODO log "Invalid URL scheduled for recrawl --. Skipping..."
+            }
+        }
+        return null;
+    }
+
+    private void unschedule(Page page) {
+        if (page.scheduled) {
+            page.generation++;
+            page.scheduled = false;
+            staleVisits++;
+        }
+    }
+
+    // the earliest visit still current, stale visits on top of the heap are dropped and the heap is rebuilt once
+    // they make up most of it
+    private Visit nextVisit() {
+        if (staleVisits > visits.size() / 2 && staleVisits > 64) {
+            visits.removeIf(Visit::isStale);
+            staleVisits = 0;
+        }
+        Visit visit;
+        while ((visit = visits.peek()) != null && visit.isStale()) {
+            visits.poll();
+            staleVisits--;
+        }
+        return visit;
+    }
+
+    // until the next page is due and the budget allows it, -1 when no page is scheduled
+    long millisUntilNextDue(long nowMillis) {
+        Visit visit = nextVisit();
+        if (visit == null) {
+            return -1;
+        }
+        long untilDue = Math.max(0, visit.dueMillis - nowMillis);
+        if (permitsPerMillis == 0) {
+            return untilDue;
+        }
+        refill(nowMillis);
+        long untilPermit = permits >= 1 ? 0 : (long) Math.ceil((1 - permits) / permitsPerMillis);
+        return Math.max(untilDue, untilPermit);
+    }
+
+    private boolean tryAcquirePermit(long nowMillis) {
+        if (permitsPerMillis == 0) {
+            return true;
+        }
+        refill(nowMillis);
+        if (permits < 1) {
+            return false;
+        }
+        permits--;
+        return true;
+    }
+
+    // unused budget is kept for at most one page, the budget is a steady rate and not a burst allowance
+    private void refill(long nowMillis) {
+        permits = Math.min(1, permits + (nowMillis - refilledAtMillis) * permitsPerMillis);
+        refilledAtMillis = nowMillis;
+    }
+
+    private long nextInterval(Page page) {
+        double meanIntervalMillis = page.observedMillis / page.visits;
+        double changeRate = -Math.log((page.visits - page.changes + 0.5) / (page.visits + 0.5)) / meanIntervalMillis;
+        double interval = changeRate <= 0 ? maxIntervalMillis : 1 / changeRate;
+        return clamp((long) Math.min(interval, page.intervalMillis * MAX_GROWTH));
+    }
+
+    private long clamp(long intervalMillis) {
+        return Math.max(minIntervalMillis, Math.min(maxIntervalMillis, intervalMillis));
+    }
+
+    private static final class Page {
+        // canonical URL in UTF-8
+        private final byte[] url;
+        private final int depth;
+        private long contentHash;
+        private double visits;
+        private double changes;
+        private double observedMillis;
+        private long intervalMillis;
+        private long lastVisitMillis;
+        private int generation;
+        private boolean scheduled;
+
+        private Page(byte[] url, int depth, long contentHash) {
+            this.url = url;
+            this.depth = depth;
+            this.contentHash = contentHash;
+        }
+    }
+
+    private static final class Visit {
+        private final Page page;
+        private final int generation;
+        private final long dueMillis;
+
+        private Visit(Page page, long dueMillis) {
+            this.page = page;
+            this.generation = page.generation;
+            this.dueMillis = dueMillis;
+        }
+
+        private boolean isStale() {
+            return generation != page.generation;
+        }
+    }
+}
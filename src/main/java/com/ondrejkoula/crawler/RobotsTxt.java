@@ -0,0 +1,173 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Parsed robots.txt of one host. Rules of every user agent group are compiled once, the group matching a crawler
+ * user agent is resolved on first use and remembered.
+ */
+final class RobotsTxt {
+
+    static final RobotsTxt ALLOW_ALL = new RobotsTxt(Collections.emptyList(), Collections.emptyList());
+
+    private static final String ANY_AGENT = "*";
+
+    private final List<Group> groups;
+    @Getter
+    private final List<String> sitemaps;
+    private final Map<String, Group> groupsByUserAgent;
+
+    private RobotsTxt(List<Group> groups, List<String> sitemaps) {
+        this.groups = groups;
+        this.sitemaps = sitemaps;
+        this.groupsByUserAgent = new ConcurrentHashMap<>();
+    }
+
+    static RobotsTxt parse(String content) {
+        List<Group> groups = new ArrayList<>();
+        List<String> sitemaps = new ArrayList<>();
+        Group current = null;
+        boolean readingAgents = false;
+        for (String rawLine : content.split("\r\n|\r|\n")) {
+            int comment = rawLine.indexOf('#');
+            String line = (comment >= 0 ? rawLine.substring(0, comment) : rawLine).trim();
+            int separator = line.indexOf(':');
+            if (separator <= 0) {
+                continue;
+            }
+            String field = line.substring(0, separator).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(separator + 1).trim();
+            switch (field) {
+                case "user-agent":
+                    if (!readingAgents) {
+                        current = new Group();
+                        groups.add(current);
+                        readingAgents = true;
+                    }
+                    current.userAgents.add(value.toLowerCase(Locale.ROOT));
+                    break;
+                case "allow":
+                case "disallow":
+                    readingAgents = false;
+                    if (current != null && !value.isEmpty()) {
+                        current.rules.add(new Rule(value, "allow".equals(field)));
+                    }
+                    break;
+                case "crawl-delay":
+                    readingAgents = false;
+                    if (current != null) {
+                        try {
+                            current.crawlDelayMillis = (long) (Double.parseDouble(value) * 1000);
+                        } catch (NumberFormatException e) {
+                            // TODO log "Invalid Crawl-delay: --"
+                        }
+                    }
+                    break;
+                case "sitemap":
+                    sitemaps.add(value);
+                    break;
+                default:
+                    readingAgents = false;
+            }
+        }
+        // longest rule wins, allow wins a tie
+        Comparator<Rule> precedence = Comparator.<Rule>comparingInt(rule -> rule.length).reversed()
+                .thenComparing(rule -> !rule.allow);
+        groups.forEach(group -> group.rules.sort(precedence));
+        return new RobotsTxt(groups, sitemaps);
+    }
+
+    boolean isAllowed(String userAgent, String pathWithQuery) {
+        String path = pathWithQuery == null || pathWithQuery.isEmpty() ? "/" : pathWithQuery;
+        for (Rule rule : groupFor(userAgent).rules) {
+            if (rule.matches(path)) {
+                return rule.allow;
+            }
+        }
+        return true;
+    }
+
+    long getCrawlDelayMillis(String userAgent) {
+        return groupFor(userAgent).crawlDelayMillis;
+    }
+
+    private Group groupFor(String userAgent) {
+        String agent = userAgent == null ? "" : userAgent.toLowerCase(Locale.ROOT);
+        return groupsByUserAgent.computeIfAbsent(agent, this::selectGroup);
+    }
+
+    private Group selectGroup(String agent) {
+        Group selected = null;
+        int selectedLength = -1;
+        for (Group group : groups) {
+            for (String groupAgent : group.userAgents) {
+                if (ANY_AGENT.equals(groupAgent)) {
+                    if (selectedLength < 0) {
+                        selected = group;
+                        selectedLength = 0;
+                    }
+                } else if (agent.contains(groupAgent) && groupAgent.length() > selectedLength) {
+                    selected = group;
+                    selectedLength = groupAgent.length();
+                }
+            }
+        }
+        return selected == null ? Group.EMPTY : selected;
+    }
+
+    private static final class Group {
+        private static final Group EMPTY = new Group();
+
+        private final List<String> userAgents = new ArrayList<>();
+        private final List<Rule> rules = new ArrayList<>();
+        private long crawlDelayMillis;
+    }
+
+    private static final class Rule {
+        private final boolean allow;
+        private final int length;
+        // null when the rule is a plain prefix
+        private final Pattern pattern;
+        private final String prefix;
+
+        private Rule(String value, boolean allow) {
+            this.allow = allow;
+            this.length = value.length();
+            if (value.indexOf('*') < 0 && !value.endsWith("$")) {
+                this.prefix = value;
+                this.pattern = null;
+            } else {
+                boolean anchored = value.endsWith("$");
+                String body = anchored ? value.substring(0, value.length() - 1) : value;
+                StringBuilder regex = new StringBuilder();
+                String[] parts = body.split("\\*", -1);
+                for (int i = 0; i < parts.length; i++) {
+                    if (i > 0) {
+                        regex.append(".*");
+                    }
+                    if (!parts[i].isEmpty()) {
+                        regex.append(Pattern.quote(parts[i]));
+                    }
+                }
+                if (anchored) {
+                    regex.append('$');
+                }
+                this.prefix = null;
+                this.pattern = Pattern.compile(regex.toString(), Pattern.DOTALL);
+            }
+        }
+
+        private boolean matches(String path) {
+            return pattern == null ? path.startsWith(prefix) : pattern.matcher(path).lookingAt();
+        }
+    }
+}
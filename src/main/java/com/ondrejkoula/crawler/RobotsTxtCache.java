@@ -0,0 +1,97 @@
+package com.ondrejkoula.crawler;
+
+import org.jsoup.Connection;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.jsoup.Jsoup.connect;
+
+/**
+ * robots.txt per host shared by all crawlers of a context. The first lookup of a host downloads the file, an
+ * expired entry keeps being served while a fresh copy is downloaded in the background. Downloads never run
+ * inside a map operation, concurrent first lookups wait on a future instead of a map bin monitor, which would
+ * pin a virtual thread to its carrier for the whole download.
+ */
+final class RobotsTxtCache {
+
+    private static final int MAX_ROBOTS_TXT_BYTES = 512 * 1024;
+    private static final long FAILED_DOWNLOAD_TTL_MILLIS = 5 * 60 * 1000;
+
+    private final Map<String, CompletableFuture<Entry>> entries;
+    private final Executor executor;
+
+    RobotsTxtCache(Executor executor) {
+        this.entries = new ConcurrentHashMap<>();
+        this.executor = executor;
+    }
+
+    RobotsTxt get(URL url, String userAgent, long ttlMillis) {
+        String origin = url.getProtocol() + "://" + url.getAuthority();
+        CompletableFuture<Entry> pending = entries.get(origin);
+        if (pending == null) {
+            CompletableFuture<Entry> created = new CompletableFuture<>();
+            pending = entries.putIfAbsent(origin, created);
+            if (pending == null) {
+                pending = created;
+                try {
+                    created.complete(download(origin, userAgent, ttlMillis));
+                } catch (RuntimeException e) {
+                    entries.remove(origin, created);
+                    created.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+        Entry entry = pending.join();
+        if (entry.isExpired() && entry.refreshing.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> entries.put(origin, CompletableFuture.completedFuture(download(origin, userAgent, ttlMillis))));
+            } catch (RejectedExecutionException e) {
+                entry.refreshing.set(false);
+            }
+        }
+        return entry.robotsTxt;
+    }
+
+    private Entry download(String origin, String userAgent, long ttlMillis) {
+        try {
+            Connection.Response response = connect(origin + "/robots.txt")
+                    .userAgent(userAgent)
+                    .ignoreContentType(true)
+                    .ignoreHttpErrors(true)
+                    .maxBodySize(MAX_ROBOTS_TXT_BYTES)
+                    .execute();
+            int status = response.statusCode();
+            if (status >= 200 && status < 300) {
+                return new Entry(RobotsTxt.parse(response.body()), ttlMillis);
+            }
+            // missing robots.txt allows everything, server errors are retried sooner
+            return new Entry(RobotsTxt.ALLOW_ALL, status >= 500 ? Math.min(ttlMillis, FAILED_DOWNLOAD_TTL_MILLIS) : ttlMillis);
+        } catch (IOException e) {
+            // TODO log "Cannot download robots.txt from --"
+            return new Entry(RobotsTxt.ALLOW_ALL, Math.min(ttlMillis, FAILED_DOWNLOAD_TTL_MILLIS));
+        }
+    }
+
+    private static final class Entry {
+        private final RobotsTxt robotsTxt;
+        private final long expiresAtMillis;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(RobotsTxt robotsTxt, long ttlMillis) {
+            this.robotsTxt = robotsTxt;
+            this.expiresAtMillis = System.currentTimeMillis() + ttlMillis;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAtMillis;
+        }
+    }
+}
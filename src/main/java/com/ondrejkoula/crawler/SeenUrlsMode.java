@@ -0,0 +1,6 @@
+package com.ondrejkoula.crawler;
+
+public enum SeenUrlsMode {
+    EXACT,
+    BLOOM_FILTER
+}
@@ -0,0 +1,179 @@
+package com.ondrejkoula.crawler;
+
+/**
+ * 64-bit SimHash of the visible text of an HTML page. Text is read straight from the response bytes, skipping
+ * tags, comments, scripts and styles; features are overlapping three-word shingles. Pages sharing most of
+ * their text get fingerprints differing in only a few bits.
+ */
+final class SimHash {
+
+    private static final int SHINGLE_WORDS = 3;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final byte[] SCRIPT = {'s', 'c', 'r', 'i', 'p', 't'};
+    private static final byte[] STYLE = {'s', 't', 'y', 'l', 'e'};
+
+    private SimHash() {
+    }
+
+    static long ofHtml(byte[] html) {
+        Features features = new Features();
+        long[] window = new long[SHINGLE_WORDS];
+        int words = 0;
+        long word = FNV_OFFSET_BASIS;
+        boolean inWord = false;
+        int length = html.length;
+        int i = 0;
+        while (i <= length) {
+            byte b = i < length ? html[i] : (byte) ' ';
+            if (isWordByte(b)) {
+                word = (word ^ toLowerCase(b)) * FNV_PRIME;
+                inWord = true;
+                i++;
+                continue;
+            }
+            if (inWord) {
+                window[words % SHINGLE_WORDS] = word;
+                words++;
+                if (words >= SHINGLE_WORDS) {
+                    features.add(shingle(window, words));
+                }
+                word = FNV_OFFSET_BASIS;
+                inWord = false;
+            }
+            i = b == '<' && i < length ? skipMarkup(html, i) : i + 1;
+        }
+        if (words > 0 && words < SHINGLE_WORDS) {
+            // too short for a shingle, every word is a feature
+            for (int w = 0; w < words; w++) {
+                features.add(Fingerprints.mix(window[w]));
+            }
+        }
+        return features.simHash();
+    }
+
+    static int distance(long simHash1, long simHash2) {
+        return Long.bitCount(simHash1 ^ simHash2);
+    }
+
+    private static long shingle(long[] window, int words) {
+        long hash = 0;
+        for (int w = 0; w < SHINGLE_WORDS; w++) {
+            hash = Long.rotateLeft(hash, 21) ^ window[(words + w) % SHINGLE_WORDS];
+        }
+        return Fingerprints.mix(hash);
+    }
+
+    // from '<' to after the markup, including the content of scripts and styles
+    private static int skipMarkup(byte[] html, int from) {
+        int length = html.length;
+        if (startsWith(html, from + 1, "!--")) {
+            for (int i = from + 4; i + 2 < length; i++) {
+                if (html[i] == '-' && html[i + 1] == '-' && html[i + 2] == '>') {
+                    return i + 3;
+                }
+            }
+            return length;
+        }
+        int end = from + 1;
+        while (end < length && html[end] != '>') {
+            end++;
+        }
+        byte[] rawTextTag = startsWithIgnoreCase(html, from + 1, SCRIPT) ? SCRIPT
+                : startsWithIgnoreCase(html, from + 1, STYLE) ? STYLE
+                : null;
+        if (rawTextTag == null) {
+            return end + 1;
+        }
+        for (int i = end; i + 1 < length; i++) {
+            if (html[i] == '<' && html[i + 1] == '/' && startsWithIgnoreCase(html, i + 2, rawTextTag)) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    private static boolean startsWith(byte[] html, int from, String value) {
+        if (from + value.length() > html.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (html[from + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // value is lower case ASCII and must be followed by the end of the tag name
+    private static boolean startsWithIgnoreCase(byte[] html, int from, byte[] value) {
+        int end = from + value.length;
+        if (end > html.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (toLowerCase(html[from + i]) != value[i]) {
+                return false;
+            }
+        }
+        return end == html.length || !isWordByte(html[end]);
+    }
+
+    // bytes of multi-byte characters count as letters
+    private static boolean isWordByte(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b < 0;
+    }
+
+    private static byte toLowerCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    /**
+     * Counts set bits per position over all features. Counting is bit sliced: bit {@code 8 * j + k} of a feature
+     * is added to byte {@code j} of {@code lanes[k]}, eight additions per feature instead of 64, and the byte
+     * counters are moved to full counters before they can overflow.
+     */
+    private static final class Features {
+        private static final long LOW_BITS = 0x0101010101010101L;
+        private static final int MAX_PENDING = 255;
+
+        private final long[] lanes = new long[8];
+        private final int[] ones = new int[64];
+        private int pending;
+        private int count;
+
+        private void add(long feature) {
+            for (int k = 0; k < 8; k++) {
+                lanes[k] += (feature >>> k) & LOW_BITS;
+            }
+            count++;
+            if (++pending == MAX_PENDING) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            for (int k = 0; k < 8; k++) {
+                long lane = lanes[k];
+                for (int j = 0; j < 8; j++) {
+                    ones[8 * j + k] += (int) (lane >>> (8 * j)) & 0xff;
+                }
+                lanes[k] = 0;
+            }
+            pending = 0;
+        }
+
+        // a bit is set when more features have it set than not
+        private long simHash() {
+            flush();
+            long simHash = 0;
+            for (int bit = 0; bit < 64; bit++) {
+                if (2 * ones[bit] > count) {
+                    simHash |= 1L << bit;
+                }
+            }
+            return simHash;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.ondrejkoula.crawler;
+
+import java.util.Arrays;
+
+/**
+ * Finds SimHash fingerprints within a Hamming distance of a given one. Fingerprints are split into
+ * {@code maxDistance + 1} bit blocks; two fingerprints within the distance share at least one block exactly, so
+ * only fingerprints sharing a block are compared. Each block has a hash table of chains threaded through
+ * {@code int} arrays, an indexed page costs 8 bytes plus 4 bytes per block.
+ */
+final class SimHashIndex {
+
+    private static final int MIN_CAPACITY = 1024;
+
+    private final int maxDistance;
+    private final int blocks;
+    private final int[] blockShifts;
+    private final long[] blockMasks;
+
+    private long[] simHashes;
+    private int size;
+    // heads[block][bucket] and next[block][entry] hold entry index + 1, zero ends a chain
+    private int[][] heads;
+    private int[][] next;
+    private int bucketMask;
+
+    SimHashIndex(int maxDistance) {
+        if (maxDistance < 0 || maxDistance > 31) {
+            throw new IllegalArgumentException("Maximum SimHash distance must be between 0 and 31.");
+        }
+        this.maxDistance = maxDistance;
+        this.blocks = maxDistance + 1;
+        this.blockShifts = new int[blocks];
+        this.blockMasks = new long[blocks];
+        for (int block = 0; block < blocks; block++) {
+            int start = block * 64 / blocks;
+            int end = (block + 1) * 64 / blocks;
+            blockShifts[block] = start;
+            blockMasks[block] = end - start == 64 ? -1L : (1L << (end - start)) - 1;
+        }
+        this.simHashes = new long[MIN_CAPACITY];
+        this.heads = new int[blocks][MIN_CAPACITY];
+        this.next = new int[blocks][MIN_CAPACITY];
+        this.bucketMask = MIN_CAPACITY - 1;
+    }
+
+    /**
+     * Returns true when a fingerprint within the maximum distance is indexed already, otherwise indexes the
+     * given one.
+     */
+    boolean addIfNoNearDuplicate(long simHash) {
+        for (int block = 0; block < blocks; block++) {
+            long blockValue = blockValue(simHash, block);
+            for (int entry = heads[block][bucket(blockValue)]; entry != 0; entry = next[block][entry - 1]) {
+                long candidate = simHashes[entry - 1];
+                if (blockValue(candidate, block) == blockValue && SimHash.distance(candidate, simHash) <= maxDistance) {
+                    return true;
+                }
+            }
+        }
+        add(simHash);
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long memoryBytes() {
+        return (long) simHashes.length * Long.BYTES + 2L * blocks * heads[0].length * Integer.BYTES;
+    }
+
+    private void add(long simHash) {
+        if (size == simHashes.length) {
+            grow();
+        }
+        simHashes[size] = simHash;
+        link(size);
+        size++;
+    }
+
+    private void link(int entry) {
+        long simHash = simHashes[entry];
+        for (int block = 0; block < blocks; block++) {
+            int bucket = bucket(blockValue(simHash, block));
+            next[block][entry] = heads[block][bucket];
+            heads[block][bucket] = entry + 1;
+        }
+    }
+
+    // buckets double with entries to keep chains short
+    private void grow() {
+        int capacity = simHashes.length << 1;
+        simHashes = Arrays.copyOf(simHashes, capacity);
+        heads = new int[blocks][capacity];
+        next = new int[blocks][capacity];
+        bucketMask = capacity - 1;
+        for (int entry = 0; entry < size; entry++) {
+            link(entry);
+        }
+    }
+
+    private long blockValue(long simHash, int block) {
+        return (simHash >>> blockShifts[block]) & blockMasks[block];
+    }
+
+    private int bucket(long blockValue) {
+        return (int) Fingerprints.mix(blockValue) & bucketMask;
+    }
+}
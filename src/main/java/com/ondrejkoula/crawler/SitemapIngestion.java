@@ -0,0 +1,193 @@
+package com.ondrejkoula.crawler;
+
+import org.jsoup.Connection;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+import static org.jsoup.Jsoup.connect;
+
+/**
+ * Reads the sitemaps of a crawler one after another, following sitemap indexes, and hands the page entries over in
+ * batches. At most one batch is held at a time, so memory depends neither on the size nor on the number of the
+ * sitemaps. Every download waits at the gate like a page fetch and runs on the thread that opens the gate, no thread
+ * is held while waiting. Stops once the batch consumer returns false or the gate does not let a download start.
+ */
+final class SitemapIngestion {
+
+    private final String userAgent;
+    private final int timeoutMillis;
+    private final DownloadGate gate;
+    private final int maxSitemaps;
+    private final long maxSitemapBytes;
+    private final int batchSize;
+    private final Predicate<List<SitemapReader.Entry>> batchConsumer;
+    private final Queue<String> sitemapsToRead;
+    private final Set<String> knownSitemaps;
+    private List<SitemapReader.Entry> batch;
+    private boolean stopped;
+    private int sitemapsRead;
+
+    SitemapIngestion(CrawlerConfig config, DownloadGate gate, Predicate<List<SitemapReader.Entry>> batchConsumer) {
+        this.userAgent = config.getUserAgent();
+        this.timeoutMillis = (int) Math.min(Integer.MAX_VALUE, Math.max(0, config.getReadTimeoutMillis()));
+        this.gate = gate;
+        this.maxSitemaps = config.getMaxSitemaps();
+        this.maxSitemapBytes = config.getMaxSitemapBytes();
+        this.batchSize = Math.max(1, config.getSitemapBatchSize());
+        this.batchConsumer = batchConsumer;
+        this.sitemapsToRead = new ArrayDeque<>();
+        this.knownSitemaps = new HashSet<>();
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    // sitemaps beyond the maximum, repeated ones and those not on HTTP are ignored
+    void addSitemap(String location) {
+        String lowerCase = location.toLowerCase(Locale.ROOT);
+        if (knownSitemaps.size() < maxSitemaps
+                && (lowerCase.startsWith("http://") || lowerCase.startsWith("https://"))
+                && knownSitemaps.add(location)) {
+            sitemapsToRead.add(location);
+        }
+    }
+
+    // completes with the number of sitemaps read
+    CompletableFuture<Integer> run() {
+        CompletableFuture<Integer> done = new CompletableFuture<>();
+        readNext(done);
+        return done;
+    }
+
+    private void readNext(CompletableFuture<Integer> done) {
+        String location = stopped ? null : sitemapsToRead.poll();
+        if (location == null) {
+            done.complete(sitemapsRead);
+            return;
+        }
+        gate.acquire().whenComplete((granted, error) -> {
+            try {
+                if (error != null || !granted) {
+                    // a rejected download means the context shuts down
+                    stopped = true;
+                } else {
+                    readGranted(location);
+                }
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+                return;
+            }
+            readNext(done);
+        });
+    }
+
+    private void readGranted(String location) {
+        try {
+            read(location);
+            sitemapsRead++;
+        } catch (IOException | IllegalArgumentException e) {
+            // TODO log "Cannot read sitemap --"
+        } catch (StoppedException e) {
+            // the rest of the sitemap is not downloaded
+        }
+        // a sitemap that failed halfway still delivers what was read of it
+        flush();
+    }
+
+    private void read(String location) throws IOException {
+        CountingInputStream in = null;
+        try {
+            Connection.Response response = connect(location)
+                    .userAgent(userAgent)
+                    .ignoreContentType(true)
+                    .ignoreHttpErrors(true)
+                    .maxBodySize(0)
+                    .timeout(timeoutMillis)
+                    .execute();
+            in = new CountingInputStream(response.bodyStream());
+            int status = response.statusCode();
+            if (status < 200 || status >= 300) {
+                throw new IOException("HTTP error " + status + " fetching sitemap " + location);
+            }
+            SitemapReader.read(in, maxSitemapBytes, this::add, this::addSitemap);
+        } finally {
+            if (in != null) {
+                in.close();
+            }
+            gate.release(in == null ? 0 : in.readBytes);
+        }
+    }
+
+    private void add(SitemapReader.Entry entry) {
+        batch.add(entry);
+        if (batch.size() >= batchSize) {
+            flush();
+            if (stopped) {
+                throw new StoppedException();
+            }
+        }
+    }
+
+    private void flush() {
+        if (batch.isEmpty() || stopped) {
+            return;
+        }
+        List<SitemapReader.Entry> full = batch;
+        batch = new ArrayList<>(batchSize);
+        stopped = !batchConsumer.test(full);
+    }
+
+    /**
+     * Admission of sitemap downloads, the crawler lets them start like its page fetches.
+     */
+    interface DownloadGate {
+        // completes once the download may start, with false when the crawler no longer takes sitemap URLs
+        CompletableFuture<Boolean> acquire();
+
+        void release(long downloadedBytes);
+    }
+
+    // bytes as downloaded, before a gzip sitemap is decompressed
+    private static final class CountingInputStream extends FilterInputStream {
+        private long readBytes;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read >= 0) {
+                readBytes++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+            if (read > 0) {
+                readBytes += read;
+            }
+            return read;
+        }
+    }
+
+    private static final class StoppedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private StoppedException() {
+            super(null, null, false, false);
+        }
+    }
+}
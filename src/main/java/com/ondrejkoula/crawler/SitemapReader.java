@@ -0,0 +1,178 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Getter;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming reader of sitemaps and sitemap index files of the sitemaps.org protocol. Entries are handed over as
+ * soon as their element ends, so memory does not depend on the size of the sitemap. A gzip-compressed sitemap is
+ * recognized by its magic bytes, whatever its name or content type. DTDs and external entities are not processed.
+ */
+final class SitemapReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int GZIP_MAGIC = 0x1f8b;
+
+    private SitemapReader() {
+    }
+
+    /**
+     * Reads page entries of a sitemap and locations of the sitemaps listed by an index. Fails once the
+     * decompressed sitemap passes maxBytes, entries read until then are already handed over.
+     */
+    static void read(InputStream in, long maxBytes, Consumer<Entry> pages, Consumer<String> sitemaps) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        buffered.mark(2);
+        int magic = buffered.read() << 8 | buffered.read();
+        buffered.reset();
+        InputStream xml = new LimitedInputStream(magic == GZIP_MAGIC ? new GZIPInputStream(buffered, BUFFER_SIZE) : buffered, maxBytes);
+        XMLStreamReader reader;
+        try {
+            reader = newInputFactory().createXMLStreamReader(xml);
+        } catch (XMLStreamException e) {
+            throw ioExceptionOf(e);
+        }
+        try {
+            readEntries(reader, pages, sitemaps);
+        } catch (XMLStreamException e) {
+            throw ioExceptionOf(e);
+        } finally {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // TODO log "Cannot close sitemap reader --"
+            }
+        }
+    }
+
+    // the JDK reader keeps a failure of the stream as the nested exception, not as the cause
+    private static IOException ioExceptionOf(XMLStreamException e) {
+        Throwable nested = e.getNestedException() != null ? e.getNestedException() : e.getCause();
+        return nested instanceof IOException ? (IOException) nested : new IOException("Invalid sitemap.", e);
+    }
+
+    // only loc and lastmod directly inside url or sitemap count, image and video extensions nest their own loc
+    private static void readEntries(XMLStreamReader reader, Consumer<Entry> pages, Consumer<String> sitemaps) throws XMLStreamException {
+        int depth = 0;
+        int entryDepth = -1;
+        String location = null;
+        long lastModifiedMillis = -1;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String name = reader.getLocalName();
+                if (entryDepth < 0 && ("url".equals(name) || "sitemap".equals(name))) {
+                    entryDepth = depth;
+                    location = null;
+                    lastModifiedMillis = -1;
+                } else if (depth == entryDepth + 1 && "loc".equals(name)) {
+                    location = reader.getElementText().trim();
+                    depth--;
+                } else if (depth == entryDepth + 1 && "lastmod".equals(name)) {
+                    lastModifiedMillis = lastModifiedMillis(reader.getElementText());
+                    depth--;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == entryDepth) {
+                    if (location != null && !location.isEmpty()) {
+                        if ("url".equals(reader.getLocalName())) {
+                            pages.accept(new Entry(location, lastModifiedMillis));
+                        } else {
+                            sitemaps.accept(location);
+                        }
+                    }
+                    entryDepth = -1;
+                }
+                depth--;
+            }
+        }
+    }
+
+    // W3C datetime, a date alone or a time with an offset, -1 when missing or invalid
+    static long lastModifiedMillis(String lastModified) {
+        if (lastModified == null) {
+            return -1;
+        }
+        String value = lastModified.trim();
+        try {
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // a date without time
+        }
+        try {
+            return LocalDate.parse(value).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    @Getter
+    static final class Entry {
+        private final String location;
+        // -1 when the sitemap does not say
+        private final long lastModifiedMillis;
+
+        Entry(String location, long lastModifiedMillis) {
+            this.location = location;
+            this.lastModifiedMillis = lastModifiedMillis;
+        }
+    }
+
+    // guards against sitemaps over the protocol limit and decompression bombs
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private long readBytes;
+
+        private LimitedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read >= 0) {
+                count(1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        private void count(int bytes) throws IOException {
+            readBytes += bytes;
+            if (readBytes > maxBytes) {
+                throw new IOException("Sitemap is larger than " + maxBytes + " bytes.");
+            }
+        }
+    }
+}
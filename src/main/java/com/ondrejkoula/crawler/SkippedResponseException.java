@@ -0,0 +1,27 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Getter;
+
+/**
+ * A response whose body was not read, or not read to its end, because of its content type or size.
+ */
+@Getter
+class SkippedResponseException extends PageFetchException {
+
+    private static final long serialVersionUID = 1L;
+
+    // -1 when the response did not carry a Content-Length header
+    private final long contentLength;
+    private final long bytesRead;
+
+    SkippedResponseException(String message, int statusCode, FailureReason reason, long contentLength, long bytesRead) {
+        super(message, statusCode, reason);
+        this.contentLength = contentLength;
+        this.bytesRead = bytesRead;
+    }
+
+    // known only when the server announced the length
+    long bytesSkipped() {
+        return contentLength < 0 ? 0 : Math.max(0, contentLength - bytesRead);
+    }
+}
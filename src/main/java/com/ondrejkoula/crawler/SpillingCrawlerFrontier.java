@@ -0,0 +1,230 @@
+package com.ondrejkoula.crawler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * FIFO queue keeping at most a bounded number of URLs on the heap. URLs are taken from the in-memory head,
+ * added to the in-memory tail and everything between the two lives in append-only segment files. A full tail
+ * is written as one new segment, an empty head is refilled from the oldest segment. Segments are never rewritten,
+ * so a frozen view copies only head and tail and defers deleting the segments consumed while it is read.
+ */
+final class SpillingCrawlerFrontier implements CrawlerFrontier {
+
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    private final Path directory;
+    private final int segmentCapacity;
+    private final UrlCanonicalizer urlCanonicalizer;
+
+    private final Queue<QueuedURL> head;
+    private final Queue<QueuedURL> tail;
+    private final Queue<Path> segments;
+    private long segmentsSize;
+    private long nextSegmentId;
+    private int frozenViews;
+    private final List<Path> retiredSegments;
+
+    SpillingCrawlerFrontier(Path directory, int memoryCapacity, UrlCanonicalizer urlCanonicalizer) {
+        this.directory = directory;
+        this.segmentCapacity = Math.max(1, memoryCapacity / 2);
+        this.urlCanonicalizer = urlCanonicalizer;
+        this.head = new ArrayDeque<>(segmentCapacity);
+        this.tail = new ArrayDeque<>(segmentCapacity);
+        this.segments = new ArrayDeque<>();
+        this.retiredSegments = new ArrayList<>();
+        try {
+            Files.createDirectories(directory);
+            // segments left by a previous run are stale, a resumed crawler restores its queue from a checkpoint
+            try (Stream<Path> staleSegments = Files.list(directory)) {
+                staleSegments.filter(path -> path.toString().endsWith(SEGMENT_SUFFIX)).forEach(this::deleteSegment);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create frontier directory " + directory, e);
+        }
+    }
+
+    @Override
+    public void add(QueuedURL url) {
+        if (segments.isEmpty() && tail.isEmpty() && head.size() < segmentCapacity) {
+            head.add(url);
+            return;
+        }
+        tail.add(url);
+        if (tail.size() >= segmentCapacity) {
+            spillTail();
+        }
+    }
+
+    @Override
+    public QueuedURL poll() {
+        if (head.isEmpty()) {
+            if (!segments.isEmpty()) {
+                loadSegment(segments.poll());
+            } else {
+                head.addAll(tail);
+                tail.clear();
+            }
+        }
+        return head.poll();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return head.isEmpty() && segments.isEmpty() && tail.isEmpty();
+    }
+
+    @Override
+    public long size() {
+        return head.size() + segmentsSize + tail.size();
+    }
+
+    @Override
+    public void clear() {
+        head.clear();
+        tail.clear();
+        Path segment;
+        while ((segment = segments.poll()) != null) {
+            retireSegment(segment);
+        }
+        segmentsSize = 0;
+    }
+
+    @Override
+    public void forEach(Consumer<QueuedURL> consumer) {
+        head.forEach(consumer);
+        segments.forEach(segment -> readSegment(segment, consumer));
+        tail.forEach(consumer);
+    }
+
+    @Override
+    public View freeze() {
+        List<QueuedURL> frozenHead = new ArrayList<>(head);
+        List<Path> frozenSegments = new ArrayList<>(segments);
+        List<QueuedURL> frozenTail = new ArrayList<>(tail);
+        long frozenSize = size();
+        frozenViews++;
+        return new View() {
+            private boolean released;
+
+            @Override
+            public long size() {
+                return frozenSize;
+            }
+
+            @Override
+            public void forEach(Consumer<QueuedURL> consumer) {
+                frozenHead.forEach(consumer);
+                frozenSegments.forEach(segment -> readSegment(segment, consumer));
+                frozenTail.forEach(consumer);
+            }
+
+            @Override
+            public void release() {
+                if (!released) {
+                    released = true;
+                    if (--frozenViews == 0) {
+                        retiredSegments.forEach(SpillingCrawlerFrontier.this::deleteSegment);
+                        retiredSegments.clear();
+                    }
+                }
+            }
+        };
+    }
+
+    private void spillTail() {
+        Path segment = directory.resolve(nextSegmentId++ + SEGMENT_SUFFIX);
+        try (FileChannel channel = FileChannel.open(segment, CREATE_NEW, WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            for (QueuedURL url : tail) {
+                byte[] location = url.getUrl().getUrl().toString().getBytes(UTF_8);
+                if (buffer.remaining() < 8 + location.length) {
+                    writeFully(channel, buffer);
+                    if (buffer.capacity() < 8 + location.length) {
+                        buffer = ByteBuffer.allocate(8 + location.length);
+                    }
+                }
+                buffer.putInt(url.getDepth()).putInt(location.length).put(location);
+            }
+            writeFully(channel, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write frontier segment " + segment, e);
+        }
+        segments.add(segment);
+        segmentsSize += tail.size();
+        tail.clear();
+    }
+
+    private void loadSegment(Path segment) {
+        segmentsSize -= readSegment(segment, head::add);
+        retireSegment(segment);
+    }
+
+    private void retireSegment(Path segment) {
+        if (frozenViews > 0) {
+            retiredSegments.add(segment);
+        } else {
+            deleteSegment(segment);
+        }
+    }
+
+    private int readSegment(Path segment, Consumer<QueuedURL> consumer) {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(segment, READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            int read = 0;
+            while (buffer.hasRemaining() && read >= 0) {
+                read = channel.read(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read frontier segment " + segment, e);
+        }
+        buffer.flip();
+        int records = 0;
+        while (buffer.remaining() >= 8) {
+            int depth = buffer.getInt();
+            byte[] location = new byte[buffer.getInt()];
+            buffer.get(location);
+            records++;
+            try {
+                consumer.accept(new QueuedURL(new CrawlerURL(new URL(new String(location, UTF_8)), urlCanonicalizer), depth));
+            } catch (MalformedURLException e) {
+                // TODO log "Invalid URL in frontier segment --. Skipping..."
+            }
+        }
+        return records;
+    }
+
+    private void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void deleteSegment(Path segment) {
+        try {
+            Files.deleteIfExists(segment);
+        } catch (IOException e) {
+            // TODO log "Cannot delete frontier segment --"
+        }
+    }
+}
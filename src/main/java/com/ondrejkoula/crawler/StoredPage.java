@@ -0,0 +1,25 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.net.URL;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A page read back from a {@link PageStore}.
+ */
+@Getter
+@Builder
+public final class StoredPage {
+
+    private final URL url;
+    private final Instant fetchedAt;
+    private final int statusCode;
+    private final Map<String, List<String>> headers;
+    private final byte[] body;
+    private final String title;
+    private final List<URL> outcomeUrls;
+}
@@ -0,0 +1,350 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.jsoup.internal.StringUtil;
+import org.jsoup.parser.Parser;
+
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_16BE;
+import static java.nio.charset.StandardCharsets.UTF_16LE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Single pass tokenizer over raw HTML bytes which picks up {@code <a href>}, {@code <base href>} and
+ * {@code <title>} without building a document tree. Comments and the raw text of scripts and styles are skipped.
+ * Works for any charset where ASCII characters are single bytes, see {@link #supports(Charset)}. The charset is
+ * picked like Jsoup does: a byte order mark, then the declared charset, then a {@code <meta>} within the first
+ * 5 KB, and UTF-8 otherwise. Values are decoded once the whole page is scanned and the charset is known.
+ */
+final class StreamingLinkExtractor {
+
+    private static final int META_SCAN_BYTES = 5 * 1024;
+    private static final Pattern CONTENT_TYPE_CHARSET = Pattern.compile("(?i)\\bcharset=\\s*[\"']?([^\\s,;\"']*)");
+
+    private static final byte[] A = {'a'};
+    private static final byte[] BASE = {'b', 'a', 's', 'e'};
+    private static final byte[] META = {'m', 'e', 't', 'a'};
+    private static final byte[] CHARSET = {'c', 'h', 'a', 'r', 's', 'e', 't'};
+    private static final byte[] HTTP_EQUIV = {'h', 't', 't', 'p', '-', 'e', 'q', 'u', 'i', 'v'};
+    private static final byte[] CONTENT = {'c', 'o', 'n', 't', 'e', 'n', 't'};
+    private static final byte[] CONTENT_TYPE = {'c', 'o', 'n', 't', 'e', 'n', 't', '-', 't', 'y', 'p', 'e'};
+    private static final byte[] TITLE = {'t', 'i', 't', 'l', 'e'};
+    private static final byte[] SCRIPT = {'s', 'c', 'r', 'i', 'p', 't'};
+    private static final byte[] STYLE = {'s', 't', 'y', 'l', 'e'};
+    private static final byte[] TEXTAREA = {'t', 'e', 'x', 't', 'a', 'r', 'e', 'a'};
+    private static final byte[] HREF = {'h', 'r', 'e', 'f'};
+    private static final byte[] COMMENT_START = {'!', '-', '-'};
+    private static final byte[] COMMENT_END = {'-', '-', '>'};
+
+    private StreamingLinkExtractor() {
+    }
+
+    static boolean supports(Charset charset) {
+        String name = charset.name();
+        return !name.startsWith("UTF-16") && !name.startsWith("UTF-32");
+    }
+
+    // null when the page is not in a charset the scan supports
+    static Result extract(byte[] html, Charset declaredCharset, String baseUri) {
+        Charset charset = charsetOfByteOrderMark(html);
+        if (charset == null) {
+            charset = declaredCharset;
+        }
+        if (charset != null && !supports(charset)) {
+            return null;
+        }
+        boolean metaFound = charset != null;
+        Charset metaCharset = null;
+        // start and end of the href values, of <base href> and of the title text
+        long[] hrefs = new long[64];
+        int hrefCount = 0;
+        long base = -1;
+        long title = -1;
+        int length = html.length;
+        int i = 0;
+        while (i < length) {
+            int tagStart = indexOf(html, (byte) '<', i);
+            if (tagStart < 0) {
+                break;
+            }
+            i = tagStart + 1;
+            if (startsWith(html, i, COMMENT_START)) {
+                int end = indexOf(html, COMMENT_END, i + COMMENT_START.length);
+                i = end < 0 ? length : end + COMMENT_END.length;
+                continue;
+            }
+            if (i < length && (html[i] == '!' || html[i] == '?')) {
+                int end = indexOf(html, (byte) '>', i);
+                i = end < 0 ? length : end + 1;
+                continue;
+            }
+            boolean endTag = i < length && html[i] == '/';
+            if (endTag) {
+                i++;
+            }
+            int nameStart = i;
+            while (i < length && isNameChar(html[i])) {
+                i++;
+            }
+            int nameEnd = i;
+            if (nameEnd == nameStart) {
+                continue;
+            }
+            boolean anchor = equalsIgnoreCase(html, nameStart, nameEnd, A);
+            boolean baseTag = !anchor && equalsIgnoreCase(html, nameStart, nameEnd, BASE);
+            boolean metaTag = !metaFound && tagStart < META_SCAN_BYTES && equalsIgnoreCase(html, nameStart, nameEnd, META);
+
+            // attributes
+            int hrefStart = -1;
+            int hrefEnd = -1;
+            long metaCharsetValue = -1;
+            long metaContent = -1;
+            boolean contentTypeEquiv = false;
+            while (i < length && html[i] != '>') {
+                if (isWhitespace(html[i]) || html[i] == '/') {
+                    i++;
+                    continue;
+                }
+                int attributeStart = i;
+                while (i < length && !isWhitespace(html[i]) && html[i] != '=' && html[i] != '>' && html[i] != '/') {
+                    i++;
+                }
+                int attributeEnd = i;
+                while (i < length && isWhitespace(html[i])) {
+                    i++;
+                }
+                if (i >= length || html[i] != '=') {
+                    continue;
+                }
+                i++;
+                while (i < length && isWhitespace(html[i])) {
+                    i++;
+                }
+                int valueStart;
+                int valueEnd;
+                if (i < length && (html[i] == '"' || html[i] == '\'')) {
+                    byte quote = html[i];
+                    valueStart = i + 1;
+                    valueEnd = indexOf(html, quote, valueStart);
+                    if (valueEnd < 0) {
+                        valueEnd = length;
+                    }
+                    i = Math.min(length, valueEnd + 1);
+                } else {
+                    valueStart = i;
+                    while (i < length && !isWhitespace(html[i]) && html[i] != '>') {
+                        i++;
+                    }
+                    valueEnd = i;
+                }
+                if ((anchor || baseTag) && equalsIgnoreCase(html, attributeStart, attributeEnd, HREF)) {
+                    hrefStart = valueStart;
+                    hrefEnd = valueEnd;
+                } else if (metaTag && equalsIgnoreCase(html, attributeStart, attributeEnd, CHARSET)) {
+                    metaCharsetValue = range(valueStart, valueEnd);
+                } else if (metaTag && equalsIgnoreCase(html, attributeStart, attributeEnd, CONTENT)) {
+                    metaContent = range(valueStart, valueEnd);
+                } else if (metaTag && equalsIgnoreCase(html, attributeStart, attributeEnd, HTTP_EQUIV)) {
+                    contentTypeEquiv = equalsIgnoreCase(html, valueStart, valueEnd, CONTENT_TYPE);
+                }
+            }
+            i++;
+            if (endTag) {
+                continue;
+            }
+
+            if (hrefStart >= 0) {
+                if (anchor) {
+                    if (hrefCount == hrefs.length) {
+                        hrefs = Arrays.copyOf(hrefs, hrefCount * 2);
+                    }
+                    hrefs[hrefCount++] = range(hrefStart, hrefEnd);
+                } else if (base < 0) {
+                    base = range(hrefStart, hrefEnd);
+                }
+            } else if (metaTag) {
+                // like in Jsoup, an unknown charset attribute ends the search, an unknown content type does not
+                Charset contentTypeCharset = contentTypeEquiv && metaContent >= 0
+                        ? charsetOfContentType(ascii(html, metaContent))
+                        : null;
+                if (contentTypeCharset != null || metaCharsetValue >= 0) {
+                    metaFound = true;
+                    metaCharset = contentTypeCharset != null ? contentTypeCharset : validCharset(ascii(html, metaCharsetValue));
+                }
+            } else if (title < 0 && equalsIgnoreCase(html, nameStart, nameEnd, TITLE)) {
+                int end = indexOfEndTag(html, i, TITLE);
+                int textEnd = end < 0 ? length : end;
+                title = range(i, textEnd);
+                i = textEnd;
+            } else if (equalsIgnoreCase(html, nameStart, nameEnd, SCRIPT)) {
+                i = skipRawText(html, i, SCRIPT);
+            } else if (equalsIgnoreCase(html, nameStart, nameEnd, STYLE)) {
+                i = skipRawText(html, i, STYLE);
+            } else if (equalsIgnoreCase(html, nameStart, nameEnd, TEXTAREA)) {
+                i = skipRawText(html, i, TEXTAREA);
+            }
+        }
+
+        if (charset == null) {
+            charset = metaCharset == null ? UTF_8 : metaCharset;
+        }
+        if (!supports(charset)) {
+            return null;
+        }
+        // like in a DOM, the first <base href> applies to every link of the document
+        String resolvedBase = base < 0 ? baseUri : StringUtil.resolve(baseUri, attributeValue(html, base, charset));
+        Set<String> links = new LinkedHashSet<>(hrefCount);
+        for (int h = 0; h < hrefCount; h++) {
+            String link = StringUtil.resolve(resolvedBase, attributeValue(html, hrefs[h], charset));
+            if (!link.isEmpty()) {
+                links.add(link);
+            }
+        }
+        String titleText = title < 0
+                ? ""
+                : StringUtil.normaliseWhitespace(Parser.unescapeEntities(decode(html, title, charset), false)).trim();
+        return new Result(titleText, links);
+    }
+
+    private static Charset charsetOfByteOrderMark(byte[] html) {
+        if (html.length >= 3 && (html[0] & 0xff) == 0xef && (html[1] & 0xff) == 0xbb && (html[2] & 0xff) == 0xbf) {
+            return UTF_8;
+        }
+        if (html.length >= 2 && (html[0] & 0xff) == 0xfe && (html[1] & 0xff) == 0xff) {
+            return UTF_16BE;
+        }
+        if (html.length >= 2 && (html[0] & 0xff) == 0xff && (html[1] & 0xff) == 0xfe) {
+            return UTF_16LE;
+        }
+        return null;
+    }
+
+    private static Charset charsetOfContentType(String contentType) {
+        Matcher matcher = CONTENT_TYPE_CHARSET.matcher(contentType);
+        return matcher.find() ? validCharset(matcher.group(1)) : null;
+    }
+
+    // null for an unknown charset, which leaves the page in UTF-8
+    private static Charset validCharset(String name) {
+        String trimmed = name.trim().replaceAll("[\"']", "");
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        try {
+            if (Charset.isSupported(trimmed)) {
+                return Charset.forName(trimmed);
+            }
+            String upperCase = trimmed.toUpperCase(Locale.ENGLISH);
+            return Charset.isSupported(upperCase) ? Charset.forName(upperCase) : null;
+        } catch (IllegalCharsetNameException e) {
+            return null;
+        }
+    }
+
+    private static long range(int start, int end) {
+        return (long) start << 32 | end;
+    }
+
+    private static String decode(byte[] html, long range, Charset charset) {
+        int start = (int) (range >>> 32);
+        return new String(html, start, (int) range - start, charset);
+    }
+
+    private static String ascii(byte[] html, long range) {
+        return decode(html, range, ISO_8859_1);
+    }
+
+    private static String attributeValue(byte[] html, long range, Charset charset) {
+        return Parser.unescapeEntities(decode(html, range, charset), true).trim();
+    }
+
+    private static int skipRawText(byte[] html, int from, byte[] tagName) {
+        int end = indexOfEndTag(html, from, tagName);
+        return end < 0 ? html.length : end;
+    }
+
+    private static int indexOfEndTag(byte[] html, int from, byte[] tagName) {
+        int i = from;
+        while ((i = indexOf(html, (byte) '<', i)) >= 0) {
+            if (i + 1 < html.length && html[i + 1] == '/'
+                    && equalsIgnoreCase(html, i + 2, Math.min(html.length, i + 2 + tagName.length), tagName)) {
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] html, byte value, int from) {
+        for (int i = from; i < html.length; i++) {
+            if (html[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] html, byte[] value, int from) {
+        int last = html.length - value.length;
+        for (int i = from; i <= last; i++) {
+            if (startsWith(html, i, value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] html, int from, byte[] value) {
+        if (from + value.length > html.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (html[from + i] != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // value is lower case ASCII
+    private static boolean equalsIgnoreCase(byte[] html, int start, int end, byte[] value) {
+        if (end - start != value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            byte b = html[start + i];
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNameChar(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '-' || b == ':';
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    static final class Result {
+        private final String title;
+        private final Set<String> links;
+    }
+}
@@ -0,0 +1,16 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Builder;
+import lombok.Getter;
+
+@Getter
+@Builder
+public class SubscriberMetrics {
+    private String eventType;
+    private int queueCapacity;
+    private OverflowPolicy overflowPolicy;
+    private long deliveredEvents;
+    private long droppedEvents;
+    // from creating an event to handing it to the subscriber
+    private LatencySnapshot dispatchLag;
+}
@@ -0,0 +1,20 @@
+package com.ondrejkoula.crawler;
+
+import lombok.Builder;
+import lombok.Getter;
+
+@Getter
+@Builder
+public class SubscriptionOptions {
+
+    public static final SubscriptionOptions DEFAULT = SubscriptionOptions.builder().build();
+
+    // rounded up to a power of two
+    @Builder.Default
+    private int queueCapacity = 1024;
+    @Builder.Default
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    // used by OverflowPolicy.SAMPLE
+    @Builder.Default
+    private int sampleRate = 10;
+}
@@ -0,0 +1,293 @@
+package com.ondrejkoula.crawler;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.io.ByteArrayOutputStream;
+import java.net.IDN;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Brings equivalent URLs to one form: lower case scheme and host, internationalized hosts in ASCII, no default
+ * port, no fragment, no dot segments in the path, percent-encoding decoded for unreserved characters and upper case
+ * elsewhere, and the query filtered and ordered by the configured rules. The identity key additionally ignores a
+ * trailing slash and, unless the query is kept, the query itself.
+ */
+@EqualsAndHashCode
+final class UrlCanonicalizer {
+
+    static final UrlCanonicalizer DEFAULT = new UrlCanonicalizer(QueryParameterHandling.IGNORE, CrawlerConfig.TRACKING_QUERY_PARAMETERS);
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final boolean[] PATH_CHARACTERS = asciiTable("-._~!$&'()*+,;=:@/");
+    private static final boolean[] QUERY_CHARACTERS = asciiTable("-._~!$&'()*+,;=:@/?");
+
+    private final QueryParameterHandling queryParameterHandling;
+    private final Set<String> strippedParameters;
+    private final Set<String> strippedParameterPrefixes;
+
+    UrlCanonicalizer(QueryParameterHandling queryParameterHandling, Set<String> strippedQueryParameters) {
+        this.queryParameterHandling = queryParameterHandling == null ? QueryParameterHandling.IGNORE : queryParameterHandling;
+        this.strippedParameters = new HashSet<>();
+        this.strippedParameterPrefixes = new HashSet<>();
+        if (strippedQueryParameters != null) {
+            for (String parameter : strippedQueryParameters) {
+                String name = parameter.toLowerCase(Locale.ROOT);
+                if (name.endsWith("*")) {
+                    strippedParameterPrefixes.add(name.substring(0, name.length() - 1));
+                } else {
+                    strippedParameters.add(name);
+                }
+            }
+        }
+    }
+
+    static UrlCanonicalizer of(CrawlerConfig config) {
+        return new UrlCanonicalizer(config.getQueryParameterHandling(), config.getStrippedQueryParameters());
+    }
+
+    static UrlCanonicalizer of(PageStoreConfig config) {
+        return new UrlCanonicalizer(config.getQueryParameterHandling(), config.getStrippedQueryParameters());
+    }
+
+    Result canonicalize(URL url) {
+        String original = url.toExternalForm();
+        StringBuilder canonical = new StringBuilder(original.length());
+        canonical.append(url.getProtocol().toLowerCase(Locale.ROOT)).append("://");
+        int authorityStart = canonical.length();
+        if (url.getUserInfo() != null) {
+            canonical.append(url.getUserInfo()).append('@');
+        }
+        int hostStart = canonical.length();
+        String host = canonicalHost(url.getHost());
+        canonical.append(host.endsWith(".") ? host.substring(0, host.length() - 1) : host);
+        if (url.getPort() >= 0 && url.getPort() != url.getDefaultPort()) {
+            canonical.append(':').append(url.getPort());
+        }
+        int pathStart = canonical.length();
+        appendPath(canonical, url.getPath());
+        int pathEnd = canonical.length();
+        appendQuery(canonical, url.getQuery());
+
+        String canonicalUrl = canonical.toString();
+        boolean keyIncludesQuery = !QueryParameterHandling.IGNORE.equals(queryParameterHandling);
+        boolean trailingSlash = pathEnd - pathStart > 1 && canonical.charAt(pathEnd - 1) == '/';
+        String key;
+        if (authorityStart == hostStart && !trailingSlash && (keyIncludesQuery || pathEnd == canonical.length())) {
+            key = canonicalUrl;
+        } else {
+            StringBuilder keyBuilder = new StringBuilder(canonical.length())
+                    .append(canonical, 0, authorityStart)
+                    .append(canonical, hostStart, trailingSlash ? pathEnd - 1 : pathEnd);
+            if (keyIncludesQuery) {
+                keyBuilder.append(canonical, pathEnd, canonical.length());
+            }
+            key = keyBuilder.toString();
+        }
+        return new Result(canonicalUrl.equals(original) ? url : toUrl(canonicalUrl), key);
+    }
+
+    private static URL toUrl(String canonicalUrl) {
+        try {
+            return new URL(canonicalUrl);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Cannot canonicalize URL: " + canonicalUrl, e);
+        }
+    }
+
+    // internationalized and percent-encoded hosts in their ASCII form, a host that is no valid IDN is only lowercased
+    private static String canonicalHost(String host) {
+        String lowerCase = host.toLowerCase(Locale.ROOT);
+        boolean ascii = true;
+        for (int i = 0; i < host.length() && ascii; i++) {
+            ascii = host.charAt(i) < 0x80 && host.charAt(i) != '%';
+        }
+        if (ascii) {
+            return lowerCase;
+        }
+        try {
+            return IDN.toASCII(percentDecode(host)).toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return lowerCase;
+        }
+    }
+
+    private static String percentDecode(String value) {
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream(value.length());
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '%' && i + 2 < length && isHex(value.charAt(i + 1)) && isHex(value.charAt(i + 2))) {
+                decoded.write(Character.digit(value.charAt(i + 1), 16) << 4 | Character.digit(value.charAt(i + 2), 16));
+                i += 2;
+            } else {
+                int codePoint = value.codePointAt(i);
+                i += Character.charCount(codePoint) - 1;
+                decoded.writeBytes(new String(Character.toChars(codePoint)).getBytes(UTF_8));
+            }
+        }
+        return new String(decoded.toByteArray(), UTF_8);
+    }
+
+    private static void appendPath(StringBuilder canonical, String path) {
+        if (path == null || path.isEmpty()) {
+            canonical.append('/');
+            return;
+        }
+        int start = canonical.length();
+        if (path.charAt(0) != '/') {
+            canonical.append('/');
+        }
+        appendEncoded(canonical, path, PATH_CHARACTERS);
+        if (canonical.indexOf("/.", start) >= 0) {
+            String normalized = removeDotSegments(canonical.substring(start));
+            canonical.setLength(start);
+            canonical.append(normalized);
+        }
+    }
+
+    // RFC 3986, section 5.2.4
+    private static String removeDotSegments(String path) {
+        String[] segments = path.split("/", -1);
+        Deque<String> output = new ArrayDeque<>(segments.length);
+        boolean trailingSlash = false;
+        for (int i = 1; i < segments.length; i++) {
+            String segment = segments[i];
+            boolean last = i == segments.length - 1;
+            if (".".equals(segment)) {
+                trailingSlash = last;
+            } else if ("..".equals(segment)) {
+                output.pollLast();
+                trailingSlash = last;
+            } else {
+                output.addLast(segment);
+                trailingSlash = false;
+            }
+        }
+        StringBuilder normalized = new StringBuilder(path.length());
+        for (String segment : output) {
+            normalized.append('/').append(segment);
+        }
+        if (normalized.length() == 0 || trailingSlash) {
+            normalized.append('/');
+        }
+        return normalized.toString();
+    }
+
+    private void appendQuery(StringBuilder canonical, String query) {
+        if (query == null || query.isEmpty()) {
+            return;
+        }
+        List<String> parameters = new ArrayList<>();
+        int start = 0;
+        while (start <= query.length()) {
+            int end = query.indexOf('&', start);
+            if (end < 0) {
+                end = query.length();
+            }
+            if (end > start && !isStripped(query, start, end)) {
+                StringBuilder parameter = new StringBuilder(end - start);
+                appendEncoded(parameter, query.substring(start, end), QUERY_CHARACTERS);
+                parameters.add(parameter.toString());
+            }
+            start = end + 1;
+        }
+        if (parameters.isEmpty()) {
+            return;
+        }
+        if (QueryParameterHandling.SORT.equals(queryParameterHandling)) {
+            Collections.sort(parameters);
+        }
+        canonical.append('?');
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                canonical.append('&');
+            }
+            canonical.append(parameters.get(i));
+        }
+    }
+
+    private boolean isStripped(String query, int start, int end) {
+        if (strippedParameters.isEmpty() && strippedParameterPrefixes.isEmpty()) {
+            return false;
+        }
+        int nameEnd = query.indexOf('=', start);
+        String name = query.substring(start, nameEnd < 0 || nameEnd > end ? end : nameEnd).toLowerCase(Locale.ROOT);
+        if (strippedParameters.contains(name)) {
+            return true;
+        }
+        for (String prefix : strippedParameterPrefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void appendEncoded(StringBuilder canonical, String value, boolean[] allowedCharacters) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '%' && i + 2 < length && isHex(value.charAt(i + 1)) && isHex(value.charAt(i + 2))) {
+                int decoded = Character.digit(value.charAt(i + 1), 16) << 4 | Character.digit(value.charAt(i + 2), 16);
+                if (isUnreserved(decoded)) {
+                    canonical.append((char) decoded);
+                } else {
+                    appendEscaped(canonical, decoded);
+                }
+                i += 2;
+            } else if (c < 0x80 && allowedCharacters[c]) {
+                canonical.append(c);
+            } else {
+                int codePoint = value.codePointAt(i);
+                i += Character.charCount(codePoint) - 1;
+                for (byte b : new String(Character.toChars(codePoint)).getBytes(UTF_8)) {
+                    appendEscaped(canonical, b & 0xff);
+                }
+            }
+        }
+    }
+
+    private static boolean[] asciiTable(String characters) {
+        boolean[] table = new boolean[0x80];
+        for (int c = 0; c < table.length; c++) {
+            table[c] = isAlphanumeric(c) || characters.indexOf(c) >= 0;
+        }
+        return table;
+    }
+
+    private static void appendEscaped(StringBuilder canonical, int value) {
+        canonical.append('%').append(HEX_DIGITS[value >> 4]).append(HEX_DIGITS[value & 0xf]);
+    }
+
+    private static boolean isUnreserved(int c) {
+        return isAlphanumeric(c) || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    private static boolean isAlphanumeric(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    static final class Result {
+        private final URL url;
+        private final String key;
+    }
+}
@@ -0,0 +1,24 @@
+package com.ondrejkoula.crawler;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+interface UrlFingerprintSet {
+
+    boolean add(long fingerprint);
+
+    boolean contains(long fingerprint);
+
+    long size();
+
+    long memoryBytes();
+
+    void clear();
+
+    UrlFingerprintSet copy();
+
+    void writeTo(DataOutput out) throws IOException;
+
+    void readFrom(DataInput in) throws IOException;
+}
@@ -0,0 +1,88 @@
+package com.ondrejkoula.crawler;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterUrlFingerprintSetTest {
+
+    @Test
+    void staysWithinTheConfiguredFalsePositiveRate() {
+        BloomFilterUrlFingerprintSet set = new BloomFilterUrlFingerprintSet(100_000, 0.01);
+        Random random = new Random(11);
+        long[] added = new long[100_000];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = random.nextLong();
+            set.add(added[i]);
+        }
+        for (long fingerprint : added) {
+            assertTrue(set.contains(fingerprint));
+        }
+
+        int falsePositives = 0;
+        int probes = 200_000;
+        for (int i = 0; i < probes; i++) {
+            if (set.contains(random.nextLong())) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < probes * 0.015, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void sizesBitsForTheExpectedUrls() {
+        // 9.59 bits per URL for 1 %, rounded up to whole words
+        assertEquals(14_977L * Long.BYTES, new BloomFilterUrlFingerprintSet(100_000, 0.01).memoryBytes());
+    }
+
+    @Test
+    void reportsWhetherAFingerprintWasNew() {
+        BloomFilterUrlFingerprintSet set = new BloomFilterUrlFingerprintSet(1000, 0.01);
+        assertFalse(set.contains(42));
+
+        assertTrue(set.add(42));
+        assertFalse(set.add(42));
+        assertTrue(set.contains(42));
+        assertEquals(1, set.size());
+
+        set.clear();
+        assertFalse(set.contains(42));
+        assertEquals(0, set.size());
+    }
+
+    @Test
+    void readsBackOnlyAFilterOfTheSameShape() throws Exception {
+        BloomFilterUrlFingerprintSet set = new BloomFilterUrlFingerprintSet(1000, 0.01);
+        for (long i = 1; i <= 500; i++) {
+            set.add(i * 7919);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        set.writeTo(new DataOutputStream(bytes));
+
+        BloomFilterUrlFingerprintSet restored = new BloomFilterUrlFingerprintSet(1000, 0.01);
+        restored.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(500, restored.size());
+        for (long i = 1; i <= 500; i++) {
+            assertTrue(restored.contains(i * 7919));
+        }
+
+        BloomFilterUrlFingerprintSet other = new BloomFilterUrlFingerprintSet(2000, 0.01);
+        assertThrows(IllegalStateException.class,
+                () -> other.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test
+    void rejectsInvalidSizing() {
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilterUrlFingerprintSet(0, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilterUrlFingerprintSet(1000, 1));
+    }
+}
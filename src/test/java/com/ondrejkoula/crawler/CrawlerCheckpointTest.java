@@ -0,0 +1,190 @@
+package com.ondrejkoula.crawler;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrawlerCheckpointTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restoresTheSnapshotWithTheJournalReplayed() throws Exception {
+        writeCheckpoint();
+
+        CrawlerDataContainer restored = newContainer();
+        new CrawlerCheckpoint(directory, UrlCanonicalizer.DEFAULT).restore(restored);
+
+        assertTrue(restored.isDone(url("/a")));
+        assertTrue(restored.crawledUrls().contains(url("/c").getFingerprint()));
+        assertTrue(restored.failedUrls().contains(url("/b").getFingerprint()));
+        assertEquals(Collections.singletonList("/d@1"), drain(restored));
+        assertEquals(4, restored.acceptedUrls());
+    }
+
+    @Test
+    void ignoresAJournalRecordCutOffByACrash() throws Exception {
+        writeCheckpoint();
+        // the last record marks /c as crawled
+        try (FileChannel journal = FileChannel.open(directory.resolve("journal.1"), StandardOpenOption.WRITE)) {
+            journal.truncate(journal.size() - 3);
+        }
+
+        CrawlerDataContainer restored = newContainer();
+        new CrawlerCheckpoint(directory, UrlCanonicalizer.DEFAULT).restore(restored);
+
+        assertFalse(restored.isDone(url("/c")));
+        assertTrue(restored.failedUrls().contains(url("/b").getFingerprint()));
+        assertEquals(Arrays.asList("/c@0", "/d@1"), drain(restored));
+    }
+
+    @Test
+    void restoresUrlsInProgressAsQueued() throws Exception {
+        CrawlerDataContainer container = newContainer();
+        container.addToQueueIfNotProcessed(url("/a"), 0);
+        container.addToQueueIfNotProcessed(url("/b"), 2);
+        QueuedURL inProgress = container.nextUrl();
+        CrawlerCheckpoint checkpoint = new CrawlerCheckpoint(directory, UrlCanonicalizer.DEFAULT);
+        assertFalse(checkpoint.exists());
+        write(checkpoint.freeze(container, Collections.singletonList(inProgress)));
+        checkpoint.close();
+        assertTrue(checkpoint.exists());
+
+        CrawlerDataContainer restored = newContainer();
+        new CrawlerCheckpoint(directory, UrlCanonicalizer.DEFAULT).restore(restored);
+
+        assertEquals(Arrays.asList("/a@0", "/b@2"), drain(restored));
+    }
+
+    @Test
+    void replaysEveryJournalAfterASnapshotThatWasNotWritten() throws Exception {
+        CrawlerDataContainer container = newContainer();
+        container.addToQueueIfNotProcessed(url("/a"), 0);
+        CrawlerCheckpoint checkpoint = new CrawlerCheckpoint(directory, UrlCanonicalizer.DEFAULT);
+        write(checkpoint.freeze(container, Collections.emptyList()));
+        container.setCheckpoint(checkpoint);
+        container.addToQueueIfNotProcessed(url("/b"), 1);
+        // frozen, but the crawler stops before the snapshot is written
+        checkpoint.freeze(container, Collections.emptyList()).release();
+        container.addToQueueIfNotProcessed(url("/c"), 2);
+        container.markAsCrawled(container.nextUrl().getUrl());
+        checkpoint.close();
+
+        CrawlerCheckpoint resumed = new CrawlerCheckpoint(directory, UrlCanonicalizer.DEFAULT);
+        CrawlerDataContainer restored = newContainer();
+        resumed.restore(restored);
+
+        assertTrue(restored.isDone(url("/a")));
+        assertEquals(Arrays.asList("/b@1", "/c@2"), drain(restored));
+
+        // the next snapshot supersedes both journals
+        write(resumed.freeze(restored, Collections.emptyList()));
+        resumed.close();
+        assertFalse(Files.exists(directory.resolve("journal.1")));
+        assertFalse(Files.exists(directory.resolve("journal.2")));
+        assertTrue(Files.exists(directory.resolve("journal.3")));
+    }
+
+    @Test
+    void writesASpillingFrontierWhileItIsConsumed() throws Exception {
+        Path frontierDirectory = directory.resolve("frontier");
+        CrawlerDataContainer container = new CrawlerDataContainer(
+                new SpillingCrawlerFrontier(frontierDirectory, 4, UrlCanonicalizer.DEFAULT), new OpenAddressingUrlFingerprintSet(),
+                null, null, CrawlerDataContainer.UNLIMITED, CrawlerDataContainer.UNLIMITED);
+        for (int i = 0; i < 20; i++) {
+            container.addToQueueIfNotProcessed(url("/" + i), 0);
+        }
+        CrawlerCheckpoint checkpoint = new CrawlerCheckpoint(directory.resolve("checkpoint"), UrlCanonicalizer.DEFAULT);
+        CrawlerCheckpoint.Snapshot snapshot = checkpoint.freeze(container, Collections.emptyList());
+        for (int i = 0; i < 10; i++) {
+            container.markAsCrawled(container.nextUrl().getUrl());
+        }
+        long segmentsWhileFrozen = segments(frontierDirectory);
+
+        write(snapshot);
+        checkpoint.close();
+
+        assertTrue(segments(frontierDirectory) < segmentsWhileFrozen);
+        CrawlerDataContainer restored = newContainer();
+        new CrawlerCheckpoint(directory.resolve("checkpoint"), UrlCanonicalizer.DEFAULT).restore(restored);
+        assertEquals(20, drain(restored).size());
+    }
+
+    @Test
+    void rejectsAnUnknownFormat() throws Exception {
+        Files.write(directory.resolve("snapshot"), new byte[]{0, 0, 0, 1, 0, 0, 0, 1});
+
+        CrawlerCheckpoint checkpoint = new CrawlerCheckpoint(directory, UrlCanonicalizer.DEFAULT);
+
+        assertThrows(IllegalStateException.class, () -> checkpoint.restore(newContainer()));
+    }
+
+    // /a crawled before the snapshot, /b in progress at it; then /b fails, /d is queued and /c crawled
+    private void writeCheckpoint() throws IOException {
+        CrawlerDataContainer container = newContainer();
+        container.addToQueueIfNotProcessed(url("/a"), 0);
+        container.addToQueueIfNotProcessed(url("/b"), 0);
+        container.addToQueueIfNotProcessed(url("/c"), 0);
+        container.markAsCrawled(container.nextUrl().getUrl());
+        QueuedURL inProgress = container.nextUrl();
+        CrawlerCheckpoint checkpoint = new CrawlerCheckpoint(directory, UrlCanonicalizer.DEFAULT);
+        CrawlerCheckpoint.Snapshot snapshot = checkpoint.freeze(container, Collections.singletonList(inProgress));
+        container.setCheckpoint(checkpoint);
+
+        // changes after the freeze go to the journal, whether or not the snapshot is written yet
+        container.markAsFailed(inProgress.getUrl());
+        container.addToQueueIfNotProcessed(url("/d"), 1);
+        write(snapshot);
+        container.markAsCrawled(container.nextUrl().getUrl());
+        checkpoint.close();
+    }
+
+    private static void write(CrawlerCheckpoint.Snapshot snapshot) throws IOException {
+        try {
+            snapshot.write();
+        } finally {
+            snapshot.release();
+        }
+    }
+
+    private static long segments(Path frontierDirectory) throws IOException {
+        try (Stream<Path> files = Files.list(frontierDirectory)) {
+            return files.count();
+        }
+    }
+
+    private static CrawlerDataContainer newContainer() {
+        return new CrawlerDataContainer(new InMemoryCrawlerFrontier(), new OpenAddressingUrlFingerprintSet(),
+                null, null, CrawlerDataContainer.UNLIMITED, CrawlerDataContainer.UNLIMITED);
+    }
+
+    private static List<String> drain(CrawlerDataContainer container) {
+        List<String> queued = new ArrayList<>();
+        QueuedURL queuedURL;
+        while ((queuedURL = container.nextUrl()) != null) {
+            queued.add(queuedURL.getUrl().getUrl().getPath() + "@" + queuedURL.getDepth());
+        }
+        return queued;
+    }
+
+    private static CrawlerURL url(String path) throws IOException {
+        return new CrawlerURL(new URL("http://example.com" + path));
+    }
+}
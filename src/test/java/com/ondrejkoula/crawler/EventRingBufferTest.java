@@ -0,0 +1,121 @@
+package com.ondrejkoula.crawler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventRingBufferTest {
+
+    @Test
+    void roundsCapacityUpToAPowerOfTwo() {
+        assertEquals(2, new EventRingBuffer<>(1).capacity());
+        assertEquals(8, new EventRingBuffer<>(5).capacity());
+        assertEquals(1024, new EventRingBuffer<>(1024).capacity());
+    }
+
+    @Test
+    void rejectsOffersWhenFull() {
+        EventRingBuffer<Integer> buffer = new EventRingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+
+        assertFalse(buffer.offer(4));
+        assertEquals(0, buffer.poll());
+        assertTrue(buffer.offer(4));
+    }
+
+    @Test
+    void keepsOrderAcrossLaps() {
+        EventRingBuffer<Integer> buffer = new EventRingBuffer<>(4);
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.poll());
+
+        int next = 0;
+        for (int lap = 0; lap < 10; lap++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(buffer.offer(lap * 3 + i));
+            }
+            assertFalse(buffer.isEmpty());
+            for (int i = 0; i < 3; i++) {
+                assertEquals(next++, buffer.poll());
+            }
+            assertTrue(buffer.isEmpty());
+            assertNull(buffer.poll());
+        }
+    }
+
+    @Test
+    void deliversEveryItemOnceToConcurrentConsumers() throws Exception {
+        int producers = 4;
+        int consumers = 4;
+        int itemsPerProducer = 20_000;
+        int items = producers * itemsPerProducer;
+        EventRingBuffer<Integer> buffer = new EventRingBuffer<>(64);
+        AtomicIntegerArray deliveries = new AtomicIntegerArray(items);
+        AtomicInteger consumed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+        List<Future<?>> tasks = new ArrayList<>();
+        try {
+            for (int p = 0; p < producers; p++) {
+                int first = p * itemsPerProducer;
+                tasks.add(executor.submit(() -> {
+                    start.await();
+                    for (int item = first; item < first + itemsPerProducer; item++) {
+                        while (!buffer.offer(item)) {
+                            Thread.yield();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (int c = 0; c < consumers; c++) {
+                tasks.add(executor.submit(() -> {
+                    start.await();
+                    // items of one producer arrive in the order it offered them
+                    int[] lastOfProducer = new int[producers];
+                    Arrays.fill(lastOfProducer, -1);
+                    while (consumed.get() < items) {
+                        Integer item = buffer.poll();
+                        if (item == null) {
+                            Thread.yield();
+                            continue;
+                        }
+                        int producer = item / itemsPerProducer;
+                        assertTrue(item > lastOfProducer[producer]);
+                        lastOfProducer[producer] = item;
+                        deliveries.incrementAndGet(item);
+                        consumed.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> task : tasks) {
+                task.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int item = 0; item < items; item++) {
+            assertEquals(1, deliveries.get(item), "deliveries of item " + item);
+        }
+        assertTrue(buffer.isEmpty());
+    }
+}
@@ -0,0 +1,119 @@
+package com.ondrejkoula.crawler;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HttpMetadataCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsValidatorsAndPagesBackBeforeAndAfterReopening() throws Exception {
+        HttpMetadataCache cache = open();
+        cache.put(url("/a"), entry("\"a1\"", 1, "/b", "/c"));
+        cache.put(url("/b"), entry(null, 2));
+
+        HttpMetadataCache.Validators validators = cache.validators(url("/a"));
+        assertEquals("\"a1\"", validators.getEtag());
+        assertEquals("Mon, 01 Jan 2024 00:00:00 GMT", validators.getLastModified());
+        assertEquals(1, validators.getContentHash());
+        assertEquals(Arrays.asList("http://example.com/b", "http://example.com/c"), cache.get(url("/a")).getLinks());
+        assertNull(cache.validators(url("/missing")));
+        cache.close();
+
+        HttpMetadataCache reopened = open();
+        assertEquals("title 1", reopened.get(url("/a")).getTitle());
+        assertNull(reopened.validators(url("/b")).getEtag());
+        assertEquals(Collections.emptyList(), reopened.get(url("/b")).getLinks());
+        reopened.close();
+    }
+
+    @Test
+    void servesTheLastRecordOfAUrl() throws Exception {
+        HttpMetadataCache cache = open();
+        cache.put(url("/a"), entry("\"a1\"", 1));
+        cache.put(url("/a"), entry("\"a2\"", 2, "/d"));
+
+        assertEquals("\"a2\"", cache.validators(url("/a")).getEtag());
+        assertEquals(Collections.singletonList("http://example.com/d"), cache.get(url("/a")).getLinks());
+        cache.close();
+    }
+
+    @Test
+    void truncatesARecordCutOffByACrash() throws Exception {
+        HttpMetadataCache cache = open();
+        cache.put(url("/a"), entry("\"a1\"", 1));
+        cache.put(url("/b"), entry("\"b1\"", 2, "/c"));
+        cache.close();
+        Path file = directory.resolve("example.com.cache");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+
+        HttpMetadataCache reopened = open();
+        assertNull(reopened.validators(url("/b")));
+        reopened.put(url("/c"), entry("\"c1\"", 3));
+        reopened.close();
+
+        HttpMetadataCache again = open();
+        assertEquals("\"a1\"", again.validators(url("/a")).getEtag());
+        assertEquals("\"c1\"", again.validators(url("/c")).getEtag());
+        again.close();
+    }
+
+    @Test
+    void compactsALogOfMostlyOverwrittenRecords() throws Exception {
+        HttpMetadataCache cache = open();
+        for (int round = 0; round < 5; round++) {
+            for (int page = 0; page < 100; page++) {
+                cache.put(url("/" + page), entry("\"" + round + "\"", round, "/" + page + "/next"));
+            }
+        }
+        cache.close();
+        Path file = directory.resolve("example.com.cache");
+        long sizeBefore = Files.size(file);
+
+        HttpMetadataCache reopened = open();
+        assertTrue(Files.size(file) < sizeBefore / 4, Files.size(file) + " of " + sizeBefore);
+        for (int page = 0; page < 100; page++) {
+            assertEquals("\"4\"", reopened.validators(url("/" + page)).getEtag());
+            assertEquals(Collections.singletonList("http://example.com/" + page + "/next"), reopened.get(url("/" + page)).getLinks());
+        }
+        reopened.close();
+    }
+
+    private HttpMetadataCache open() {
+        return new HttpMetadataCache(directory.resolve("example.com.cache"));
+    }
+
+    private static HttpMetadataCache.Entry entry(String etag, long contentHash, String... linkPaths) {
+        String[] links = new String[linkPaths.length];
+        for (int i = 0; i < linkPaths.length; i++) {
+            links[i] = "http://example.com" + linkPaths[i];
+        }
+        return HttpMetadataCache.Entry.builder()
+                .etag(etag)
+                .lastModified("Mon, 01 Jan 2024 00:00:00 GMT")
+                .contentHash(contentHash)
+                .title("title " + contentHash)
+                .links(Arrays.asList(links))
+                .build();
+    }
+
+    private static CrawlerURL url(String path) throws Exception {
+        return new CrawlerURL(new URL("http://example.com" + path));
+    }
+}
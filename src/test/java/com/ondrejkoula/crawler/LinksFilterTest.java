@@ -0,0 +1,97 @@
+package com.ondrejkoula.crawler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LinksFilterTest {
+
+    private final LinksFilter binaries = new LinksFilter(SupportedType.binaries(), null);
+
+    @Test
+    void excludesEveryExtensionAtTheEndOfThePath() {
+        LinksFilter filter = new LinksFilter(EnumSet.allOf(SupportedType.class), null);
+        for (SupportedType type : SupportedType.values()) {
+            for (String extension : type.getExtensions()) {
+                assertFalse(filter.isAccepted("http://example.com/files/report" + extension), extension);
+            }
+        }
+        assertTrue(filter.isAccepted("http://example.com/files/report"));
+    }
+
+    @Test
+    void findsExtensionsBeforeQueryFragmentAndMatrixParameters() {
+        assertFalse(binaries.isAccepted("http://example.com/report.pdf?download=1"));
+        assertFalse(binaries.isAccepted("http://example.com/report.pdf#page=2"));
+        assertFalse(binaries.isAccepted("http://example.com/report.pdf;jsessionid=42"));
+        assertTrue(binaries.isAccepted("http://example.com/view?file=report.pdf"));
+        assertTrue(binaries.isAccepted("http://example.com/page#report.pdf"));
+    }
+
+    @Test
+    void matchesExtensionsCaseInsensitively() {
+        assertFalse(binaries.isAccepted("http://example.com/REPORT.PDF"));
+        assertFalse(binaries.isAccepted("http://example.com/Report.Pdf?x=1"));
+    }
+
+    @Test
+    void matchesOnlyWholeExtensionsOfThePath() {
+        assertTrue(binaries.isAccepted("http://example.com/pdf"));
+        assertTrue(binaries.isAccepted("http://example.com/report.pdf/view"));
+        assertTrue(binaries.isAccepted("http://example.com/report.pdfx"));
+        // the host is not part of the path
+        assertTrue(new LinksFilter(EnumSet.of(SupportedType.JS), null).isAccepted("http://node.js"));
+    }
+
+    @Test
+    void matchesPathPrefixesCaseSensitively() {
+        LinksFilter filter = new LinksFilter(null, Collections.singletonList(LinkRule.excludePathPrefix("/Admin")));
+
+        assertFalse(filter.isAccepted("http://example.com/Admin/users"));
+        assertTrue(filter.isAccepted("http://example.com/admin/users"));
+        assertTrue(filter.isAccepted("http://example.com/?next=/Admin"));
+    }
+
+    @Test
+    void letsExcludeRulesWinOverIncludeRules() {
+        LinksFilter filter = new LinksFilter(SupportedType.binaries(), Arrays.asList(
+                LinkRule.includePathPrefix("/docs"),
+                LinkRule.excludePathPrefix("/docs/private"),
+                LinkRule.includeRegex("[?&]lang=en"),
+                LinkRule.excludeRegex("draft")));
+
+        assertTrue(filter.isAccepted("http://example.com/docs/guide"));
+        assertTrue(filter.isAccepted("http://example.com/blog?lang=en"));
+        assertFalse(filter.isAccepted("http://example.com/blog?lang=de"));
+        assertFalse(filter.isAccepted("http://example.com/docs/private/keys"));
+        assertFalse(filter.isAccepted("http://example.com/docs/draft-2"));
+        assertFalse(filter.isAccepted("http://example.com/blog/draft?lang=en"));
+        assertFalse(filter.isAccepted("http://example.com/docs/manual.pdf"));
+    }
+
+    @Test
+    void acceptsEverythingNotExcludedWithoutIncludeRules() {
+        LinksFilter filter = new LinksFilter(null, Arrays.asList(
+                LinkRule.excludePathPrefix("/tmp"), LinkRule.excludeRegex("\\.php$")));
+
+        assertTrue(filter.isAccepted("http://example.com/anything"));
+        assertFalse(filter.isAccepted("http://example.com/tmp/x"));
+        assertFalse(filter.isAccepted("http://example.com/index.php"));
+        assertFalse(filter.isAccepted(""));
+        assertFalse(filter.isAccepted(null));
+    }
+
+    @Test
+    void keepsTheOrderOfDistinctAcceptedLinks() {
+        assertEquals(Arrays.asList("http://example.com/b", "http://example.com/a"),
+                Arrays.asList(binaries.filterLinks(Arrays.asList(
+                        "http://example.com/b", "http://example.com/x.pdf", "http://example.com/a", "http://example.com/b"))
+                        .toArray()));
+    }
+}
@@ -0,0 +1,160 @@
+package com.ondrejkoula.crawler;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenAddressingUrlFingerprintSetTest {
+
+    // with 16 slots and no bits above 32, a fingerprint's home slot is its lowest four bits
+    @Test
+    void removesFromAClusterWrappingAroundTheEndOfTheTable() {
+        OpenAddressingUrlFingerprintSet set = new OpenAddressingUrlFingerprintSet(8);
+        // slots 14, 15, 0 hold home 14, slots 1, 2 home 15, slot 3 home 1
+        long[] cluster = {14, 30, 46, 15, 31, 1};
+        for (long fingerprint : cluster) {
+            assertTrue(set.add(fingerprint));
+        }
+        assertEquals(16 * Long.BYTES, set.memoryBytes());
+
+        assertTrue(set.remove(14));
+        assertFalse(set.contains(14));
+        assertTrue(set.contains(30));
+        assertTrue(set.contains(46));
+        assertTrue(set.contains(15));
+        assertTrue(set.contains(31));
+        assertTrue(set.contains(1));
+
+        assertTrue(set.remove(15));
+        assertFalse(set.remove(15));
+        assertFalse(set.remove(62));
+        assertTrue(set.contains(31));
+        assertTrue(set.contains(1));
+        assertEquals(4, set.size());
+
+        assertTrue(set.remove(30));
+        assertTrue(set.remove(46));
+        assertTrue(set.remove(31));
+        assertTrue(set.contains(1));
+        assertTrue(set.add(17));
+        assertTrue(set.remove(1));
+        assertTrue(set.contains(17));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    void staysInSyncWithAHashSetUnderRandomAddsAndRemoves() {
+        Random random = new Random(42);
+        for (int range : new int[]{40, 400, 5000}) {
+            OpenAddressingUrlFingerprintSet set = new OpenAddressingUrlFingerprintSet();
+            Set<Long> expected = new HashSet<>();
+            for (int i = 0; i < 50_000; i++) {
+                // small values crowd few home slots, so clusters collide and wrap around
+                long fingerprint = random.nextInt(range);
+                if (random.nextInt(3) == 0) {
+                    assertEquals(expected.remove(fingerprint), set.remove(fingerprint));
+                } else {
+                    assertEquals(expected.add(fingerprint), set.add(fingerprint));
+                }
+                assertEquals(expected.size(), set.size());
+            }
+            for (long fingerprint = 0; fingerprint < range; fingerprint++) {
+                assertEquals(expected.contains(fingerprint), set.contains(fingerprint));
+            }
+        }
+    }
+
+    @Test
+    void growsWhenHalfFull() {
+        OpenAddressingUrlFingerprintSet set = new OpenAddressingUrlFingerprintSet(8);
+        for (long i = 0; i < 8; i++) {
+            set.add(i << 4 | 3);
+        }
+        assertEquals(16 * Long.BYTES, set.memoryBytes());
+
+        set.add(8 << 4 | 3);
+        assertEquals(32 * Long.BYTES, set.memoryBytes());
+
+        Random random = new Random(7);
+        Set<Long> expected = new HashSet<>();
+        for (long i = 0; i < 9; i++) {
+            expected.add(i << 4 | 3);
+        }
+        while (expected.size() < 100_000) {
+            long fingerprint = random.nextLong();
+            expected.add(fingerprint);
+            set.add(fingerprint);
+        }
+        assertEquals(expected.size(), set.size());
+        assertEquals(262_144L * Long.BYTES, set.memoryBytes());
+        for (long fingerprint : expected) {
+            assertTrue(set.contains(fingerprint));
+        }
+        assertFalse(set.contains(1));
+    }
+
+    @Test
+    void tracksTheZeroFingerprintSeparately() {
+        OpenAddressingUrlFingerprintSet set = new OpenAddressingUrlFingerprintSet();
+        assertFalse(set.contains(0));
+
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.add(16));
+        assertTrue(set.contains(0));
+        assertEquals(2, set.size());
+
+        assertTrue(set.remove(0));
+        assertFalse(set.contains(0));
+        assertTrue(set.contains(16));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    void copiesIndependently() {
+        OpenAddressingUrlFingerprintSet set = new OpenAddressingUrlFingerprintSet();
+        set.add(0);
+        set.add(42);
+        UrlFingerprintSet copy = set.copy();
+        set.add(43);
+        set.remove(42);
+
+        assertTrue(copy.contains(0));
+        assertTrue(copy.contains(42));
+        assertFalse(copy.contains(43));
+        assertEquals(2, copy.size());
+    }
+
+    @Test
+    void readsBackWhatItWrote() throws Exception {
+        OpenAddressingUrlFingerprintSet set = new OpenAddressingUrlFingerprintSet();
+        Random random = new Random(3);
+        long[] fingerprints = new long[1000];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = random.nextLong();
+            set.add(fingerprints[i]);
+        }
+        set.add(0);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        set.writeTo(new DataOutputStream(bytes));
+
+        OpenAddressingUrlFingerprintSet restored = new OpenAddressingUrlFingerprintSet();
+        restored.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(set.size(), restored.size());
+        assertTrue(restored.contains(0));
+        for (long fingerprint : fingerprints) {
+            assertTrue(restored.contains(fingerprint));
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.ondrejkoula.crawler;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PageStoreTest {
+
+    private static final String HOST = "example.com";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsPagesBackBeforeAndAfterReopening() throws Exception {
+        PageStore store = open(Long.MAX_VALUE);
+        store.append(Arrays.asList(page("/a", "first"), page("/b", "second")));
+
+        assertPage(store.get(url("/a")), "/a", "first");
+        store.close();
+
+        try (PageStore reopened = open(Long.MAX_VALUE)) {
+            StoredPage page = reopened.get(url("/a"));
+            assertPage(page, "/a", "first");
+            assertEquals(200, page.getStatusCode());
+            assertEquals(Collections.singletonList("text/html"), page.getHeaders().get("Content-Type"));
+            assertEquals("title /a", page.getTitle());
+            assertTrue(page.getOutcomeUrls().contains(new URL("http://example.com/next")));
+            assertTrue(page.getOutcomeUrls().contains(new URL("http://other.org/")));
+            assertPage(reopened.get(url("/b")), "/b", "second");
+            assertNull(reopened.get(url("/missing")));
+        }
+    }
+
+    @Test
+    void skipsUnchangedPages() throws Exception {
+        try (PageStore store = open(Long.MAX_VALUE)) {
+            store.append(Collections.singletonList(page("/a", "first")));
+            store.append(Collections.singletonList(event("/a", null, false)));
+
+            assertPage(store.get(url("/a")), "/a", "first");
+        }
+    }
+
+    @Test
+    void rollsSegmentsOverAndServesTheLatestVersion() throws Exception {
+        // every record exceeds the limit, so each one starts a segment of its own
+        try (PageStore store = open(1)) {
+            store.append(Arrays.asList(page("/a", "old"), page("/b", "other")));
+            store.append(Collections.singletonList(page("/a", "new")));
+
+            assertPage(store.get(url("/a")), "/a", "new");
+        }
+
+        assertEquals(3, files(".warc.gz").size());
+        assertEquals(3, files(".idx").size());
+        try (PageStore reopened = open(1)) {
+            assertPage(reopened.get(url("/a")), "/a", "new");
+            assertPage(reopened.get(url("/b")), "/b", "other");
+        }
+    }
+
+    @Test
+    void recoversCommittedPagesAndCutsOffAPartlyWrittenRecord() throws Exception {
+        PageStore crashed = open(Long.MAX_VALUE);
+        crashed.append(Arrays.asList(page("/a", "first"), page("/b", "second")));
+        Path segment = files(".warc.gz").get(0);
+        long committedSize = Files.size(segment);
+        // a record of the next batch written halfway when the process died
+        Files.write(segment, new byte[]{0x1f, (byte) 0x8b, 8, 0, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (PageStore recovered = open(Long.MAX_VALUE)) {
+            assertPage(recovered.get(url("/a")), "/a", "first");
+            assertPage(recovered.get(url("/b")), "/b", "second");
+        }
+
+        assertEquals(committedSize, Files.size(segment));
+        assertTrue(files(".jnl").isEmpty());
+        assertEquals(1, files(".idx").size());
+        assertValidGzip(segment);
+    }
+
+    @Test
+    void ignoresAJournalEntryCutOffByACrash() throws Exception {
+        PageStore crashed = open(Long.MAX_VALUE);
+        crashed.append(Collections.singletonList(page("/a", "first")));
+        Path segment = files(".warc.gz").get(0);
+        long firstBatchSize = Files.size(segment);
+        crashed.append(Collections.singletonList(page("/b", "second")));
+        Path journal = files(".jnl").get(0);
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 7);
+        }
+
+        try (PageStore recovered = open(Long.MAX_VALUE)) {
+            assertPage(recovered.get(url("/a")), "/a", "first");
+            assertNull(recovered.get(url("/b")));
+        }
+
+        assertEquals(firstBatchSize, Files.size(segment));
+        assertValidGzip(segment);
+    }
+
+    @Test
+    void dropsASegmentWithNothingCommitted() throws Exception {
+        PageStore crashed = open(Long.MAX_VALUE);
+        crashed.append(Collections.singletonList(page("/a", "first")));
+        Files.write(files(".jnl").get(0), new byte[0]);
+
+        try (PageStore recovered = open(Long.MAX_VALUE)) {
+            assertNull(recovered.get(url("/a")));
+        }
+
+        assertTrue(files(".warc.gz").isEmpty());
+        assertTrue(files(".jnl").isEmpty());
+    }
+
+    @Test
+    void looksPagesUpByTheConfiguredQueryHandling() throws Exception {
+        try (PageStore store = open(Long.MAX_VALUE, QueryParameterHandling.SORT)) {
+            store.append(Arrays.asList(page("/a?x=1&y=2", "first"), page("/a?x=2", "second")));
+
+            assertPage(store.get(url("/a?y=2&x=1")), "/a?x=1&y=2", "first");
+            assertPage(store.get(url("/a?x=2")), "/a?x=2", "second");
+            assertNull(store.get(url("/a")));
+        }
+    }
+
+    private PageStore open(long maxSegmentBytes) {
+        return open(maxSegmentBytes, QueryParameterHandling.IGNORE);
+    }
+
+    private PageStore open(long maxSegmentBytes, QueryParameterHandling queryParameterHandling) {
+        return new PageStore(PageStoreConfig.builder()
+                .directory(directory)
+                .maxSegmentBytes(maxSegmentBytes)
+                .syncOnCommit(false)
+                .queryParameterHandling(queryParameterHandling)
+                .build());
+    }
+
+    private List<Path> files(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(suffix)).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static PageDataAcquiredCrawlerEvent page(String path, String content) throws IOException {
+        return event(path, "<html><body>" + content + "</body></html>", true);
+    }
+
+    private static PageDataAcquiredCrawlerEvent event(String path, String html, boolean contentChanged) throws IOException {
+        return new PageDataAcquiredCrawlerEvent(
+                UUID.randomUUID(),
+                url(path),
+                "title " + path,
+                200,
+                Map.of("Content-Type", Collections.singletonList("text/html"),
+                        "Content-Encoding", Collections.singletonList("gzip")),
+                html == null ? null : ByteBuffer.wrap(html.getBytes(UTF_8)),
+                UTF_8,
+                null,
+                OutcomeLinks.of(Arrays.asList("http://example.com/next", "http://other.org/"), HOST),
+                contentChanged);
+    }
+
+    private static URL url(String path) throws IOException {
+        return new URL("http://" + HOST + path);
+    }
+
+    private static void assertPage(StoredPage page, String path, String content) throws IOException {
+        assertNotNull(page);
+        assertEquals(url(path), page.getUrl());
+        assertArrayEquals(("<html><body>" + content + "</body></html>").getBytes(UTF_8), page.getBody());
+        assertNull(page.getHeaders().get("Content-Encoding"));
+    }
+
+    // every record is a gzip member of its own, so the segment decompresses as a whole
+    private static void assertValidGzip(Path segment) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(segment))) {
+            assertTrue(new String(in.readAllBytes(), UTF_8).startsWith("WARC/1.0"));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.ondrejkoula.crawler;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecrawlSchedulerTest {
+
+    private static final long INTERVAL = 1000;
+
+    private final RecrawlScheduler scheduler = new RecrawlScheduler(INTERVAL, 100 * INTERVAL, INTERVAL, 0, UrlCanonicalizer.DEFAULT);
+
+    @Test
+    void returnsPagesOnceDueInVisitOrder() throws Exception {
+        scheduler.recordVisit(queued("/a", 1), 1, 0);
+        scheduler.recordVisit(queued("/b", 2), 1, 10);
+
+        assertNull(scheduler.pollDue(INTERVAL - 1));
+        assertEquals(0, scheduler.millisUntilNextDue(INTERVAL));
+        QueuedURL first = scheduler.pollDue(INTERVAL + 10);
+        assertEquals(queued("/a", 1).getUrl(), first.getUrl());
+        assertEquals(1, first.getDepth());
+        assertEquals(queued("/b", 2).getUrl(), scheduler.pollDue(INTERVAL + 10).getUrl());
+        assertNull(scheduler.pollDue(INTERVAL + 10));
+        assertEquals(-1, scheduler.millisUntilNextDue(INTERVAL + 10));
+        assertEquals(2, scheduler.size());
+    }
+
+    @Test
+    void skipsTheVisitOfAPageVisitedAgainEarly() throws Exception {
+        scheduler.recordVisit(queued("/a", 0), 1, 0);
+        assertTrue(scheduler.recordVisit(queued("/a", 0), 2, 500));
+
+        // only the visit scheduled by the second crawl is left
+        assertEquals(500, scheduler.millisUntilNextDue(INTERVAL));
+        assertNull(scheduler.pollDue(INTERVAL));
+        assertEquals(queued("/a", 0).getUrl(), scheduler.pollDue(INTERVAL + 500).getUrl());
+        assertNull(scheduler.pollDue(10 * INTERVAL));
+    }
+
+    @Test
+    void forgetsRemovedPages() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            scheduler.recordVisit(queued("/" + i, 0), i, 0);
+        }
+        for (int i = 0; i < 199; i++) {
+            scheduler.remove(queued("/" + i, 0).getUrl());
+        }
+
+        assertFalse(scheduler.contains(queued("/0", 0).getUrl()));
+        assertEquals(1, scheduler.size());
+        assertEquals(queued("/199", 0).getUrl(), scheduler.pollDue(INTERVAL).getUrl());
+        assertNull(scheduler.pollDue(INTERVAL));
+    }
+
+    private static QueuedURL queued(String path, int depth) throws Exception {
+        return new QueuedURL(new CrawlerURL(new URL("http://example.com" + path)), depth);
+    }
+}
@@ -0,0 +1,131 @@
+package com.ondrejkoula.crawler;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SitemapReaderTest {
+
+    private static final long NO_LIMIT = Long.MAX_VALUE;
+
+    private final List<SitemapReader.Entry> pages = new ArrayList<>();
+    private final List<String> sitemaps = new ArrayList<>();
+
+    @Test
+    void readsPageEntriesIgnoringNestedExtensionLocations() throws Exception {
+        read(fixture("urlset.xml"), NO_LIMIT);
+
+        assertEquals(Arrays.asList("http://example.com/", "http://example.com/gallery", "http://example.com/videos?a=1&b=2"),
+                locations());
+        assertEquals(Collections.emptyList(), sitemaps);
+    }
+
+    @Test
+    void parsesLastModifiedDatesAndTimes() throws Exception {
+        read(fixture("urlset.xml"), NO_LIMIT);
+
+        assertEquals(OffsetDateTime.parse("2024-03-01T00:00:00Z").toInstant().toEpochMilli(), pages.get(0).getLastModifiedMillis());
+        assertEquals(OffsetDateTime.parse("2024-03-01T09:15:30Z").toInstant().toEpochMilli(), pages.get(1).getLastModifiedMillis());
+        assertEquals(-1, pages.get(2).getLastModifiedMillis());
+        assertEquals(-1, SitemapReader.lastModifiedMillis(null));
+        assertEquals(-1, SitemapReader.lastModifiedMillis("2024-13-01"));
+        assertEquals(OffsetDateTime.parse("2024-03-01T10:15:30.500Z").toInstant().toEpochMilli(),
+                SitemapReader.lastModifiedMillis(" 2024-03-01T10:15:30.5Z "));
+    }
+
+    @Test
+    void readsSitemapLocationsOfAnIndex() throws Exception {
+        read(fixture("index.xml"), NO_LIMIT);
+
+        assertEquals(Arrays.asList("http://example.com/sitemap-pages.xml.gz", "http://example.com/sitemap-posts.xml"), sitemaps);
+        assertEquals(Collections.emptyList(), pages);
+    }
+
+    @Test
+    void recognizesGzipByItsMagicBytes() throws Exception {
+        read(gzip(fixture("urlset.xml")), NO_LIMIT);
+
+        assertEquals(3, pages.size());
+    }
+
+    @Test
+    void failsPastTheLimitAfterHandingOverEarlierEntries() throws Exception {
+        byte[] sitemap = urlset(10_000);
+
+        IOException e = assertThrows(IOException.class, () -> read(sitemap, sitemap.length / 2));
+        assertTrue(e.getMessage().contains(String.valueOf(sitemap.length / 2)), e.getMessage());
+        assertTrue(pages.size() > 1000 && pages.size() < 10_000, String.valueOf(pages.size()));
+    }
+
+    @Test
+    void limitsTheDecompressedSize() throws Exception {
+        byte[] sitemap = urlset(10_000);
+        byte[] compressed = gzip(sitemap);
+        assertTrue(compressed.length < sitemap.length / 10);
+
+        assertThrows(IOException.class, () -> read(compressed, sitemap.length / 2));
+
+        pages.clear();
+        read(compressed, sitemap.length);
+        assertEquals(10_000, pages.size());
+    }
+
+    @Test
+    void rejectsMalformedXml() {
+        assertThrows(IOException.class, () -> read("<urlset><url><loc>http://example.com/</url>".getBytes(UTF_8), NO_LIMIT));
+    }
+
+    private void read(byte[] sitemap, long maxBytes) throws IOException {
+        SitemapReader.read(new ByteArrayInputStream(sitemap), maxBytes, pages::add, sitemaps::add);
+    }
+
+    private List<String> locations() {
+        List<String> locations = new ArrayList<>();
+        for (SitemapReader.Entry page : pages) {
+            locations.add(page.getLocation());
+        }
+        return locations;
+    }
+
+    private static byte[] urlset(int urls) {
+        StringBuilder sitemap = new StringBuilder("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">");
+        for (int i = 0; i < urls; i++) {
+            sitemap.append("<url><loc>http://example.com/page/").append(i).append("</loc></url>\n");
+        }
+        return sitemap.append("</urlset>").toString().getBytes(UTF_8);
+    }
+
+    private static byte[] fixture(String name) throws IOException {
+        try (InputStream in = SitemapReaderTest.class.getResourceAsStream("/sitemaps/" + name)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(content);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,113 @@
+package com.ondrejkoula.crawler;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_16LE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class StreamingLinkExtractorTest {
+
+    private static final String BASE_URI = "http://example.com/dir/page.html";
+
+    @Test
+    void resolvesRelativeLinksAgainstTheBaseHref() throws Exception {
+        StreamingLinkExtractor.Result result = assertSameAsJsoup(("<html><head><title> A   title </title>"
+                + "<base href=\"/docs/\"><base href=\"/ignored/\"></head><body>"
+                + "<a href=\"a.html\">a</a><A HREF='../b'>b</A><a href=//other.org/c>c</a>"
+                + "<a href=\"?q=1&amp;r=2\">q</a><a href=\"#top\">top</a><a href=\"  /spaced  \">s</a>"
+                + "<a name=\"anchor\">no href</a><a href=\"a.html\">again</a></body></html>").getBytes(UTF_8), null);
+
+        assertEquals("A title", result.getTitle());
+        assertEquals(new LinkedHashSet<>(Arrays.asList("http://example.com/docs/a.html", "http://example.com/b",
+                "http://other.org/c", "http://example.com/docs/?q=1&r=2", "http://example.com/docs/#top",
+                "http://example.com/spaced")), result.getLinks());
+    }
+
+    @Test
+    void skipsCommentsScriptsAndStyles() throws Exception {
+        StreamingLinkExtractor.Result result = assertSameAsJsoup(("<html><head><!-- <title>commented</title> -->"
+                + "<title>real</title><style>a[href=\"/styled\"] {}</style></head><body>"
+                + "<!-- <a href=\"/commented\">x</a> -->"
+                + "<script>document.write('<a href=\"/scripted\">x</a>');</script>"
+                + "<textarea><a href=\"/typed\">x</a></textarea>"
+                + "<a href=\"/real\">real</a></body></html>").getBytes(UTF_8), null);
+
+        assertEquals(new LinkedHashSet<>(Arrays.asList("http://example.com/real")), result.getLinks());
+    }
+
+    @Test
+    void decodesByTheMetaCharset() throws Exception {
+        StreamingLinkExtractor.Result result = assertSameAsJsoup(("<html><head><meta charset=\"ISO-8859-1\">"
+                + "<title>Caf\u00e9</title></head><body><a href=\"/caf\u00e9\">x</a></body></html>").getBytes(ISO_8859_1), null);
+
+        assertEquals("Caf\u00e9", result.getTitle());
+        assertSameAsJsoup(("<html><head><meta http-equiv=\"Content-Type\" content=\"text/html; charset=windows-1252\">"
+                + "<title>\u20ac</title></head><body><a href=\"/\u00e9t\u00e9\">x</a></body></html>").getBytes(Charset.forName("windows-1252")), null);
+    }
+
+    @Test
+    void prefersTheByteOrderMarkAndTheDeclaredCharsetOverTheMeta() throws Exception {
+        byte[] html = ("<html><head><meta charset=\"ISO-8859-1\"><title>Caf\u00e9</title></head>"
+                + "<body><a href=\"/caf\u00e9\">x</a></body></html>").getBytes(UTF_8);
+
+        assertEquals("Caf\u00e9", assertSameAsJsoup(html, "UTF-8").getTitle());
+        assertEquals("Caf\u00e9", assertSameAsJsoup(withUtf8ByteOrderMark(html), "ISO-8859-1").getTitle());
+    }
+
+    @Test
+    void defaultsToUtf8LikeJsoup() throws Exception {
+        assertSameAsJsoup(("<html><head><meta charset=\"no-such-charset\"><title>\u00fcber</title></head>"
+                + "<body><a href=\"/\u00fcber\">x</a></body></html>").getBytes(UTF_8), null);
+        assertSameAsJsoup("<title>\u00fcber</title><a href=\"/\u00fcber\">x</a>".getBytes(UTF_8), null);
+    }
+
+    @Test
+    void leavesPagesWithoutSingleByteAsciiToTheDom() throws Exception {
+        ByteArrayOutputStream html = new ByteArrayOutputStream();
+        html.write(new byte[]{(byte) 0xff, (byte) 0xfe});
+        html.write("<title>t</title><a href=\"/a\">a</a>".getBytes(UTF_16LE));
+
+        assertNull(StreamingLinkExtractor.extract(html.toByteArray(), null, BASE_URI));
+        assertNull(StreamingLinkExtractor.extract("<a href=\"/a\">a</a>".getBytes(UTF_16LE), UTF_16LE, BASE_URI));
+    }
+
+    private static StreamingLinkExtractor.Result assertSameAsJsoup(byte[] html, String charset) throws IOException {
+        Document document = Jsoup.parse(new ByteArrayInputStream(html), charset, BASE_URI);
+        Set<String> links = new LinkedHashSet<>();
+        for (String link : document.select("a[href]").eachAttr("abs:href")) {
+            if (!link.isEmpty()) {
+                links.add(link);
+            }
+        }
+
+        StreamingLinkExtractor.Result result = StreamingLinkExtractor.extract(html, charset == null ? null : Charset.forName(charset), BASE_URI);
+
+        assertNotNull(result);
+        assertEquals(document.title(), result.getTitle());
+        assertEquals(links, result.getLinks());
+        return result;
+    }
+
+    private static byte[] withUtf8ByteOrderMark(byte[] html) {
+        byte[] marked = new byte[html.length + 3];
+        marked[0] = (byte) 0xef;
+        marked[1] = (byte) 0xbb;
+        marked[2] = (byte) 0xbf;
+        System.arraycopy(html, 0, marked, 3, html.length);
+        return marked;
+    }
+}
@@ -0,0 +1,38 @@
+package com.ondrejkoula.crawler.harness;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// fixed capacity, latencies recorded after it is full are ignored
+class LatencyRecorder {
+
+    private final long[] nanos;
+    private final AtomicInteger count;
+
+    LatencyRecorder(int capacity) {
+        this.nanos = new long[capacity];
+        this.count = new AtomicInteger();
+    }
+
+    void record(long latencyNanos) {
+        int index = count.getAndIncrement();
+        if (index < nanos.length) {
+            nanos[index] = latencyNanos;
+        }
+    }
+
+    int count() {
+        return Math.min(count.get(), nanos.length);
+    }
+
+    double percentileMillis(double percentile) {
+        int count = count();
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(nanos, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,132 @@
+package com.ondrejkoula.crawler.harness;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Deterministic site graph generated from a seed. Pages are spread over {@code depth} levels, every page of a
+ * level has a parent on the previous level, so the whole site is reachable from page 0, and the remaining
+ * links point to random pages up to the next level. Duplicate pages repeat the text of another page under
+ * their own URL, slow pages are answered after a delay and error pages with HTTP 500.
+ */
+@Getter
+@Builder
+public class SyntheticSite {
+
+    private static final String[] WORDS = ("crawler page site news article archive data index search city council "
+            + "report market energy climate policy school health sport team season match player coach league "
+            + "budget vote election research study science space mission launch review film music concert album "
+            + "festival travel guide hotel food recipe garden river mountain coast harbour bridge station").split(" ");
+
+    @Builder.Default
+    private final int pageCount = 10_000;
+    @Builder.Default
+    private final int outDegree = 10;
+    @Builder.Default
+    private final int depth = 6;
+    // approximate size of the HTML of one page
+    @Builder.Default
+    private final int pageSizeBytes = 16 * 1024;
+    @Builder.Default
+    private final double duplicateRate = 0.0;
+    @Builder.Default
+    private final double slowPageRate = 0.0;
+    @Builder.Default
+    private final long slowPageDelayMillis = 200;
+    @Builder.Default
+    private final double errorPageRate = 0.0;
+    @Builder.Default
+    private final long seed = 1;
+
+    static String path(int page) {
+        return "/p/" + page + ".html";
+    }
+
+    boolean isSlow(int page) {
+        return page != 0 && chance(page, 1) < slowPageRate;
+    }
+
+    boolean isError(int page) {
+        return page != 0 && chance(page, 2) < errorPageRate;
+    }
+
+    byte[] render(int page) {
+        int textSource = page != 0 && chance(page, 3) < duplicateRate ? Math.floorMod((int) mix(page, 4), page) : page;
+        StringBuilder html = new StringBuilder(pageSizeBytes + 256)
+                .append("<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>Page ").append(page)
+                .append("</title></head><body><nav><a href=\"/\">Home</a></nav><main>");
+        for (int link : links(page)) {
+            html.append("<a href=\"").append(path(link)).append("\">Page ").append(link).append("</a> ");
+        }
+        Random text = new Random(mix(textSource, 5));
+        while (html.length() < pageSizeBytes) {
+            html.append("<p>");
+            for (int i = 0; i < 40; i++) {
+                html.append(WORDS[text.nextInt(WORDS.length)]).append(' ');
+            }
+            html.append("</p>");
+        }
+        return html.append("</main></body></html>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    int[] links(int page) {
+        int level = level(page);
+        int[] links = new int[Math.min(outDegree, pageCount)];
+        int count = 0;
+        if (level + 1 < depth) {
+            // children on the next level, keeps every page reachable
+            int levelSize = levelSize(level);
+            int indexInLevel = page - levelStart(level);
+            int nextStart = levelStart(level + 1);
+            int nextEnd = levelStart(level + 2);
+            for (int child = nextStart + indexInLevel; child < nextEnd && count < links.length; child += levelSize) {
+                links[count++] = child;
+            }
+        }
+        Random random = new Random(mix(page, 6));
+        int reachable = Math.max(1, levelStart(Math.min(depth, level + 2)));
+        while (count < links.length) {
+            links[count++] = random.nextInt(reachable);
+        }
+        return links;
+    }
+
+    private int level(int page) {
+        int level = 0;
+        while (level + 1 < depth && levelStart(level + 1) <= page) {
+            level++;
+        }
+        return level;
+    }
+
+    // page 0 is level 0, the other pages split evenly over the remaining levels
+    private int levelStart(int level) {
+        if (level <= 0) {
+            return 0;
+        }
+        if (level >= depth) {
+            return pageCount;
+        }
+        long perLevel = depth <= 1 ? pageCount : ((long) pageCount - 1 + depth - 2) / (depth - 1);
+        return (int) Math.min(pageCount, 1 + (level - 1) * perLevel);
+    }
+
+    private int levelSize(int level) {
+        return Math.max(1, levelStart(level + 1) - levelStart(level));
+    }
+
+    private double chance(int page, int salt) {
+        return (mix(page, salt) >>> 11) * 0x1.0p-53;
+    }
+
+    private long mix(int page, int salt) {
+        long hash = seed * 0x9E3779B97F4A7C15L + page * 0xC2B2AE3D27D4EB4FL + salt;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash & Long.MAX_VALUE;
+    }
+}
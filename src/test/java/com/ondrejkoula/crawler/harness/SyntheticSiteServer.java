@@ -0,0 +1,117 @@
+package com.ondrejkoula.crawler.harness;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves a {@link SyntheticSite} on a loopback port and records how long every page request took, from
+ * receiving the request to writing the last byte of the response.
+ */
+class SyntheticSiteServer implements AutoCloseable {
+
+    static final String THREAD_NAME_PREFIX = "synthetic-site-";
+
+    static {
+        // read once when the JDK server is first used, without it every response waits for Nagle and a delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final SyntheticSite site;
+    private final HttpServer server;
+    private final ExecutorService executorService;
+    private final LatencyRecorder latencies;
+
+    SyntheticSiteServer(SyntheticSite site, int threads) {
+        this.site = site;
+        this.latencies = new LatencyRecorder(site.getPageCount() * 2);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(threads,
+                runnable -> new Thread(runnable, THREAD_NAME_PREFIX + threadNumber.incrementAndGet()));
+        try {
+            this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot start synthetic site server", e);
+        }
+        server.setExecutor(executorService);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String baseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    LatencyRecorder getLatencies() {
+        return latencies;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            String path = exchange.getRequestURI().getPath();
+            if ("/robots.txt".equals(path)) {
+                respond(exchange, 200, "text/plain", "User-agent: *\nAllow: /\n".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            int page = pageOf(path);
+            if (page < 0) {
+                respond(exchange, 404, "text/plain", new byte[0]);
+                return;
+            }
+            if (site.isSlow(page)) {
+                Thread.sleep(site.getSlowPageDelayMillis());
+            }
+            if (site.isError(page)) {
+                respond(exchange, 500, "text/plain", new byte[0]);
+            } else {
+                respond(exchange, 200, "text/html; charset=utf-8", site.render(page));
+            }
+            latencies.record(System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private int pageOf(String path) {
+        if ("/".equals(path)) {
+            return 0;
+        }
+        if (!path.startsWith("/p/") || !path.endsWith(".html")) {
+            return -1;
+        }
+        try {
+            int page = Integer.parseInt(path.substring(3, path.length() - 5));
+            return page >= 0 && page < site.getPageCount() ? page : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executorService.shutdownNow();
+    }
+}
@@ -0,0 +1,230 @@
+package com.ondrejkoula.crawler.harness;
+
+import com.ondrejkoula.crawler.CrawlerConfig;
+import com.ondrejkoula.crawler.CrawlerContext;
+import com.ondrejkoula.crawler.CrawlerContextConfig;
+import com.ondrejkoula.crawler.CrawlerInfo;
+import com.ondrejkoula.crawler.CrawlerState;
+import com.ondrejkoula.crawler.ExecutionMode;
+import com.ondrejkoula.crawler.FetcherType;
+import com.ondrejkoula.crawler.LinkExtraction;
+import com.ondrejkoula.crawler.SeenUrlsMode;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadInfo;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Crawls a generated {@link SyntheticSite} served from loopback and reports throughput and resource use, the
+ * end-to-end check for concurrency and frontier changes. Arguments are {@code key=value} pairs, for example
+ * <pre>
+ * mvn test-compile
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; com.ondrejkoula.crawler.harness.ThroughputHarness \
+ *     pages=50000 outDegree=20 fetcher=HTTP_CLIENT inFlight=128
+ * </pre>
+ * Fetch latency is reported twice, by the server from receiving a request to writing its response and by the
+ * crawler from sending the request to receiving the body. Allocation counts every platform thread except the server
+ * ones, virtual threads are not visible to {@link java.lang.management.ThreadMXBean}.
+ */
+public class ThroughputHarness {
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("pages", "10000");
+        DEFAULTS.put("outDegree", "10");
+        DEFAULTS.put("depth", "6");
+        DEFAULTS.put("pageSize", "16384");
+        DEFAULTS.put("duplicateRate", "0");
+        DEFAULTS.put("slowRate", "0");
+        DEFAULTS.put("slowDelayMillis", "200");
+        DEFAULTS.put("errorRate", "0");
+        DEFAULTS.put("seed", "1");
+        DEFAULTS.put("serverThreads", "16");
+        DEFAULTS.put("executionMode", ExecutionMode.PLATFORM_THREADS.name());
+        DEFAULTS.put("maxConcurrentFetches", "0");
+        DEFAULTS.put("maxBytesPerSecond", "0");
+        DEFAULTS.put("fetcher", FetcherType.JSOUP.name());
+        DEFAULTS.put("workers", "8");
+        DEFAULTS.put("inFlight", "64");
+        DEFAULTS.put("linkExtraction", LinkExtraction.DOM.name());
+        DEFAULTS.put("seenUrls", SeenUrlsMode.EXACT.name());
+        DEFAULTS.put("nearDuplicates", "false");
+        DEFAULTS.put("frontierDirectory", "");
+        DEFAULTS.put("timeoutSeconds", "600");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        SyntheticSite site = SyntheticSite.builder()
+                .pageCount(Integer.parseInt(options.get("pages")))
+                .outDegree(Integer.parseInt(options.get("outDegree")))
+                .depth(Integer.parseInt(options.get("depth")))
+                .pageSizeBytes(Integer.parseInt(options.get("pageSize")))
+                .duplicateRate(Double.parseDouble(options.get("duplicateRate")))
+                .slowPageRate(Double.parseDouble(options.get("slowRate")))
+                .slowPageDelayMillis(Long.parseLong(options.get("slowDelayMillis")))
+                .errorPageRate(Double.parseDouble(options.get("errorRate")))
+                .seed(Long.parseLong(options.get("seed")))
+                .build();
+
+        Map<String, String> report;
+        try (SyntheticSiteServer server = new SyntheticSiteServer(site, Integer.parseInt(options.get("serverThreads")))) {
+            report = crawl(server, options);
+            LatencyRecorder latencies = server.getLatencies();
+            report.put("fetchLatencyP50Millis", String.format("%.2f", latencies.percentileMillis(50)));
+            report.put("fetchLatencyP99Millis", String.format("%.2f", latencies.percentileMillis(99)));
+        }
+        report.forEach((key, value) -> System.out.println(key + "=" + value));
+        System.exit(0);
+    }
+
+    private static Map<String, String> crawl(SyntheticSiteServer server, Map<String, String> options) throws Exception {
+        CrawlerConfig.CrawlerConfigBuilder config = CrawlerConfig.builder()
+                .initialUrl(new URL(server.baseUrl() + "/"))
+                .userAgent("throughput-harness")
+                .fetcherType(FetcherType.valueOf(options.get("fetcher")))
+                .workers(Integer.parseInt(options.get("workers")))
+                .maxInFlightRequests(Integer.parseInt(options.get("inFlight")))
+                .linkExtraction(LinkExtraction.valueOf(options.get("linkExtraction")))
+                .seenUrlsMode(SeenUrlsMode.valueOf(options.get("seenUrls")))
+                .nearDuplicateDetection(Boolean.parseBoolean(options.get("nearDuplicates")));
+        if (!options.get("frontierDirectory").isEmpty()) {
+            config.frontierDirectory(Paths.get(options.get("frontierDirectory")));
+        }
+
+        CrawlerContext context = new CrawlerContext(UUID::randomUUID, CrawlerContextConfig.builder()
+                .executionMode(ExecutionMode.valueOf(options.get("executionMode")))
+                .maxConcurrentFetches(Integer.parseInt(options.get("maxConcurrentFetches")))
+                .maxBytesPerSecond(Long.parseLong(options.get("maxBytesPerSecond")))
+                .build());
+        CrawlerInfo crawler = context.registerNewCrawler(config.build());
+        AtomicLong pages = new AtomicLong();
+        AtomicLong duplicates = new AtomicLong();
+        CountDownLatch ended = new CountDownLatch(1);
+        CrawlerState[] finalState = new CrawlerState[1];
+        context.subscribePageDataAcquired(crawler.getUuid(), event -> pages.incrementAndGet());
+        context.subscribeDuplicatePages(crawler.getUuid(), event -> duplicates.incrementAndGet());
+        context.subscribeStateChanged(crawler.getUuid(), event -> {
+            CrawlerState state = event.getNewState();
+            if (CrawlerState.FINISHED.equals(state) || CrawlerState.STOPPED.equals(state) || CrawlerState.FAILED.equals(state)) {
+                finalState[0] = state;
+                ended.countDown();
+            }
+        });
+
+        ResourceMonitor monitor = new ResourceMonitor();
+        long start = System.nanoTime();
+        context.startCrawler(crawler.getUuid());
+        boolean completed = ended.await(Long.parseLong(options.get("timeoutSeconds")), TimeUnit.SECONDS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        monitor.stop();
+        if (!completed) {
+            context.stopCrawler(crawler.getUuid());
+        }
+
+        Map<String, String> report = new LinkedHashMap<>();
+        report.put("executionMode", String.valueOf(context.getExecutionMode()));
+        report.put("state", completed ? String.valueOf(finalState[0]) : "TIMED_OUT");
+        report.put("pages", String.valueOf(pages.get()));
+        report.put("duplicates", String.valueOf(duplicates.get()));
+        CrawlerInfo info = context.getCrawlerInfo(crawler.getUuid());
+        report.put("visitedUrls", String.valueOf(info.getVisitedUrls()));
+        report.put("failed", String.valueOf(info.getPagesFailed()));
+        report.put("crawlerFetchLatencyP50Millis", String.format("%.2f", info.getFetchLatency().getP50Millis()));
+        report.put("crawlerFetchLatencyP99Millis", String.format("%.2f", info.getFetchLatency().getP99Millis()));
+        report.put("seconds", String.format("%.3f", seconds));
+        report.put("pagesPerSecond", String.format("%.1f", (pages.get() + duplicates.get()) / seconds));
+        report.put("heapHighWaterMB", String.format("%.1f", monitor.heapHighWaterBytes() / 1048576.0));
+        report.put("allocatedMB", String.format("%.1f", monitor.allocatedBytes() / 1048576.0));
+        report.put("allocationRateMBPerSecond", String.format("%.1f", monitor.allocatedBytes() / 1048576.0 / seconds));
+        return report;
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            String key = separator < 0 ? arg : arg.substring(0, separator);
+            if (separator < 0 || !DEFAULTS.containsKey(key)) {
+                throw new IllegalArgumentException(String.format("Unknown argument %s, expected key=value with keys %s", arg, DEFAULTS.keySet()));
+            }
+            options.put(key, arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    /**
+     * Samples heap pool peaks and per thread allocation counters. Threads are sampled every 100 ms, so a
+     * thread ending between samples loses at most its last interval.
+     */
+    private static final class ResourceMonitor {
+        private final ScheduledExecutorService sampler;
+        private final com.sun.management.ThreadMXBean threads;
+        private final Map<Long, Long> allocatedAtStart;
+        private final Map<Long, Long> allocated;
+
+        private ResourceMonitor() {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                pool.resetPeakUsage();
+            }
+            this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            this.allocatedAtStart = new HashMap<>();
+            this.allocated = new HashMap<>();
+            sample(allocatedAtStart);
+            this.sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "throughput-harness-monitor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sampler.scheduleAtFixedRate(() -> sample(allocated), 100, 100, TimeUnit.MILLISECONDS);
+        }
+
+        private synchronized void sample(Map<Long, Long> target) {
+            long[] ids = threads.getAllThreadIds();
+            long[] bytes = threads.getThreadAllocatedBytes(ids);
+            ThreadInfo[] infos = threads.getThreadInfo(ids);
+            for (int i = 0; i < ids.length; i++) {
+                if (bytes[i] >= 0 && infos[i] != null && !infos[i].getThreadName().startsWith(SyntheticSiteServer.THREAD_NAME_PREFIX)) {
+                    target.merge(ids[i], bytes[i], Math::max);
+                }
+            }
+        }
+
+        private void stop() throws InterruptedException {
+            sampler.shutdown();
+            sampler.awaitTermination(1, TimeUnit.SECONDS);
+            sample(allocated);
+        }
+
+        private synchronized long allocatedBytes() {
+            long total = 0;
+            for (Map.Entry<Long, Long> thread : allocated.entrySet()) {
+                total += thread.getValue() - allocatedAtStart.getOrDefault(thread.getKey(), 0L);
+            }
+            return total;
+        }
+
+        private long heapHighWaterBytes() {
+            long peak = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (MemoryType.HEAP.equals(pool.getType())) {
+                    peak += pool.getPeakUsage().getUsed();
+                }
+            }
+            return peak;
+        }
+    }
+}